@@ -0,0 +1,351 @@
+package net.bitburst.plugins.multiwebview;
+
+import android.net.Uri;
+import android.webkit.MimeTypeMap;
+import android.webkit.WebResourceRequest;
+import android.webkit.WebResourceResponse;
+import com.getcapacitor.JSArray;
+import com.getcapacitor.JSObject;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.regex.Pattern;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Offline web apps served to the webviews from ZIP archives.
+ *
+ * Each registered bundle is memory-mapped once and indexed from the ZIP central directory, then
+ * served under its own virtual https origin. Stored entries are streamed directly out of the
+ * mapping without copying; deflated entries are inflated while the WebView reads them, on its own
+ * loader thread. Registering a bundle under an existing name swaps it atomically: requests that
+ * already started keep reading the old mapping, new ones see the new version.
+ *
+ * {@link #intercept} is called on WebView background threads; all methods are thread-safe.
+ */
+public class AssetBundles {
+
+    public static final String DEFAULT_HOST_SUFFIX = ".bundle.localhost";
+
+    private static final Pattern NAME_PATTERN = Pattern.compile("[a-z0-9][a-z0-9-]*");
+
+    private static final int END_OF_CENTRAL_DIRECTORY = 0x06054b50;
+    private static final int CENTRAL_DIRECTORY_HEADER = 0x02014b50;
+    private static final int LOCAL_FILE_HEADER = 0x04034b50;
+    private static final int METHOD_STORED = 0;
+    private static final int METHOD_DEFLATED = 8;
+
+    private static final Map<String, String> WEB_MIME_TYPES = new HashMap<>();
+
+    static {
+        WEB_MIME_TYPES.put("html", "text/html");
+        WEB_MIME_TYPES.put("js", "text/javascript");
+        WEB_MIME_TYPES.put("mjs", "text/javascript");
+        WEB_MIME_TYPES.put("css", "text/css");
+        WEB_MIME_TYPES.put("json", "application/json");
+        WEB_MIME_TYPES.put("map", "application/json");
+        WEB_MIME_TYPES.put("svg", "image/svg+xml");
+        WEB_MIME_TYPES.put("wasm", "application/wasm");
+        WEB_MIME_TYPES.put("woff", "font/woff");
+        WEB_MIME_TYPES.put("woff2", "font/woff2");
+    }
+
+    private static class BundleEntry {
+
+        final int offset;
+        final int compressedSize;
+        final int size;
+        final boolean deflated;
+
+        BundleEntry(int offset, int compressedSize, int size, boolean deflated) {
+            this.offset = offset;
+            this.compressedSize = compressedSize;
+            this.size = size;
+            this.deflated = deflated;
+        }
+    }
+
+    private static class Bundle {
+
+        final String name;
+        final String version;
+        final String host;
+        final File file;
+        final ByteBuffer buffer;
+        final Map<String, BundleEntry> entries;
+
+        Bundle(String name, String version, String host, File file, ByteBuffer buffer, Map<String, BundleEntry> entries) {
+            this.name = name;
+            this.version = version;
+            this.host = host;
+            this.file = file;
+            this.buffer = buffer;
+            this.entries = entries;
+        }
+
+        String getOrigin() {
+            return "https://" + host;
+        }
+    }
+
+    /**
+     * Read-only view of a region of a mapped buffer.
+     */
+    private static class ByteBufferInputStream extends InputStream {
+
+        private final ByteBuffer buffer;
+
+        ByteBufferInputStream(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read() {
+            return buffer.hasRemaining() ? buffer.get() & 0xff : -1;
+        }
+
+        @Override
+        public int read(byte[] bytes, int offset, int length) {
+            if (!buffer.hasRemaining()) {
+                return -1;
+            }
+            int count = Math.min(length, buffer.remaining());
+            buffer.get(bytes, offset, count);
+            return count;
+        }
+
+        @Override
+        public int available() {
+            return buffer.remaining();
+        }
+    }
+
+    /**
+     * Inflates a deflated entry and frees the native memory of its inflater when the WebView closes
+     * the response, instead of on finalization.
+     */
+    private static class EntryInflaterStream extends InflaterInputStream {
+
+        EntryInflaterStream(InputStream input) {
+            super(input, new Inflater(true));
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                super.close();
+            } finally {
+                inf.end();
+            }
+        }
+    }
+
+    // Registered bundles by name, replaced as a whole on every change
+    private final AtomicReference<Map<String, Bundle>> bundles = new AtomicReference<>(Collections.emptyMap());
+
+    /**
+     * Map and index a ZIP archive and serve it under https://{name}.bundle.localhost, replacing a
+     * bundle registered under the same name.
+     *
+     * @return the origin the bundle is served under
+     */
+    public String register(String name, File file, String version) throws IOException {
+        if (!NAME_PATTERN.matcher(name).matches()) {
+            throw new IOException("Bundle name must consist of lowercase letters, digits and dashes");
+        }
+
+        ByteBuffer buffer;
+        try (RandomAccessFile input = new RandomAccessFile(file, "r"); FileChannel channel = input.getChannel()) {
+            // The mapping stays valid after the channel is closed
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            buffer = mapped.order(ByteOrder.LITTLE_ENDIAN);
+        }
+
+        Bundle bundle = new Bundle(name, version, name + DEFAULT_HOST_SUFFIX, file, buffer, readEntries(buffer));
+        while (true) {
+            Map<String, Bundle> current = bundles.get();
+            Map<String, Bundle> next = new LinkedHashMap<>(current);
+            next.put(name, bundle);
+            if (bundles.compareAndSet(current, Collections.unmodifiableMap(next))) {
+                return bundle.getOrigin();
+            }
+        }
+    }
+
+    public boolean unregister(String name) {
+        while (true) {
+            Map<String, Bundle> current = bundles.get();
+            if (!current.containsKey(name)) {
+                return false;
+            }
+            Map<String, Bundle> next = new LinkedHashMap<>(current);
+            next.remove(name);
+            if (bundles.compareAndSet(current, Collections.unmodifiableMap(next))) {
+                return true;
+            }
+        }
+    }
+
+    public JSArray list() {
+        JSArray list = new JSArray();
+        for (Bundle bundle : bundles.get().values()) {
+            JSObject info = new JSObject();
+            info.put("name", bundle.name);
+            info.put("version", bundle.version);
+            info.put("origin", bundle.getOrigin());
+            info.put("path", bundle.file.getAbsolutePath());
+            info.put("entries", bundle.entries.size());
+            info.put("size", bundle.buffer.capacity());
+            list.put(info);
+        }
+        return list;
+    }
+
+    /**
+     * Serve a request for a bundle origin. Returns null if the request is not for a registered bundle.
+     */
+    public WebResourceResponse intercept(WebResourceRequest request) {
+        Map<String, Bundle> current = bundles.get();
+        if (current.isEmpty()) {
+            return null;
+        }
+
+        Uri url = request.getUrl();
+        String host = url.getHost();
+        if (host == null || !"https".equalsIgnoreCase(url.getScheme())) {
+            return null;
+        }
+
+        Bundle bundle = null;
+        for (Bundle candidate : current.values()) {
+            if (candidate.host.equalsIgnoreCase(host)) {
+                bundle = candidate;
+                break;
+            }
+        }
+        if (bundle == null) {
+            return null;
+        }
+
+        Map<String, String> headers = new HashMap<>();
+        headers.put("Cache-Control", "no-cache");
+
+        String path = url.getPath();
+        if (path == null || path.isEmpty() || path.endsWith("/")) {
+            path = (path == null ? "/" : path) + "index.html";
+        }
+        path = path.substring(1);
+
+        BundleEntry entry = bundle.entries.get(path);
+        if (entry == null || !"GET".equalsIgnoreCase(request.getMethod())) {
+            // Never fall through to the network for a virtual origin
+            return new WebResourceResponse("text/plain", "utf-8", 404, "Not Found", headers, new ByteArrayInputStream(new byte[0]));
+        }
+
+        ByteBuffer region = bundle.buffer.duplicate();
+        region.position(entry.offset);
+        region.limit(entry.offset + entry.compressedSize);
+        InputStream stream = new ByteBufferInputStream(region.slice());
+        if (entry.deflated) {
+            stream = new EntryInflaterStream(stream);
+        } else {
+            headers.put("Content-Length", String.valueOf(entry.size));
+        }
+        if (bundle.version != null) {
+            headers.put("ETag", "\"" + bundle.version + "\"");
+        }
+
+        return new WebResourceResponse(getMimeType(path), null, 200, "OK", headers, stream);
+    }
+
+    /**
+     * Index the entries of a ZIP archive from its central directory.
+     */
+    private static Map<String, BundleEntry> readEntries(ByteBuffer buffer) throws IOException {
+        int end = findEndOfCentralDirectory(buffer);
+        int count = buffer.getShort(end + 10) & 0xffff;
+        long directoryOffset = buffer.getInt(end + 16) & 0xffffffffL;
+        if (directoryOffset == 0xffffffffL || count == 0xffff) {
+            throw new IOException("ZIP64 archives are not supported");
+        }
+
+        Map<String, BundleEntry> entries = new HashMap<>(count * 2);
+        int position = (int) directoryOffset;
+        for (int i = 0; i < count; i++) {
+            if (buffer.getInt(position) != CENTRAL_DIRECTORY_HEADER) {
+                throw new IOException("Invalid ZIP central directory");
+            }
+            int method = buffer.getShort(position + 10) & 0xffff;
+            long compressedSize = buffer.getInt(position + 20) & 0xffffffffL;
+            long size = buffer.getInt(position + 24) & 0xffffffffL;
+            int nameLength = buffer.getShort(position + 28) & 0xffff;
+            int extraLength = buffer.getShort(position + 30) & 0xffff;
+            int commentLength = buffer.getShort(position + 32) & 0xffff;
+            long localOffset = buffer.getInt(position + 42) & 0xffffffffL;
+
+            byte[] nameBytes = new byte[nameLength];
+            ByteBuffer nameRegion = buffer.duplicate();
+            nameRegion.position(position + 46);
+            nameRegion.get(nameBytes);
+            String name = new String(nameBytes, StandardCharsets.UTF_8);
+            position += 46 + nameLength + extraLength + commentLength;
+
+            if (name.endsWith("/")) {
+                continue;
+            }
+            if (method != METHOD_STORED && method != METHOD_DEFLATED) {
+                throw new IOException("Unsupported compression method for " + name);
+            }
+            if (localOffset + 30 > buffer.capacity() || buffer.getInt((int) localOffset) != LOCAL_FILE_HEADER) {
+                throw new IOException("Invalid ZIP local header for " + name);
+            }
+
+            // The local header may have a different extra field than the central directory
+            int localNameLength = buffer.getShort((int) localOffset + 26) & 0xffff;
+            int localExtraLength = buffer.getShort((int) localOffset + 28) & 0xffff;
+            long dataOffset = localOffset + 30 + localNameLength + localExtraLength;
+            if (dataOffset + compressedSize > buffer.capacity()) {
+                throw new IOException("Truncated ZIP entry " + name);
+            }
+
+            entries.put(name, new BundleEntry((int) dataOffset, (int) compressedSize, (int) size, method == METHOD_DEFLATED));
+        }
+        return entries;
+    }
+
+    private static int findEndOfCentralDirectory(ByteBuffer buffer) throws IOException {
+        // The record is 22 bytes followed by a comment of up to 65535 bytes
+        int last = buffer.capacity() - 22;
+        int first = Math.max(0, last - 0xffff);
+        for (int position = last; position >= first; position--) {
+            if (buffer.getInt(position) == END_OF_CENTRAL_DIRECTORY) {
+                return position;
+            }
+        }
+        throw new IOException("Not a ZIP archive");
+    }
+
+    private static String getMimeType(String path) {
+        int dot = path.lastIndexOf('.');
+        String extension = dot >= 0 ? path.substring(dot + 1).toLowerCase(Locale.ROOT) : "";
+        String mimeType = WEB_MIME_TYPES.get(extension);
+        if (mimeType == null) {
+            mimeType = MimeTypeMap.getSingleton().getMimeTypeFromExtension(extension);
+        }
+        return mimeType != null ? mimeType : "application/octet-stream";
+    }
+}
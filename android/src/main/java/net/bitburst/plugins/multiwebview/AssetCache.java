@@ -0,0 +1,637 @@
+package net.bitburst.plugins.multiwebview;
+
+import android.util.Log;
+import android.webkit.CookieManager;
+import android.webkit.WebResourceRequest;
+import android.webkit.WebResourceResponse;
+import com.getcapacitor.JSObject;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicLong;
+import org.json.JSONObject;
+
+/**
+ * Disk cache for subresources shared by all managed webviews.
+ *
+ * Cacheable GET requests are fetched once and stored in the app's cache directory; later requests
+ * from any webview are answered from disk while fresh according to Cache-Control/Expires, and
+ * revalidated with ETag/Last-Modified when stale. Concurrent requests for the same URL share a
+ * single upstream fetch. The cache is bounded in size and evicts least recently used entries.
+ *
+ * Responses that are not cached, such as errors or responses that are private, set cookies or vary
+ * on request headers, are passed through to the requesting webview; cookies they set are stored in
+ * the CookieManager. Redirects cannot be passed through, so the WebView repeats the request itself
+ * and the URL is not intercepted again. Main frame documents are left to the WebView.
+ *
+ * {@link #intercept} is called on WebView background threads; all methods are thread-safe.
+ */
+public class AssetCache {
+
+    private static final String TAG = "AssetCache";
+
+    public static final long DEFAULT_MAX_SIZE = 50L * 1024 * 1024;
+
+    private static final String DIRECTORY_NAME = "multiwebview-assets";
+    private static final int CONNECT_TIMEOUT_MS = 15000;
+    private static final int READ_TIMEOUT_MS = 30000;
+    private static final int BUFFER_SIZE = 8192;
+    private static final int MAX_REDIRECTING_URLS = 256;
+
+    private static class Entry {
+
+        String key;
+        String url;
+        String mimeType;
+        String encoding;
+        Map<String, String> headers;
+        String etag;
+        String lastModified;
+        // Updated on revalidation while other threads check freshness
+        volatile long expiresAt;
+        long size;
+    }
+
+    /**
+     * Outcome of an upstream fetch: a cache entry, or a response that could not be cached and can
+     * only be consumed by the request that fetched it.
+     */
+    private static class FetchResult {
+
+        final Entry entry;
+        final WebResourceResponse uncached;
+
+        FetchResult(Entry entry, WebResourceResponse uncached) {
+            this.entry = entry;
+            this.uncached = uncached;
+        }
+    }
+
+    private final File directory;
+    private final Map<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private final ConcurrentHashMap<String, FutureTask<FetchResult>> inFlight = new ConcurrentHashMap<>();
+    // Guarded by this; URLs that redirected and are left to the WebView from now on
+    private final LinkedHashMap<String, Boolean> redirectingUrls = new LinkedHashMap<String, Boolean>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+            return size() > MAX_REDIRECTING_URLS;
+        }
+    };
+    private volatile boolean enabled;
+    private volatile long maxSize;
+    private long totalSize = 0;
+    private boolean loaded = false;
+
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong revalidated = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong collapsed = new AtomicLong();
+    private final AtomicLong bytesSaved = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    public AssetCache(File cacheDir, boolean enabled, long maxSize) {
+        this.directory = new File(cacheDir, DIRECTORY_NAME);
+        this.enabled = enabled;
+        this.maxSize = Math.max(0, maxSize);
+    }
+
+    /**
+     * Answer a request from the cache, fetching it upstream on a miss. Returns null if the request
+     * is not handled by the cache and should be loaded by the WebView itself.
+     */
+    public WebResourceResponse intercept(WebResourceRequest request) {
+        if (!enabled || !isCacheableRequest(request)) {
+            return null;
+        }
+
+        String url = request.getUrl().toString();
+        requests.incrementAndGet();
+
+        Entry cached;
+        synchronized (this) {
+            if (redirectingUrls.containsKey(url)) {
+                return null;
+            }
+            ensureLoaded();
+            cached = entries.get(url);
+        }
+
+        if (cached != null && cached.expiresAt > System.currentTimeMillis()) {
+            WebResourceResponse response = open(cached);
+            if (response != null) {
+                hits.incrementAndGet();
+                bytesSaved.addAndGet(cached.size);
+                return response;
+            }
+        }
+
+        FutureTask<FetchResult> task = new FutureTask<>(() -> fetch(url, request.getRequestHeaders(), cached));
+        FutureTask<FetchResult> existing = inFlight.putIfAbsent(url, task);
+        if (existing != null) {
+            // Another webview is already fetching this URL
+            collapsed.incrementAndGet();
+            FetchResult result = await(existing);
+            if (result == null || result.entry == null) {
+                return null;
+            }
+            WebResourceResponse response = open(result.entry);
+            if (response != null) {
+                bytesSaved.addAndGet(result.entry.size);
+            }
+            return response;
+        }
+
+        try {
+            task.run();
+            FetchResult result = await(task);
+            if (result == null) {
+                return null;
+            }
+            return result.uncached != null ? result.uncached : result.entry != null ? open(result.entry) : null;
+        } finally {
+            inFlight.remove(url, task);
+        }
+    }
+
+    public void configure(boolean enabled, long maxSize) {
+        this.enabled = enabled;
+        this.maxSize = Math.max(0, maxSize);
+        synchronized (this) {
+            ensureLoaded();
+            evict();
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public long getMaxSize() {
+        return maxSize;
+    }
+
+    public synchronized void clear() {
+        ensureLoaded();
+        for (Entry entry : entries.values()) {
+            deleteFiles(entry.key);
+        }
+        entries.clear();
+        totalSize = 0;
+    }
+
+    public synchronized JSObject getStats() {
+        long requestCount = requests.get();
+        long served = hits.get() + revalidated.get() + collapsed.get();
+
+        JSObject stats = new JSObject();
+        stats.put("enabled", enabled);
+        stats.put("size", totalSize);
+        stats.put("maxSize", maxSize);
+        stats.put("entries", entries.size());
+        stats.put("requests", requestCount);
+        stats.put("hits", hits.get());
+        stats.put("revalidated", revalidated.get());
+        stats.put("misses", misses.get());
+        stats.put("collapsed", collapsed.get());
+        stats.put("hitRatio", requestCount > 0 ? (double) served / requestCount : 0);
+        stats.put("bytesSaved", bytesSaved.get());
+        stats.put("evictions", evictions.get());
+        return stats;
+    }
+
+    private static boolean isCacheableRequest(WebResourceRequest request) {
+        if (request.isForMainFrame() || !"GET".equalsIgnoreCase(request.getMethod())) {
+            return false;
+        }
+        String scheme = request.getUrl().getScheme();
+        if (!"https".equalsIgnoreCase(scheme) && !"http".equalsIgnoreCase(scheme)) {
+            return false;
+        }
+        for (String name : request.getRequestHeaders().keySet()) {
+            if ("Range".equalsIgnoreCase(name) || "Authorization".equalsIgnoreCase(name)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static FetchResult await(FutureTask<FetchResult> task) {
+        try {
+            return task.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        } catch (ExecutionException e) {
+            Log.w(TAG, "Error fetching asset", e.getCause());
+            return null;
+        }
+    }
+
+    private FetchResult fetch(String url, Map<String, String> requestHeaders, Entry cached) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+        connection.setConnectTimeout(CONNECT_TIMEOUT_MS);
+        connection.setReadTimeout(READ_TIMEOUT_MS);
+        connection.setInstanceFollowRedirects(false);
+        for (Map.Entry<String, String> header : requestHeaders.entrySet()) {
+            // Let the connection negotiate and decode the content encoding itself
+            if (!"Accept-Encoding".equalsIgnoreCase(header.getKey())) {
+                connection.setRequestProperty(header.getKey(), header.getValue());
+            }
+        }
+        String cookie = CookieManager.getInstance().getCookie(url);
+        if (cookie != null) {
+            connection.setRequestProperty("Cookie", cookie);
+        }
+        if (cached != null) {
+            if (cached.etag != null) {
+                connection.setRequestProperty("If-None-Match", cached.etag);
+            }
+            if (cached.lastModified != null) {
+                connection.setRequestProperty("If-Modified-Since", cached.lastModified);
+            }
+        }
+
+        int status = connection.getResponseCode();
+        storeCookies(url, connection);
+        if (status == HttpURLConnection.HTTP_NOT_MODIFIED && cached != null) {
+            long expiresAt = getExpiresAt(connection);
+            connection.disconnect();
+            revalidated.incrementAndGet();
+            bytesSaved.addAndGet(cached.size);
+
+            if (expiresAt > 0) {
+                cached.expiresAt = expiresAt;
+                writeMeta(cached);
+            }
+            return new FetchResult(cached, null);
+        }
+        if (status >= 300 && status < 400) {
+            // WebResourceResponse cannot carry a redirect; the WebView requests this URL itself
+            connection.disconnect();
+            synchronized (this) {
+                redirectingUrls.put(url, Boolean.TRUE);
+            }
+            return new FetchResult(null, null);
+        }
+        if (status != HttpURLConnection.HTTP_OK) {
+            // Errors and other statuses are passed through instead of being requested again
+            return new FetchResult(null, toResponse(connection));
+        }
+
+        misses.incrementAndGet();
+        Entry entry = createEntry(url, connection);
+        if (entry == null) {
+            return new FetchResult(null, toResponse(connection));
+        }
+
+        // Download to a temporary file so memory use does not depend on the asset size
+        File temp = new File(directory, entry.key + ".tmp");
+        long size = 0;
+        try (InputStream input = connection.getInputStream(); OutputStream output = new FileOutputStream(temp)) {
+            byte[] buffer = new byte[BUFFER_SIZE];
+            int read;
+            while ((read = input.read(buffer)) != -1) {
+                output.write(buffer, 0, read);
+                size += read;
+            }
+        } catch (IOException e) {
+            temp.delete();
+            throw e;
+        } finally {
+            connection.disconnect();
+        }
+        entry.size = size;
+
+        if (size > getMaxEntrySize()) {
+            // Serve this response from the temporary file, which stays readable after deletion
+            InputStream stream = new FileInputStream(temp);
+            temp.delete();
+            return new FetchResult(null, new WebResourceResponse(entry.mimeType, entry.encoding, 200, "OK", entry.headers, stream));
+        }
+
+        if (!temp.renameTo(getBodyFile(entry.key))) {
+            temp.delete();
+            throw new IOException("Could not store asset " + url);
+        }
+        writeMeta(entry);
+        put(entry);
+        return new FetchResult(entry, null);
+    }
+
+    /**
+     * Build the cache entry for a response, or return null if the response must not be cached.
+     */
+    private Entry createEntry(String url, HttpURLConnection connection) {
+        String cacheControl = lower(connection.getHeaderField("Cache-Control"));
+        String vary = lower(connection.getHeaderField("Vary"));
+        if (
+            cacheControl.contains("no-store") ||
+            cacheControl.contains("private") ||
+            connection.getHeaderField("Set-Cookie") != null ||
+            (!vary.isEmpty() && !vary.equals("accept-encoding")) ||
+            connection.getContentLength() > getMaxEntrySize()
+        ) {
+            return null;
+        }
+
+        Entry entry = new Entry();
+        entry.key = hash(url);
+        entry.url = url;
+        entry.etag = connection.getHeaderField("ETag");
+        entry.lastModified = connection.getHeaderField("Last-Modified");
+        entry.expiresAt = cacheControl.contains("no-cache") ? 0 : getExpiresAt(connection);
+        if (entry.expiresAt <= System.currentTimeMillis() && entry.etag == null && entry.lastModified == null) {
+            // Could never be served without fetching it again
+            return null;
+        }
+
+        entry.mimeType = getMimeType(connection);
+        entry.encoding = getCharset(connection);
+        entry.headers = getResponseHeaders(connection);
+        return entry;
+    }
+
+    private WebResourceResponse toResponse(HttpURLConnection connection) throws IOException {
+        int status = connection.getResponseCode();
+        InputStream stream = status >= 400 ? connection.getErrorStream() : connection.getInputStream();
+        String reason = connection.getResponseMessage();
+        return new WebResourceResponse(
+            getMimeType(connection),
+            getCharset(connection),
+            status,
+            reason != null && !reason.isEmpty() ? reason : "Status " + status,
+            getResponseHeaders(connection),
+            stream != null ? stream : new ByteArrayInputStream(new byte[0])
+        );
+    }
+
+    /**
+     * Store the cookies set by a response; the WebView never sees the headers of intercepted
+     * requests.
+     */
+    private static void storeCookies(String url, HttpURLConnection connection) {
+        for (Map.Entry<String, List<String>> header : connection.getHeaderFields().entrySet()) {
+            if (header.getKey() != null && header.getKey().equalsIgnoreCase("Set-Cookie")) {
+                CookieManager cookieManager = CookieManager.getInstance();
+                for (String value : header.getValue()) {
+                    cookieManager.setCookie(url, value);
+                }
+            }
+        }
+    }
+
+    private static String getMimeType(HttpURLConnection connection) {
+        String contentType = connection.getContentType();
+        return contentType != null ? contentType.split(";")[0].trim() : "application/octet-stream";
+    }
+
+    private static String getCharset(HttpURLConnection connection) {
+        String contentType = connection.getContentType();
+        if (contentType == null) {
+            return null;
+        }
+        for (String part : contentType.split(";")) {
+            part = part.trim();
+            if (part.toLowerCase(Locale.ROOT).startsWith("charset=")) {
+                return part.substring("charset=".length()).replace("\"", "");
+            }
+        }
+        return null;
+    }
+
+    private static Map<String, String> getResponseHeaders(HttpURLConnection connection) {
+        Map<String, String> headers = new HashMap<>();
+        for (Map.Entry<String, List<String>> header : connection.getHeaderFields().entrySet()) {
+            String name = header.getKey();
+            if (
+                name == null ||
+                name.equalsIgnoreCase("Content-Encoding") ||
+                name.equalsIgnoreCase("Content-Length") ||
+                name.equalsIgnoreCase("Transfer-Encoding") ||
+                name.equalsIgnoreCase("Connection") ||
+                name.equalsIgnoreCase("Set-Cookie")
+            ) {
+                continue;
+            }
+            StringBuilder value = new StringBuilder();
+            for (String part : header.getValue()) {
+                if (value.length() > 0) {
+                    value.append(", ");
+                }
+                value.append(part);
+            }
+            headers.put(name, value.toString());
+        }
+        return headers;
+    }
+
+    private static long getExpiresAt(HttpURLConnection connection) {
+        String cacheControl = lower(connection.getHeaderField("Cache-Control"));
+        for (String directive : cacheControl.split(",")) {
+            directive = directive.trim();
+            if (directive.startsWith("max-age=")) {
+                try {
+                    return System.currentTimeMillis() + Long.parseLong(directive.substring("max-age=".length())) * 1000;
+                } catch (NumberFormatException e) {
+                    return 0;
+                }
+            }
+        }
+        return connection.getExpiration();
+    }
+
+    private WebResourceResponse open(Entry entry) {
+        File body = getBodyFile(entry.key);
+        try {
+            InputStream stream = new FileInputStream(body);
+            body.setLastModified(System.currentTimeMillis());
+            return new WebResourceResponse(entry.mimeType, entry.encoding, 200, "OK", entry.headers, stream);
+        } catch (IOException e) {
+            // Evicted or removed from disk in the meantime
+            synchronized (this) {
+                if (entries.get(entry.url) == entry) {
+                    entries.remove(entry.url);
+                    totalSize -= entry.size;
+                }
+            }
+            return null;
+        }
+    }
+
+    private synchronized void put(Entry entry) {
+        Entry previous = entries.put(entry.url, entry);
+        if (previous != null) {
+            totalSize -= previous.size;
+        }
+        totalSize += entry.size;
+        evict();
+    }
+
+    /**
+     * Remove least recently used entries until the cache fits its maximum size.
+     */
+    private void evict() {
+        Iterator<Entry> iterator = entries.values().iterator();
+        while (totalSize > maxSize && iterator.hasNext()) {
+            Entry eldest = iterator.next();
+            iterator.remove();
+            totalSize -= eldest.size;
+            deleteFiles(eldest.key);
+            evictions.incrementAndGet();
+        }
+    }
+
+    /**
+     * Read the index of the entries stored by previous sessions, ordered by last access.
+     */
+    private void ensureLoaded() {
+        if (loaded) {
+            return;
+        }
+        loaded = true;
+
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            Log.e(TAG, "Could not create asset cache directory");
+            return;
+        }
+
+        File[] files = directory.listFiles();
+        if (files == null) {
+            return;
+        }
+
+        List<Entry> stored = new ArrayList<>();
+        Map<String, Long> lastAccess = new HashMap<>();
+        for (File file : files) {
+            String name = file.getName();
+            if (name.endsWith(".tmp")) {
+                file.delete();
+                continue;
+            }
+            if (!name.endsWith(".meta")) {
+                continue;
+            }
+            String key = name.substring(0, name.length() - ".meta".length());
+            File body = getBodyFile(key);
+            Entry entry = readMeta(file);
+            if (entry == null || !body.isFile()) {
+                deleteFiles(key);
+                continue;
+            }
+            entry.size = body.length();
+            stored.add(entry);
+            lastAccess.put(key, body.lastModified());
+        }
+
+        stored.sort((a, b) -> Long.compare(lastAccess.get(a.key), lastAccess.get(b.key)));
+        for (Entry entry : stored) {
+            entries.put(entry.url, entry);
+            totalSize += entry.size;
+        }
+        evict();
+    }
+
+    private long getMaxEntrySize() {
+        return maxSize / 8;
+    }
+
+    private File getBodyFile(String key) {
+        return new File(directory, key + ".body");
+    }
+
+    private File getMetaFile(String key) {
+        return new File(directory, key + ".meta");
+    }
+
+    private void deleteFiles(String key) {
+        getBodyFile(key).delete();
+        getMetaFile(key).delete();
+    }
+
+    private void writeMeta(Entry entry) {
+        try {
+            JSONObject meta = new JSONObject();
+            meta.put("url", entry.url);
+            meta.put("mimeType", entry.mimeType);
+            meta.put("encoding", entry.encoding != null ? entry.encoding : JSONObject.NULL);
+            meta.put("headers", new JSONObject(entry.headers));
+            meta.put("etag", entry.etag != null ? entry.etag : JSONObject.NULL);
+            meta.put("lastModified", entry.lastModified != null ? entry.lastModified : JSONObject.NULL);
+            meta.put("expiresAt", entry.expiresAt);
+
+            try (OutputStream output = new FileOutputStream(getMetaFile(entry.key))) {
+                output.write(meta.toString().getBytes(StandardCharsets.UTF_8));
+            }
+        } catch (Exception e) {
+            Log.e(TAG, "Error writing asset cache entry", e);
+        }
+    }
+
+    private Entry readMeta(File file) {
+        try (InputStream input = new FileInputStream(file)) {
+            byte[] bytes = new byte[(int) file.length()];
+            int offset = 0;
+            int read;
+            while (offset < bytes.length && (read = input.read(bytes, offset, bytes.length - offset)) != -1) {
+                offset += read;
+            }
+            JSONObject meta = new JSONObject(new String(bytes, 0, offset, StandardCharsets.UTF_8));
+
+            Entry entry = new Entry();
+            entry.key = hash(meta.getString("url"));
+            entry.url = meta.getString("url");
+            entry.mimeType = meta.getString("mimeType");
+            entry.encoding = meta.isNull("encoding") ? null : meta.getString("encoding");
+            entry.etag = meta.isNull("etag") ? null : meta.getString("etag");
+            entry.lastModified = meta.isNull("lastModified") ? null : meta.getString("lastModified");
+            entry.expiresAt = meta.getLong("expiresAt");
+            entry.headers = new HashMap<>();
+            JSONObject headers = meta.getJSONObject("headers");
+            Iterator<String> names = headers.keys();
+            while (names.hasNext()) {
+                String name = names.next();
+                entry.headers.put(name, headers.getString(name));
+            }
+            return entry;
+        } catch (Exception e) {
+            Log.w(TAG, "Discarding unreadable asset cache entry " + file.getName());
+            return null;
+        }
+    }
+
+    private static String lower(String value) {
+        return value != null ? value.toLowerCase(Locale.ROOT) : "";
+    }
+
+    private static String hash(String url) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-1").digest(url.getBytes(StandardCharsets.UTF_8));
+            StringBuilder hex = new StringBuilder(digest.length * 2);
+            for (byte b : digest) {
+                hex.append(String.format(Locale.ROOT, "%02x", b));
+            }
+            return hex.toString();
+        } catch (Exception e) {
+            return Integer.toHexString(url.hashCode());
+        }
+    }
+}
@@ -0,0 +1,31 @@
+package net.bitburst.plugins.multiwebview;
+
+import java.util.List;
+
+/**
+ * Selects the webviews a broadcast message is delivered to. Unset fields do not restrict the
+ * recipients.
+ */
+public class BroadcastFilter {
+
+    public enum Visibility {
+        ALL,
+        VISIBLE,
+        HIDDEN;
+
+        public static Visibility fromString(String value) {
+            if ("visible".equals(value)) {
+                return VISIBLE;
+            } else if ("hidden".equals(value)) {
+                return HIDDEN;
+            }
+            return ALL;
+        }
+    }
+
+    public List<String> ids = null;
+    public String urlPattern = null;
+    public Visibility visibility = Visibility.ALL;
+    // Only webviews whose page subscribed to the topic
+    public String topic = null;
+}
@@ -0,0 +1,388 @@
+package net.bitburst.plugins.multiwebview;
+
+import android.webkit.WebResourceRequest;
+import android.webkit.WebResourceResponse;
+import com.getcapacitor.JSObject;
+import java.io.ByteArrayInputStream;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Blocks subresource requests to domains of a filter list, such as trackers and ads.
+ *
+ * The list is compiled once into an immutable rule set: a trie over reversed domain labels,
+ * guarded by a Bloom filter over all rule domains so that most requests are answered without
+ * walking the trie. Loading a new list swaps the rule set atomically. Each webview can allow or
+ * block additional domains, which take precedence over the list. Main frame navigations are
+ * never blocked.
+ *
+ * Supported rule syntax, one rule per line: {@code ||example.com^} blocks a domain and its
+ * subdomains, {@code @@||example.com^} allows them again, and plain or hosts-file style lines
+ * ({@code example.com}, {@code 0.0.0.0 example.com other.com # comment}) block them. Comments and
+ * other rules are ignored, as are the loopback entries hosts files start with, such as
+ * {@code 127.0.0.1 localhost}.
+ *
+ * {@link #intercept} is called on WebView background threads; all methods are thread-safe.
+ */
+public class ContentBlocker {
+
+    private static final byte RULE_NONE = 0;
+    private static final byte RULE_BLOCK = 1;
+    private static final byte RULE_ALLOW = 2;
+
+    private static class Node {
+
+        final Map<String, Node> children = new HashMap<>(4);
+        byte rule = RULE_NONE;
+    }
+
+    /**
+     * Bloom filter over domain strings with k hashes derived from two base hashes.
+     */
+    private static class BloomFilter {
+
+        private static final int HASHES = 4;
+        private static final int BITS_PER_ENTRY = 10;
+
+        private final long[] bits;
+        private final int size;
+
+        BloomFilter(int entries) {
+            size = Math.max(64, entries * BITS_PER_ENTRY);
+            bits = new long[(size + 63) / 64];
+        }
+
+        void add(String value) {
+            int h1 = value.hashCode();
+            int h2 = secondaryHash(value);
+            for (int i = 0; i < HASHES; i++) {
+                int index = ((h1 + i * h2) & 0x7fffffff) % size;
+                bits[index >>> 6] |= 1L << index;
+            }
+        }
+
+        boolean mightContain(String value) {
+            int h1 = value.hashCode();
+            int h2 = secondaryHash(value);
+            for (int i = 0; i < HASHES; i++) {
+                int index = ((h1 + i * h2) & 0x7fffffff) % size;
+                if ((bits[index >>> 6] & (1L << index)) == 0) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private static int secondaryHash(String value) {
+            // FNV-1a; forced odd so the probe sequence does not collapse
+            int hash = 0x811c9dc5;
+            for (int i = 0; i < value.length(); i++) {
+                hash ^= value.charAt(i);
+                hash *= 0x01000193;
+            }
+            return hash | 1;
+        }
+    }
+
+    /**
+     * Compiled, immutable rule set.
+     */
+    private static class Rules {
+
+        static final Rules EMPTY = new Rules(new Node(), new BloomFilter(0), 0);
+
+        final Node root;
+        final BloomFilter filter;
+        final int count;
+
+        Rules(Node root, BloomFilter filter, int count) {
+            this.root = root;
+            this.filter = filter;
+            this.count = count;
+        }
+    }
+
+    /**
+     * Per-webview domains that are allowed or blocked regardless of the rule set.
+     */
+    private static class Overrides {
+
+        final Set<String> allow;
+        final Set<String> block;
+
+        Overrides(Set<String> allow, Set<String> block) {
+            this.allow = allow;
+            this.block = block;
+        }
+    }
+
+    private static final Overrides NO_OVERRIDES = new Overrides(Collections.emptySet(), Collections.emptySet());
+
+    // Names of the local machine in hosts files; blocking them would break local servers
+    private static final Set<String> LOCAL_HOSTNAMES = new HashSet<>(
+        Arrays.asList(
+            "localhost",
+            "localhost.localdomain",
+            "local",
+            "broadcasthost",
+            "ip6-localhost",
+            "ip6-loopback",
+            "ip6-localnet",
+            "ip6-mcastprefix",
+            "ip6-allnodes",
+            "ip6-allrouters",
+            "ip6-allhosts",
+            "0.0.0.0",
+            "127.0.0.1"
+        )
+    );
+
+    private final AtomicReference<Rules> rules = new AtomicReference<>(Rules.EMPTY);
+    private final Map<String, Overrides> overrides = new ConcurrentHashMap<>();
+    private final Map<String, AtomicLong> blockedByWebview = new ConcurrentHashMap<>();
+    private final AtomicLong checked = new AtomicLong();
+    private final AtomicLong blocked = new AtomicLong();
+    private final AtomicLong reloads = new AtomicLong();
+
+    /**
+     * Compile a filter list and replace the current rule set with it.
+     *
+     * @return the number of rules compiled
+     */
+    public int load(String list) {
+        Map<String, Byte> domains = new HashMap<>();
+        for (String line : list.split("\n")) {
+            line = line.trim();
+            if (line.isEmpty() || line.startsWith("!") || line.startsWith("#") || line.startsWith("[")) {
+                continue;
+            }
+
+            byte rule = RULE_BLOCK;
+            if (line.startsWith("@@")) {
+                rule = RULE_ALLOW;
+                line = line.substring(2);
+            }
+
+            if (line.startsWith("||")) {
+                int end = line.indexOf('^');
+                if (end < 0 || end != line.length() - 1) {
+                    // Path or option rules are not supported
+                    continue;
+                }
+                addRule(domains, line.substring(2, end), rule);
+            } else if (rule == RULE_BLOCK) {
+                String[] parts = line.split("\\s+");
+                if (parts.length > 1 && (parts[0].equals("0.0.0.0") || parts[0].equals("127.0.0.1"))) {
+                    // Hosts file line: an address, any number of names and an optional comment
+                    for (int i = 1; i < parts.length; i++) {
+                        int comment = parts[i].indexOf('#');
+                        addHostName(domains, comment >= 0 ? parts[i].substring(0, comment) : parts[i]);
+                        if (comment >= 0) {
+                            break;
+                        }
+                    }
+                } else {
+                    addHostName(domains, line);
+                }
+            }
+        }
+
+        Node root = new Node();
+        BloomFilter filter = new BloomFilter(domains.size());
+        for (Map.Entry<String, Byte> entry : domains.entrySet()) {
+            String[] labels = entry.getKey().split("\\.");
+            Node node = root;
+            for (int i = labels.length - 1; i >= 0; i--) {
+                Node child = node.children.get(labels[i]);
+                if (child == null) {
+                    child = new Node();
+                    node.children.put(labels[i], child);
+                }
+                node = child;
+            }
+            node.rule = entry.getValue();
+            filter.add(entry.getKey());
+        }
+
+        rules.set(new Rules(root, filter, domains.size()));
+        reloads.incrementAndGet();
+        return domains.size();
+    }
+
+    public void clear() {
+        rules.set(Rules.EMPTY);
+        reloads.incrementAndGet();
+    }
+
+    /**
+     * Replace the domains a webview allows or blocks in addition to the rule set.
+     */
+    public void setOverrides(String webviewId, List<String> allow, List<String> block) {
+        overrides.put(webviewId, new Overrides(normalize(allow), normalize(block)));
+    }
+
+    /**
+     * Forget the overrides and counters of a destroyed webview.
+     */
+    public void removeWebview(String webviewId) {
+        overrides.remove(webviewId);
+        blockedByWebview.remove(webviewId);
+    }
+
+    /**
+     * Live counter of the requests blocked for a webview.
+     */
+    public AtomicLong getBlockedCounter(String webviewId) {
+        AtomicLong counter = blockedByWebview.get(webviewId);
+        if (counter == null) {
+            AtomicLong created = new AtomicLong();
+            counter = blockedByWebview.putIfAbsent(webviewId, created);
+            if (counter == null) {
+                counter = created;
+            }
+        }
+        return counter;
+    }
+
+    /**
+     * Return an empty response for a request that is blocked for the webview, or null to let it
+     * through.
+     */
+    public WebResourceResponse intercept(String webviewId, WebResourceRequest request) {
+        Rules current = rules.get();
+        Overrides webviewOverrides = overrides.get(webviewId);
+        if ((current.count == 0 && webviewOverrides == null) || request.isForMainFrame()) {
+            return null;
+        }
+
+        String host = request.getUrl().getHost();
+        if (host == null) {
+            return null;
+        }
+
+        checked.incrementAndGet();
+        if (!shouldBlock(current, webviewOverrides != null ? webviewOverrides : NO_OVERRIDES, host.toLowerCase(Locale.ROOT))) {
+            return null;
+        }
+
+        blocked.incrementAndGet();
+        // Not recreated for a webview that was already removed
+        AtomicLong counter = blockedByWebview.get(webviewId);
+        if (counter != null) {
+            counter.incrementAndGet();
+        }
+        return new WebResourceResponse("text/plain", "utf-8", new ByteArrayInputStream(new byte[0]));
+    }
+
+    public JSObject getStats() {
+        JSObject stats = new JSObject();
+        stats.put("rules", rules.get().count);
+        stats.put("reloads", reloads.get());
+        stats.put("checked", checked.get());
+        stats.put("blocked", blocked.get());
+        return stats;
+    }
+
+    private static boolean shouldBlock(Rules current, Overrides webviewOverrides, String host) {
+        // Webview overrides first, from the full host up to its registrable suffixes
+        if (!webviewOverrides.allow.isEmpty() || !webviewOverrides.block.isEmpty()) {
+            for (int start = 0; start >= 0; start = nextSuffix(host, start)) {
+                String suffix = host.substring(start);
+                if (webviewOverrides.allow.contains(suffix)) {
+                    return false;
+                }
+                if (webviewOverrides.block.contains(suffix)) {
+                    return true;
+                }
+            }
+        }
+
+        if (current.count == 0 || !mightMatch(current.filter, host)) {
+            return false;
+        }
+
+        // Walk the trie from the top-level domain; an exception anywhere on the path wins
+        boolean block = false;
+        Node node = current.root;
+        int end = host.length();
+        while (end > 0 && node != null) {
+            int start = host.lastIndexOf('.', end - 1) + 1;
+            node = node.children.get(host.substring(start, end));
+            if (node != null) {
+                if (node.rule == RULE_ALLOW) {
+                    return false;
+                }
+                block |= node.rule == RULE_BLOCK;
+            }
+            end = start - 1;
+        }
+        return block;
+    }
+
+    private static boolean mightMatch(BloomFilter filter, String host) {
+        for (int start = 0; start >= 0; start = nextSuffix(host, start)) {
+            if (filter.mightContain(host.substring(start))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Start of the next shorter domain suffix after the one starting at start, or -1.
+     */
+    private static int nextSuffix(String host, int start) {
+        int dot = host.indexOf('.', start);
+        return dot < 0 ? -1 : dot + 1;
+    }
+
+    private static void addHostName(Map<String, Byte> domains, String name) {
+        if (!LOCAL_HOSTNAMES.contains(name.toLowerCase(Locale.ROOT))) {
+            addRule(domains, name, RULE_BLOCK);
+        }
+    }
+
+    private static void addRule(Map<String, Byte> domains, String domain, byte rule) {
+        domain = domain.toLowerCase(Locale.ROOT);
+        if (!isDomain(domain)) {
+            return;
+        }
+        // Exceptions win over blocks of the same domain
+        if (rule == RULE_ALLOW || !domains.containsKey(domain)) {
+            domains.put(domain, rule);
+        }
+    }
+
+    private static boolean isDomain(String value) {
+        if (value.isEmpty() || value.startsWith(".") || value.endsWith(".")) {
+            return false;
+        }
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (!(c >= 'a' && c <= 'z') && !(c >= '0' && c <= '9') && c != '-' && c != '.' && c != '_') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static Set<String> normalize(List<String> domains) {
+        if (domains == null || domains.isEmpty()) {
+            return Collections.emptySet();
+        }
+        Set<String> normalized = new HashSet<>();
+        for (String domain : domains) {
+            normalized.add(domain.trim().toLowerCase(Locale.ROOT));
+        }
+        return Collections.unmodifiableSet(normalized);
+    }
+}
@@ -0,0 +1,252 @@
+package net.bitburst.plugins.multiwebview;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.view.Choreographer;
+import com.getcapacitor.JSObject;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Emits plugin events only when someone will receive them.
+ *
+ * Event data is passed as a factory that is only invoked if the event has listeners and passes
+ * the filter set for its event type, so unobserved events cost no allocation. A filter limits an
+ * event type, or all event types, to a set of webview ids, and can coalesce the event: only the
+ * latest event of that type per webview is emitted on the next frame, and its data is built then.
+ * Only events whose latest state supersedes earlier ones can be coalesced; for all others the
+ * coalesce flag is ignored. A pending coalesced event is emitted before any later event about the
+ * same webview, so listeners see events in order.
+ *
+ * All methods are thread-safe. Coalesced events are emitted on the UI thread.
+ */
+public class EventEmitter {
+
+    /**
+     * Filter key that applies to event types without their own filter.
+     */
+    public static final String ALL_EVENTS = "*";
+
+    // Events that only report the latest state, so dropping all but the last loses nothing
+    private static final Set<String> COALESCABLE_EVENTS = Collections.unmodifiableSet(
+        new HashSet<>(Arrays.asList("loadStart", "transferProgress", "metrics"))
+    );
+
+    public interface Sink {
+        boolean hasListeners(String eventName);
+
+        void emit(String eventName, JSObject data);
+    }
+
+    /**
+     * Builds the data of an event once it is known to be emitted.
+     */
+    public interface EventData {
+        JSObject build();
+    }
+
+    private static class Filter {
+
+        // Null matches every webview
+        final Set<String> ids;
+        final boolean coalesce;
+
+        Filter(Set<String> ids, boolean coalesce) {
+            this.ids = ids;
+            this.coalesce = coalesce;
+        }
+    }
+
+    private static class PendingEvent {
+
+        final String eventName;
+        final String webviewId;
+        final EventData data;
+
+        PendingEvent(String eventName, String webviewId, EventData data) {
+            this.eventName = eventName;
+            this.webviewId = webviewId;
+            this.data = data;
+        }
+    }
+
+    private final Sink sink;
+    private final Handler uiHandler = new Handler(Looper.getMainLooper());
+
+    // Filters by event name, replaced as a whole on every change
+    private final AtomicReference<Map<String, Filter>> filters = new AtomicReference<>(Collections.emptyMap());
+
+    // Latest coalesced event per event name and webview; guarded by this
+    private final Map<String, PendingEvent> pending = new LinkedHashMap<>();
+    private boolean frameScheduled = false;
+
+    private final AtomicLong emitted = new AtomicLong();
+    private final AtomicLong skipped = new AtomicLong();
+    private final AtomicLong coalesced = new AtomicLong();
+
+    private final Choreographer.FrameCallback frameCallback = frameTimeNanos -> flush();
+    private final Runnable scheduleFrame = () -> Choreographer.getInstance().postFrameCallback(frameCallback);
+
+    public EventEmitter(Sink sink) {
+        this.sink = sink;
+    }
+
+    /**
+     * Whether an event of the type about the webview would be emitted right now.
+     *
+     * @param webviewId the webview the event is about, or null for events not about a webview
+     */
+    public boolean wants(String eventName, String webviewId) {
+        if (!sink.hasListeners(eventName)) {
+            return false;
+        }
+        Filter filter = getFilter(eventName);
+        return filter == null || filter.ids == null || webviewId == null || filter.ids.contains(webviewId);
+    }
+
+    /**
+     * Emit an event, building its data only if it has listeners and passes its filter.
+     */
+    public void emit(String eventName, String webviewId, EventData data) {
+        if (!wants(eventName, webviewId)) {
+            skipped.incrementAndGet();
+            return;
+        }
+
+        Filter filter = getFilter(eventName);
+        if (filter == null || !filter.coalesce || !COALESCABLE_EVENTS.contains(eventName)) {
+            if (webviewId != null) {
+                flushPending(webviewId);
+            }
+            emitted.incrementAndGet();
+            sink.emit(eventName, data.build());
+            return;
+        }
+
+        String key = webviewId != null ? eventName + "\n" + webviewId : eventName;
+        synchronized (this) {
+            if (pending.put(key, new PendingEvent(eventName, webviewId, data)) != null) {
+                coalesced.incrementAndGet();
+            }
+            if (frameScheduled) {
+                return;
+            }
+            frameScheduled = true;
+        }
+        if (Looper.myLooper() == Looper.getMainLooper()) {
+            scheduleFrame.run();
+        } else {
+            uiHandler.post(scheduleFrame);
+        }
+    }
+
+    /**
+     * Set or replace the filter of an event type, or of every event type without its own filter
+     * if eventName is {@link #ALL_EVENTS}.
+     *
+     * @param ids webviews to emit the events for, or null for all webviews
+     * @param coalesce whether to only emit the latest event per webview and frame; ignored for
+     * events that cannot be coalesced
+     */
+    public void setFilter(String eventName, List<String> ids, boolean coalesce) {
+        Filter filter = new Filter(ids != null ? Collections.unmodifiableSet(new HashSet<>(ids)) : null, coalesce);
+        while (true) {
+            Map<String, Filter> current = filters.get();
+            Map<String, Filter> next = new LinkedHashMap<>(current);
+            next.put(eventName, filter);
+            if (filters.compareAndSet(current, Collections.unmodifiableMap(next))) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Remove the filter of an event type, or every filter if eventName is null.
+     */
+    public void clearFilter(String eventName) {
+        while (true) {
+            Map<String, Filter> current = filters.get();
+            Map<String, Filter> next;
+            if (eventName == null) {
+                next = Collections.emptyMap();
+            } else {
+                if (!current.containsKey(eventName)) {
+                    return;
+                }
+                next = new LinkedHashMap<>(current);
+                next.remove(eventName);
+                next = Collections.unmodifiableMap(next);
+            }
+            if (filters.compareAndSet(current, next)) {
+                return;
+            }
+        }
+    }
+
+    public JSObject getStats() {
+        JSObject stats = new JSObject();
+        stats.put("emitted", emitted.get());
+        stats.put("skipped", skipped.get());
+        stats.put("coalesced", coalesced.get());
+        return stats;
+    }
+
+    private Filter getFilter(String eventName) {
+        Map<String, Filter> current = filters.get();
+        Filter filter = current.get(eventName);
+        return filter != null ? filter : current.get(ALL_EVENTS);
+    }
+
+    private void flush() {
+        List<PendingEvent> events;
+        synchronized (this) {
+            frameScheduled = false;
+            events = new ArrayList<>(pending.values());
+            pending.clear();
+        }
+        emitPending(events);
+    }
+
+    /**
+     * Emit the pending coalesced events about a webview ahead of a later event about it.
+     */
+    private void flushPending(String webviewId) {
+        List<PendingEvent> events = null;
+        synchronized (this) {
+            for (Iterator<PendingEvent> iterator = pending.values().iterator(); iterator.hasNext();) {
+                PendingEvent event = iterator.next();
+                if (webviewId.equals(event.webviewId)) {
+                    if (events == null) {
+                        events = new ArrayList<>();
+                    }
+                    events.add(event);
+                    iterator.remove();
+                }
+            }
+        }
+        if (events != null) {
+            emitPending(events);
+        }
+    }
+
+    private void emitPending(List<PendingEvent> events) {
+        for (PendingEvent event : events) {
+            // Listeners may have been removed since the event was queued
+            if (sink.hasListeners(event.eventName)) {
+                emitted.incrementAndGet();
+                sink.emit(event.eventName, event.data.build());
+            } else {
+                skipped.incrementAndGet();
+            }
+        }
+    }
+}
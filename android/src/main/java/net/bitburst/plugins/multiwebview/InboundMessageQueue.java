@@ -0,0 +1,290 @@
+package net.bitburst.plugins.multiwebview;
+
+import android.util.Log;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.json.JSONTokener;
+
+/**
+ * Bounded per-webview queue of messages posted by the page.
+ *
+ * Bridge threads only append the raw message strings; parsing and delivery happen on a shared
+ * background executor. Messages arriving within the batch window are delivered together. The
+ * depth counts messages, including each element of a batch. When the queue is full the configured
+ * overflow policy decides whether the newest messages are dropped, the oldest messages are
+ * dropped, or the posting thread waits for room. A batch is kept or dropped as a whole, and a
+ * batch larger than the queue is always dropped. Once the executor is shut down the queue closes.
+ */
+public class InboundMessageQueue {
+
+    private static final String TAG = "InboundMessageQueue";
+
+    public static final int DEFAULT_MAX_DEPTH = 500;
+    public static final long DEFAULT_WINDOW_MS = 16;
+    public static final long BLOCK_TIMEOUT_MS = 250;
+
+    public enum OverflowPolicy {
+        DROP_NEWEST,
+        DROP_OLDEST,
+        BLOCK;
+
+        public static OverflowPolicy fromString(String value) {
+            if ("dropOldest".equals(value)) {
+                return DROP_OLDEST;
+            } else if ("block".equals(value)) {
+                return BLOCK;
+            }
+            return DROP_NEWEST;
+        }
+    }
+
+    public interface Listener {
+        /**
+         * Called on the background executor with the parsed messages of one flush, in order.
+         */
+        void onMessages(List<Object> messages);
+    }
+
+    private static class Entry {
+
+        final String raw;
+        final boolean batch;
+        final int count;
+
+        Entry(String raw, boolean batch, int count) {
+            this.raw = raw;
+            this.batch = batch;
+            this.count = count;
+        }
+    }
+
+    private final ScheduledExecutorService executor;
+    private final Listener listener;
+    private final int maxDepth;
+    private final long windowMs;
+    private final OverflowPolicy overflowPolicy;
+
+    private final ArrayDeque<Entry> pending = new ArrayDeque<>();
+    // Number of messages in pending
+    private int pendingCount = 0;
+    private boolean flushScheduled = false;
+    private boolean closed = false;
+
+    private long received = 0;
+    private long delivered = 0;
+    private long dropped = 0;
+
+    public InboundMessageQueue(
+        ScheduledExecutorService executor,
+        Listener listener,
+        int maxDepth,
+        long windowMs,
+        OverflowPolicy overflowPolicy
+    ) {
+        this.executor = executor;
+        this.listener = listener;
+        this.maxDepth = maxDepth > 0 ? maxDepth : DEFAULT_MAX_DEPTH;
+        this.windowMs = Math.max(0, windowMs);
+        this.overflowPolicy = overflowPolicy;
+    }
+
+    /**
+     * Queue a single raw JSON message.
+     */
+    public void offer(String message) {
+        add(new Entry(message, false, 1));
+    }
+
+    /**
+     * Queue a raw JSON array whose elements are delivered as individual messages.
+     */
+    public void offerBatch(String messages) {
+        add(new Entry(messages, true, countElements(messages)));
+    }
+
+    public synchronized long getReceivedCount() {
+        return received;
+    }
+
+    public synchronized long getDeliveredCount() {
+        return delivered;
+    }
+
+    public synchronized long getDroppedCount() {
+        return dropped;
+    }
+
+    public synchronized void close() {
+        closed = true;
+        pending.clear();
+        pendingCount = 0;
+        notifyAll();
+    }
+
+    private synchronized void add(Entry entry) {
+        if (closed || entry.count == 0) {
+            return;
+        }
+        received += entry.count;
+
+        if (entry.count > maxDepth) {
+            dropped += entry.count;
+            return;
+        }
+        if (pendingCount + entry.count > maxDepth) {
+            switch (overflowPolicy) {
+                case DROP_OLDEST:
+                    while (pendingCount + entry.count > maxDepth) {
+                        Entry oldest = pending.pollFirst();
+                        pendingCount -= oldest.count;
+                        dropped += oldest.count;
+                    }
+                    break;
+                case BLOCK:
+                    long deadline = System.currentTimeMillis() + BLOCK_TIMEOUT_MS;
+                    long remaining = BLOCK_TIMEOUT_MS;
+                    while (pendingCount + entry.count > maxDepth && !closed && remaining > 0) {
+                        try {
+                            wait(remaining);
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                            break;
+                        }
+                        remaining = deadline - System.currentTimeMillis();
+                    }
+                    if (pendingCount + entry.count > maxDepth || closed) {
+                        dropped += entry.count;
+                        return;
+                    }
+                    break;
+                default:
+                    dropped += entry.count;
+                    return;
+            }
+        }
+
+        pending.addLast(entry);
+        pendingCount += entry.count;
+        if (!flushScheduled) {
+            flushScheduled = true;
+            try {
+                executor.schedule(this::flush, windowMs, TimeUnit.MILLISECONDS);
+            } catch (RejectedExecutionException e) {
+                // The manager is being destroyed; nobody would receive the messages
+                dropped += pendingCount;
+                close();
+            }
+        }
+    }
+
+    /**
+     * Parse a message as a single JSON value of the given type. Unlike a plain JSONTokener, text
+     * after the value is an error, so malformed messages are logged instead of delivered.
+     */
+    private static Object parse(String raw, Class<?> type) throws JSONException {
+        JSONTokener tokener = new JSONTokener(raw);
+        Object value = tokener.nextValue();
+        if (!type.isInstance(value)) {
+            throw new JSONException("Expected a " + type.getSimpleName());
+        }
+        if (tokener.nextClean() != 0) {
+            throw new JSONException("Unexpected text after " + type.getSimpleName());
+        }
+        return value;
+    }
+
+    /**
+     * Count the elements of a JSON array without parsing it, so the bridge thread only scans the
+     * text. Null is an empty batch; text that is not an array counts as one message and fails to
+     * parse later.
+     */
+    static int countElements(String raw) {
+        if (raw == null) {
+            return 0;
+        }
+        int length = raw.length();
+        int start = 0;
+        while (start < length && Character.isWhitespace(raw.charAt(start))) {
+            start++;
+        }
+        if (start == length || raw.charAt(start) != '[') {
+            return 1;
+        }
+
+        int count = 0;
+        int depth = 0;
+        boolean inString = false;
+        boolean empty = true;
+        for (int i = start; i < length; i++) {
+            char c = raw.charAt(i);
+            if (inString) {
+                if (c == '\\') {
+                    i++;
+                } else if (c == '"') {
+                    inString = false;
+                }
+                continue;
+            }
+            if (c == '"') {
+                inString = true;
+            } else if (c == '[' || c == '{') {
+                depth++;
+            } else if (c == ']' || c == '}') {
+                depth--;
+                if (depth == 0) {
+                    break;
+                }
+            } else if (c == ',' && depth == 1) {
+                count++;
+            }
+            if (depth >= 1 && !(depth == 1 && (c == '[' || c == ',')) && !Character.isWhitespace(c)) {
+                empty = false;
+            }
+        }
+        return empty ? 0 : count + 1;
+    }
+
+    private void flush() {
+        List<Entry> entries;
+        synchronized (this) {
+            flushScheduled = false;
+            if (closed || pending.isEmpty()) {
+                return;
+            }
+            entries = new ArrayList<>(pending);
+            pending.clear();
+            pendingCount = 0;
+            notifyAll();
+        }
+
+        List<Object> messages = new ArrayList<>(entries.size());
+        for (Entry entry : entries) {
+            try {
+                if (entry.batch) {
+                    JSONArray batch = (JSONArray) parse(entry.raw, JSONArray.class);
+                    for (int i = 0; i < batch.length(); i++) {
+                        messages.add(batch.get(i));
+                    }
+                } else {
+                    messages.add(parse(entry.raw, JSONObject.class));
+                }
+            } catch (Exception e) {
+                Log.e(TAG, "Error parsing message", e);
+            }
+        }
+
+        synchronized (this) {
+            delivered += messages.size();
+        }
+        if (!messages.isEmpty()) {
+            listener.onMessages(messages);
+        }
+    }
+}
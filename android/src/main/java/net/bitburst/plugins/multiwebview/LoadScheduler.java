@@ -0,0 +1,204 @@
+package net.bitburst.plugins.multiwebview;
+
+import android.os.Handler;
+import android.os.Looper;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Orders page loads across webviews so the focused webview is not competing with background
+ * pages for network and CPU.
+ *
+ * Loads of the focused webview start immediately. Loads of other webviews are queued and start
+ * only while the focused webview is not loading, visible webviews before hidden ones, with at most
+ * {@code maxBackgroundLoads} of them in flight. Priorities are evaluated on every dispatch, so a
+ * focus change reorders the queue. A webview has at most one queued load; a newer one replaces it.
+ * A load holds its slot until its main frame finished or failed, or for at most
+ * {@link #LOAD_TIMEOUT_MS}, so loads that hang or end without a callback, such as downloads, do
+ * not block the queue.
+ *
+ * All methods must be called on the UI thread.
+ */
+public class LoadScheduler {
+
+    public static final int PRIORITY_FOCUSED = 0;
+    public static final int PRIORITY_VISIBLE = 1;
+    public static final int PRIORITY_HIDDEN = 2;
+    public static final int PRIORITY_PRERENDER = 3;
+
+    public static final int DEFAULT_MAX_BACKGROUND_LOADS = 2;
+    public static final long LOAD_TIMEOUT_MS = 30000;
+
+    public interface Host {
+        /**
+         * One of the PRIORITY_ constants for the webview with the given id.
+         */
+        int getLoadPriority(String id);
+
+        /**
+         * Start loading the URL. Returns false if the webview has no live WebView anymore.
+         */
+        boolean startLoad(String id, String url);
+
+        /**
+         * The slot of a load was released without a call to {@link #finished}, because the load
+         * timed out.
+         */
+        void onLoadReleased(String id);
+    }
+
+    private static class PendingLoad {
+
+        final String url;
+        final long sequence;
+
+        PendingLoad(String url, long sequence) {
+            this.url = url;
+            this.sequence = sequence;
+        }
+    }
+
+    private final Host host;
+    private final Map<String, PendingLoad> queued = new LinkedHashMap<>();
+    // Loads in flight and the timeouts that release their slots
+    private final Map<String, Runnable> active = new HashMap<>();
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private long nextSequence = 0;
+    private int maxBackgroundLoads;
+
+    public LoadScheduler(Host host, int maxBackgroundLoads) {
+        this.host = host;
+        this.maxBackgroundLoads = Math.max(0, maxBackgroundLoads);
+    }
+
+    /**
+     * Schedule a load. A webview that is already loading navigates right away, as the new load
+     * replaces the one holding its slot.
+     */
+    public void enqueue(String id, String url) {
+        if (active.containsKey(id)) {
+            queued.remove(id);
+            release(id);
+            if (host.startLoad(id, url)) {
+                activate(id);
+            }
+            dispatch();
+            return;
+        }
+
+        queued.put(id, new PendingLoad(url, nextSequence++));
+        dispatch();
+    }
+
+    /**
+     * Release the slot of a webview whose main frame finished or failed loading.
+     */
+    public void finished(String id) {
+        if (release(id)) {
+            dispatch();
+        }
+    }
+
+    /**
+     * Forget a webview, e.g. when it is destroyed or its WebView is released.
+     *
+     * @return the URL of its queued load, or null if it had none
+     */
+    public String remove(String id) {
+        release(id);
+        PendingLoad pending = queued.remove(id);
+        dispatch();
+        return pending != null ? pending.url : null;
+    }
+
+    /**
+     * Start queued loads that are allowed to run under the current priorities.
+     */
+    public void dispatch() {
+        if (queued.isEmpty()) {
+            return;
+        }
+
+        boolean foregroundLoading = false;
+        int backgroundLoading = 0;
+        for (String id : active.keySet()) {
+            if (host.getLoadPriority(id) == PRIORITY_FOCUSED) {
+                foregroundLoading = true;
+            } else {
+                backgroundLoading++;
+            }
+        }
+
+        for (String id : getOrderedQueue()) {
+            if (host.getLoadPriority(id) != PRIORITY_FOCUSED) {
+                if (foregroundLoading || (maxBackgroundLoads > 0 && backgroundLoading >= maxBackgroundLoads)) {
+                    // The queue is ordered, so no later entry may start either
+                    break;
+                }
+                backgroundLoading++;
+            }
+
+            PendingLoad pending = queued.remove(id);
+            if (host.startLoad(id, pending.url)) {
+                activate(id);
+            }
+        }
+    }
+
+    /**
+     * Zero-based positions of all queued loads in start order.
+     */
+    public Map<String, Integer> getQueuePositions() {
+        Map<String, Integer> positions = new HashMap<>();
+        int position = 0;
+        for (String id : getOrderedQueue()) {
+            positions.put(id, position++);
+        }
+        return positions;
+    }
+
+    public boolean isLoading(String id) {
+        return active.containsKey(id);
+    }
+
+    private void activate(String id) {
+        Runnable timeout = new Runnable() {
+            @Override
+            public void run() {
+                // Still the same load; it never reported finishing
+                if (active.get(id) == this) {
+                    active.remove(id);
+                    dispatch();
+                    host.onLoadReleased(id);
+                }
+            }
+        };
+        active.put(id, timeout);
+        handler.postDelayed(timeout, LOAD_TIMEOUT_MS);
+    }
+
+    private boolean release(String id) {
+        Runnable timeout = active.remove(id);
+        if (timeout == null) {
+            return false;
+        }
+        handler.removeCallbacks(timeout);
+        return true;
+    }
+
+    private List<String> getOrderedQueue() {
+        List<String> ids = new ArrayList<>(queued.keySet());
+        Map<String, Integer> priorities = new HashMap<>();
+        for (String id : ids) {
+            priorities.put(id, host.getLoadPriority(id));
+        }
+        ids.sort((a, b) -> {
+            int byPriority = Integer.compare(priorities.get(a), priorities.get(b));
+            return byPriority != 0 ? byPriority : Long.compare(queued.get(a).sequence, queued.get(b).sequence);
+        });
+        return ids;
+    }
+}
@@ -0,0 +1,165 @@
+package net.bitburst.plugins.multiwebview;
+
+import android.annotation.TargetApi;
+import android.net.Uri;
+import android.os.Build;
+import android.os.Handler;
+import android.util.Log;
+import android.webkit.WebMessage;
+import android.webkit.WebMessagePort;
+import android.webkit.WebView;
+import java.util.List;
+
+/**
+ * Message channel between native and a webview page built on a WebMessagePort pair.
+ *
+ * One port is transferred to the page after each page load; a small shim installed in the page
+ * routes window.MultiWebviewBridge.postMessage over that port and dispatches incoming batches as
+ * multiwebview-message events. Messages therefore travel without script evaluation or escaping.
+ * The port is only posted to the origin of the page that finished loading, and the shim only
+ * accepts it from native, never from a frame. Pages without an http(s) origin get no channel.
+ *
+ * Must be opened and used on the UI thread.
+ */
+@TargetApi(Build.VERSION_CODES.M)
+public class MessagePortChannel {
+
+    private static final String TAG = "MessagePortChannel";
+    private static final String PORT_MESSAGE = "multiwebview-port";
+
+    private static final String PAGE_SHIM =
+        "(function() {" +
+        "if (window.__multiWebviewChannel) return;" +
+        "window.__multiWebviewChannel = true;" +
+        "var nativeBridge = window." +
+        MultiWebviewManager.BRIDGE_NAME +
+        ";" +
+        "var port = null;" +
+        "var bridge = {};" +
+        "for (var key in nativeBridge) {" +
+        "  if (typeof nativeBridge[key] === 'function') {" +
+        "    bridge[key] = (function(name) { return function() { return nativeBridge[name].apply(nativeBridge, arguments); }; })(key);" +
+        "  }" +
+        "}" +
+        "bridge.postMessage = function(message) {" +
+        "  if (port) { port.postMessage(String(message)); } else { nativeBridge.postMessage(message); }" +
+        "};" +
+        "window." +
+        MultiWebviewManager.BRIDGE_NAME +
+        " = bridge;" +
+        "window.addEventListener('message', function(e) {" +
+        "  if (e.data !== '" +
+        PORT_MESSAGE +
+        "' || !e.ports || !e.ports.length) return;" +
+        // Posted by native without a source window; frames could otherwise hand in their own port
+        "  if (e.source !== null && e.source !== window) return;" +
+        "  e.stopImmediatePropagation();" +
+        "  port = e.ports[0];" +
+        "  port.onmessage = function(event) {" +
+        "    var m = JSON.parse(event.data);" +
+        "    for (var i = 0; i < m.length; i++) {" +
+        "      window.dispatchEvent(new CustomEvent('multiwebview-message', {detail: m[i]}));" +
+        "    }" +
+        "  };" +
+        "}, true);" +
+        "})();";
+
+    public interface Receiver {
+        void onMessage(String message);
+    }
+
+    private WebMessagePort nativePort = null;
+    private boolean open = false;
+
+    /**
+     * Install the page shim and transfer a fresh port to the current document.
+     *
+     * @param receiver receives messages posted by the page
+     * @param handler handler on whose thread the receiver is called
+     * @param onOpen called on the UI thread once the port was transferred to the page
+     */
+    public void open(WebView webView, Receiver receiver, Handler handler, Runnable onOpen) {
+        close();
+
+        Uri origin = getOrigin(webView.getUrl());
+        if (origin == null) {
+            // No origin to restrict the port to; messages are delivered by script evaluation
+            return;
+        }
+
+        WebMessagePort[] ports = webView.createWebMessageChannel();
+        WebMessagePort port = ports[0];
+        nativePort = port;
+        port.setWebMessageCallback(
+            new WebMessagePort.WebMessageCallback() {
+                @Override
+                public void onMessage(WebMessagePort p, WebMessage message) {
+                    receiver.onMessage(message.getData());
+                }
+            },
+            handler
+        );
+
+        webView.evaluateJavascript(PAGE_SHIM, value -> {
+            if (nativePort != port) {
+                // Closed or reopened in the meantime
+                ports[1].close();
+                return;
+            }
+            try {
+                webView.postWebMessage(new WebMessage(PORT_MESSAGE, new WebMessagePort[] { ports[1] }), origin);
+                open = true;
+                onOpen.run();
+            } catch (Exception e) {
+                Log.e(TAG, "Error transferring message port", e);
+                close();
+            }
+        });
+    }
+
+    public boolean isOpen() {
+        return open;
+    }
+
+    /**
+     * Post a batch of serialized payloads. Returns false if the channel is not open.
+     */
+    public boolean post(List<String> payloads) {
+        if (!open) {
+            return false;
+        }
+
+        StringBuilder batch = new StringBuilder();
+        batch.append('[');
+        for (int i = 0; i < payloads.size(); i++) {
+            if (i > 0) {
+                batch.append(',');
+            }
+            batch.append(payloads.get(i));
+        }
+        batch.append(']');
+
+        nativePort.postMessage(new WebMessage(batch.toString()));
+        return true;
+    }
+
+    private static Uri getOrigin(String url) {
+        if (url == null) {
+            return null;
+        }
+        Uri uri = Uri.parse(url);
+        String scheme = uri.getScheme();
+        if (uri.getHost() == null || !("https".equalsIgnoreCase(scheme) || "http".equalsIgnoreCase(scheme))) {
+            return null;
+        }
+        return Uri.parse(scheme + "://" + uri.getHost() + (uri.getPort() != -1 ? ":" + uri.getPort() : ""));
+    }
+
+    public void close() {
+        open = false;
+        if (nativePort != null) {
+            nativePort.close();
+            nativePort = null;
+        }
+    }
+}
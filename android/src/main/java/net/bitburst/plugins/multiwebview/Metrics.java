@@ -0,0 +1,276 @@
+package net.bitburst.plugins.multiwebview;
+
+import com.getcapacitor.JSArray;
+import com.getcapacitor.JSObject;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Counters and latency histograms of the plugin, globally and per webview.
+ *
+ * Recording updates atomics created up front, so it is cheap enough to stay enabled in release
+ * builds; only the first call of a new RPC method creates its histogram. Message sizes are
+ * counted in UTF-16 chars as they cross the bridge, not in encoded bytes. Histograms use fixed power-of-two buckets over microseconds:
+ * bucket 0 holds values below 1 microsecond, bucket i values in [2^(i-1), 2^i) microseconds.
+ *
+ * All methods are thread-safe.
+ */
+public class Metrics {
+
+    /**
+     * Latency histogram with fixed log2 buckets.
+     */
+    public static class Histogram {
+
+        static final int BUCKETS = 32;
+
+        private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+        private final AtomicLong sumMicros = new AtomicLong();
+        private final AtomicLong maxMicros = new AtomicLong();
+
+        public void recordNanos(long nanos) {
+            long micros = Math.max(0, nanos / 1000);
+            int bucket = Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(micros));
+            buckets.incrementAndGet(bucket);
+            sumMicros.addAndGet(micros);
+
+            long max = maxMicros.get();
+            while (micros > max && !maxMicros.compareAndSet(max, micros)) {
+                max = maxMicros.get();
+            }
+        }
+
+        void reset() {
+            for (int i = 0; i < BUCKETS; i++) {
+                buckets.set(i, 0);
+            }
+            sumMicros.set(0);
+            maxMicros.set(0);
+        }
+
+        /**
+         * Summary in milliseconds. Percentiles are the upper bound of the bucket they fall into.
+         */
+        JSObject toJSObject() {
+            long[] counts = new long[BUCKETS];
+            long total = 0;
+            JSArray bucketArray = new JSArray();
+            for (int i = 0; i < BUCKETS; i++) {
+                counts[i] = buckets.get(i);
+                total += counts[i];
+                bucketArray.put(counts[i]);
+            }
+            long max = maxMicros.get();
+
+            JSObject result = new JSObject();
+            result.put("count", total);
+            result.put("mean", total > 0 ? sumMicros.get() / 1000.0 / total : 0);
+            result.put("max", max / 1000.0);
+            result.put("p50", percentile(counts, total, 0.5, max));
+            result.put("p90", percentile(counts, total, 0.9, max));
+            result.put("p99", percentile(counts, total, 0.99, max));
+            result.put("buckets", bucketArray);
+            return result;
+        }
+
+        private static double percentile(long[] counts, long total, double quantile, long max) {
+            if (total == 0) {
+                return 0;
+            }
+            long target = (long) Math.ceil(total * quantile);
+            long cumulative = 0;
+            for (int i = 0; i < counts.length; i++) {
+                cumulative += counts[i];
+                if (cumulative >= target) {
+                    return Math.min(1L << i, max) / 1000.0;
+                }
+            }
+            return max / 1000.0;
+        }
+    }
+
+    /**
+     * Counters and histograms of a single webview, or the totals over all webviews.
+     */
+    public static class Counters {
+
+        final Histogram pageLoad = new Histogram();
+        final Histogram evaluateJavascript = new Histogram();
+        final AtomicLong pageLoads = new AtomicLong();
+        final AtomicLong loadErrors = new AtomicLong();
+        final AtomicLong messagesIn = new AtomicLong();
+        final AtomicLong messagesOut = new AtomicLong();
+        final AtomicLong charsIn = new AtomicLong();
+        final AtomicLong charsOut = new AtomicLong();
+
+        void reset() {
+            pageLoad.reset();
+            evaluateJavascript.reset();
+            pageLoads.set(0);
+            loadErrors.set(0);
+            messagesIn.set(0);
+            messagesOut.set(0);
+            charsIn.set(0);
+            charsOut.set(0);
+        }
+
+        JSObject toJSObject() {
+            JSObject result = new JSObject();
+            result.put("pageLoad", pageLoad.toJSObject());
+            result.put("evaluateJavascript", evaluateJavascript.toJSObject());
+            result.put("pageLoads", pageLoads.get());
+            result.put("loadErrors", loadErrors.get());
+            result.put("messagesIn", messagesIn.get());
+            result.put("messagesOut", messagesOut.get());
+            result.put("charsIn", charsIn.get());
+            result.put("charsOut", charsOut.get());
+            return result;
+        }
+    }
+
+    private final Counters global = new Counters();
+    private final Histogram uiQueueDelay = new Histogram();
+    private final Map<String, Counters> webviews = new ConcurrentHashMap<>();
+
+    // Per-method latency of page-to-host calls; method names come from pages, so they are capped
+    static final int MAX_RPC_METHODS = 256;
+    private final Map<String, Histogram> rpcLatency = new ConcurrentHashMap<>();
+    private final Map<String, AtomicLong> rpcErrors = new ConcurrentHashMap<>();
+
+    /**
+     * Create the metrics of a new webview. Recording for unknown ids only updates the totals.
+     */
+    public void addWebview(String id) {
+        webviews.put(id, new Counters());
+    }
+
+    public void removeWebview(String id) {
+        webviews.remove(id);
+    }
+
+    public void recordPageLoad(String id, long nanos) {
+        global.pageLoads.incrementAndGet();
+        global.pageLoad.recordNanos(nanos);
+        Counters counters = webviews.get(id);
+        if (counters != null) {
+            counters.pageLoads.incrementAndGet();
+            counters.pageLoad.recordNanos(nanos);
+        }
+    }
+
+    public void recordLoadError(String id) {
+        global.loadErrors.incrementAndGet();
+        Counters counters = webviews.get(id);
+        if (counters != null) {
+            counters.loadErrors.incrementAndGet();
+        }
+    }
+
+    public void recordEvaluateJavascript(String id, long nanos) {
+        global.evaluateJavascript.recordNanos(nanos);
+        Counters counters = webviews.get(id);
+        if (counters != null) {
+            counters.evaluateJavascript.recordNanos(nanos);
+        }
+    }
+
+    /**
+     * Count messages delivered to the host app.
+     */
+    public void recordMessagesIn(String id, int messages) {
+        global.messagesIn.addAndGet(messages);
+        Counters counters = webviews.get(id);
+        if (counters != null) {
+            counters.messagesIn.addAndGet(messages);
+        }
+    }
+
+    /**
+     * Count chars posted by a page, before they are parsed.
+     */
+    public void recordCharsIn(String id, int chars) {
+        global.charsIn.addAndGet(chars);
+        Counters counters = webviews.get(id);
+        if (counters != null) {
+            counters.charsIn.addAndGet(chars);
+        }
+    }
+
+    public void recordMessageOut(String id, int chars) {
+        global.messagesOut.incrementAndGet();
+        global.charsOut.addAndGet(chars);
+        Counters counters = webviews.get(id);
+        if (counters != null) {
+            counters.messagesOut.incrementAndGet();
+            counters.charsOut.addAndGet(chars);
+        }
+    }
+
+    /**
+     * Record the time from the start of a page-to-host call until it completed.
+     */
+    public void recordRpc(String method, long nanos, boolean error) {
+        Histogram histogram = rpcLatency.get(method);
+        if (histogram == null) {
+            if (rpcLatency.size() >= MAX_RPC_METHODS) {
+                return;
+            }
+            Histogram created = new Histogram();
+            histogram = rpcLatency.putIfAbsent(method, created);
+            if (histogram == null) {
+                histogram = created;
+                rpcErrors.put(method, new AtomicLong());
+            }
+        }
+        histogram.recordNanos(nanos);
+        if (error) {
+            AtomicLong errors = rpcErrors.get(method);
+            if (errors != null) {
+                errors.incrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * Record how long a task posted to the UI thread waited before it ran.
+     */
+    public void recordUiQueueDelay(long nanos) {
+        uiQueueDelay.recordNanos(nanos);
+    }
+
+    public void reset() {
+        global.reset();
+        uiQueueDelay.reset();
+        for (Counters counters : webviews.values()) {
+            counters.reset();
+        }
+        rpcLatency.clear();
+        rpcErrors.clear();
+    }
+
+    public JSObject toJSObject() {
+        JSObject globalObj = global.toJSObject();
+        globalObj.put("uiQueueDelay", uiQueueDelay.toJSObject());
+
+        JSObject webviewsObj = new JSObject();
+        for (Map.Entry<String, Counters> entry : webviews.entrySet()) {
+            webviewsObj.put(entry.getKey(), entry.getValue().toJSObject());
+        }
+
+        JSObject rpcObj = new JSObject();
+        for (Map.Entry<String, Histogram> entry : rpcLatency.entrySet()) {
+            JSObject methodObj = entry.getValue().toJSObject();
+            AtomicLong errors = rpcErrors.get(entry.getKey());
+            methodObj.put("errors", errors != null ? errors.get() : 0);
+            rpcObj.put(entry.getKey(), methodObj);
+        }
+
+        JSObject result = new JSObject();
+        result.put("global", globalObj);
+        result.put("webviews", webviewsObj);
+        result.put("rpc", rpcObj);
+        return result;
+    }
+}
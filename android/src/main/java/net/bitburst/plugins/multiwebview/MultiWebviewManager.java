@@ -1,36 +1,399 @@
 package net.bitburst.plugins.multiwebview;
 
+import android.animation.Animator;
+import android.animation.AnimatorListenerAdapter;
+import android.animation.TimeInterpolator;
+import android.animation.ValueAnimator;
 import android.annotation.SuppressLint;
-import android.graphics.Color;
+import android.content.ComponentCallbacks2;
+import android.content.res.Configuration;
+import android.graphics.Rect;
+import android.graphics.Region;
+import android.os.Build;
+import android.os.Bundle;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+import android.os.SystemClock;
 import android.util.DisplayMetrics;
 import android.util.Log;
+import android.view.Choreographer;
 import android.view.View;
 import android.view.ViewGroup;
+import android.view.animation.AccelerateDecelerateInterpolator;
+import android.view.animation.AccelerateInterpolator;
+import android.view.animation.DecelerateInterpolator;
+import android.view.animation.LinearInterpolator;
 import android.webkit.JavascriptInterface;
+import android.webkit.RenderProcessGoneDetail;
 import android.webkit.ValueCallback;
 import android.webkit.WebChromeClient;
 import android.webkit.WebResourceError;
 import android.webkit.WebResourceRequest;
+import android.webkit.WebResourceResponse;
 import android.webkit.WebSettings;
 import android.webkit.WebView;
 import android.webkit.WebViewClient;
 import android.widget.FrameLayout;
+import com.getcapacitor.JSArray;
 import com.getcapacitor.JSObject;
+import java.io.File;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import org.json.JSONException;
 import org.json.JSONObject;
+import org.json.JSONTokener;
 
 public class MultiWebviewManager {
 
+    static final String BRIDGE_NAME = "MultiWebviewBridge";
+
     private static final String TAG = "MultiWebviewManager";
+
+    private static final int RPC_HANDLER_THREADS = 2;
+    private static final int MAX_TOPICS_PER_PAGE = 64;
+
+    private static final String PRERENDER_LOADING = "loading";
+    private static final String PRERENDER_READY = "ready";
+
     private final MultiWebviewPlugin plugin;
-    private final Map<String, WebviewContainer> webviews = new HashMap<>();
+    private final WebviewPool pool;
+    private final AssetCache assetCache;
+    // Null unless session persistence is enabled
+    private final SessionStore sessionStore;
+    private final SnapshotCache snapshotCache;
+    private final AssetBundles assetBundles = new AssetBundles();
+    private final ContentBlocker contentBlocker = new ContentBlocker();
+    private final Metrics metrics = new Metrics();
+    private ScheduledFuture<?> metricsReport = null;
+    private final Map<String, WebviewContainer> webviews = new LinkedHashMap<>();
     private String focusedWebviewId = null;
+    private long nextSessionOrder = 0;
+    private final UrlIndex urlIndex = new UrlIndex();
+    private boolean urlIndexChanged = false;
+
+    // Latest published registry state, read lock-free by the query methods
+    private final AtomicReference<RegistrySnapshot> snapshot = new AtomicReference<>(RegistrySnapshot.EMPTY);
+
+    // Whether WebView.pauseTimers is in effect because the activity is paused
+    private boolean timersPaused = false;
+
+    // Latest frames set with coalescing are applied together on the next vsync
+    private boolean frameUpdateScheduled = false;
+    private final Choreographer.FrameCallback frameUpdateCallback = frameTimeNanos -> {
+        frameUpdateScheduled = false;
+        for (WebviewContainer container : webviews.values()) {
+            WebviewFrame pending = container.getPendingFrame();
+            if (pending != null) {
+                container.setPendingFrame(null);
+                applyFrame(container, pending);
+            }
+        }
+        refreshOcclusion();
+    };
+
+    // Stacking order of the WebViews in the root view; higher values are drawn on top
+    private long nextZOrder = 0;
+
+    // Reused by updateOcclusion, which runs on every frame of an animation; UI thread only
+    private final Rect occlusionScreen = new Rect();
+    private final Rect occlusionBounds = new Rect();
+    private final Region occlusionCovered = new Region();
+    private final Region occlusionUncovered = new Region();
+    private final List<WebviewContainer> occlusionOrder = new ArrayList<>();
+
+    // While a batch is running, layout and snapshot publication are deferred to its end
+    private int batchDepth = 0;
+    private boolean publishPending = false;
+
+    private final ScheduledExecutorService inboundExecutor = Executors.newSingleThreadScheduledExecutor();
+    private HandlerThread messageThread = null;
+    private Handler messageHandler = null;
+
+    // Routes bridge calls that touch other containers to the UI thread
+    private final Handler uiHandler = new Handler(Looper.getMainLooper());
+
+    // Orders page loads by focus and visibility
+    private final LoadScheduler loadScheduler;
+
+    // Calls from pages to native handlers or the host app
+    private final RpcRouter rpc;
+    private final TransferManager transfers;
+
+    // Hibernation policy: 0 means no limit on live webviews
+    private int maxLiveWebviews;
+    private boolean hibernateOnMemoryPressure;
+
+    // Live prerendering webviews beyond this are hibernated, oldest first; 0 means no limit
+    private final int maxPrerenders;
+
+    private final ComponentCallbacks2 memoryCallbacks = new ComponentCallbacks2() {
+        @Override
+        public void onTrimMemory(int level) {
+            // UI_HIDDEN only means the app went to the background, which is no memory pressure
+            if (level >= TRIM_MEMORY_BACKGROUND || (level >= TRIM_MEMORY_RUNNING_LOW && level < TRIM_MEMORY_UI_HIDDEN)) {
+                // Thumbnails are recaptured when webviews are hidden again
+                snapshotCache.clear();
+            }
+            if (!hibernateOnMemoryPressure) {
+                return;
+            }
+            if (level == TRIM_MEMORY_RUNNING_MODERATE) {
+                enforceLiveBudget();
+            } else if (level >= TRIM_MEMORY_BACKGROUND || (level >= TRIM_MEMORY_RUNNING_LOW && level < TRIM_MEMORY_UI_HIDDEN)) {
+                hibernateHiddenWebviews();
+            }
+            refreshVisibilityState();
+            publish();
+        }
+
+        @Override
+        public void onLowMemory() {
+            snapshotCache.clear();
+            if (hibernateOnMemoryPressure) {
+                hibernateHiddenWebviews();
+                refreshVisibilityState();
+                publish();
+            }
+        }
 
-    public MultiWebviewManager(MultiWebviewPlugin plugin) {
+        @Override
+        public void onConfigurationChanged(Configuration newConfig) {}
+    };
+
+    public MultiWebviewManager(
+        MultiWebviewPlugin plugin,
+        WebviewPool pool,
+        AssetCache assetCache,
+        SessionStore sessionStore,
+        SnapshotCache snapshotCache,
+        int maxLiveWebviews,
+        boolean hibernateOnMemoryPressure,
+        int maxBackgroundLoads,
+        int maxPrerenders
+    ) {
         this.plugin = plugin;
+        this.pool = pool;
+        this.assetCache = assetCache;
+        this.sessionStore = sessionStore;
+        this.snapshotCache = snapshotCache;
+        this.loadScheduler = new LoadScheduler(
+            new LoadScheduler.Host() {
+                @Override
+                public int getLoadPriority(String id) {
+                    WebviewContainer container = webviews.get(id);
+                    if (id.equals(focusedWebviewId)) {
+                        return LoadScheduler.PRIORITY_FOCUSED;
+                    }
+                    if (container != null && !container.isHidden() && !container.isOccluded()) {
+                        return LoadScheduler.PRIORITY_VISIBLE;
+                    }
+                    return container != null && container.isPrerender() ? LoadScheduler.PRIORITY_PRERENDER : LoadScheduler.PRIORITY_HIDDEN;
+                }
+
+                @Override
+                public boolean startLoad(String id, String url) {
+                    WebviewContainer container = webviews.get(id);
+                    if (container == null || container.getWebView() == null) {
+                        return false;
+                    }
+                    container.getWebView().loadUrl(url);
+                    return true;
+                }
+
+                @Override
+                public void onLoadReleased(String id) {
+                    // The snapshot would report the webview as loading until the next change
+                    publish();
+                }
+            },
+            maxBackgroundLoads
+        );
+        this.rpc = new RpcRouter(
+            new RpcRouter.Host() {
+                @Override
+                public void reply(String webviewId, String payload) {
+                    uiHandler.post(() -> {
+                        WebviewContainer container = webviews.get(webviewId);
+                        if (container != null) {
+                            container.getRpcReplies().enqueue(payload, null, null);
+                        }
+                    });
+                }
+
+                @Override
+                public boolean request(RpcRouter.Call call) {
+                    if (!plugin.wantsEvent("rpcRequest", call.getWebviewId())) {
+                        return false;
+                    }
+                    plugin.notifyEvent(
+                        "rpcRequest",
+                        call.getWebviewId(),
+                        () -> {
+                            JSObject data = new JSObject();
+                            data.put("id", call.getWebviewId());
+                            data.put("callId", call.getCallId());
+                            data.put("method", call.getMethod());
+                            data.put("params", call.getParams() != null ? call.getParams() : JSONObject.NULL);
+                            return data;
+                        }
+                    );
+                    return true;
+                }
+            },
+            metrics,
+            Executors.newFixedThreadPool(RPC_HANDLER_THREADS),
+            inboundExecutor
+        );
+        this.transfers = new TransferManager(
+            new TransferManager.Host() {
+                @Override
+                public void evaluate(String webviewId, String script, TransferManager.EvaluationCallback callback) {
+                    uiHandler.post(() -> {
+                        WebviewContainer container = webviews.get(webviewId);
+                        WebView webView = container != null ? container.getWebView() : null;
+                        if (webView == null) {
+                            callback.onEvaluated(false);
+                            return;
+                        }
+                        metrics.recordMessageOut(webviewId, script.length());
+                        webView.evaluateJavascript(script, value -> callback.onEvaluated(true));
+                    });
+                }
+
+                @Override
+                public void onProgress(String webviewId, String transferId, String direction, long bytes, long total) {
+                    plugin.notifyEvent(
+                        "transferProgress",
+                        webviewId,
+                        () -> {
+                            JSObject data = new JSObject();
+                            data.put("id", webviewId);
+                            data.put("transferId", transferId);
+                            data.put("direction", direction);
+                            data.put("bytes", bytes);
+                            data.put("total", total);
+                            return data;
+                        }
+                    );
+                }
+
+                @Override
+                public boolean acceptsTransfers(String webviewId) {
+                    return plugin.wantsEvent("transferReceived", webviewId);
+                }
+
+                @Override
+                public boolean onReceived(String webviewId, String transferId, File file, long size, JSONObject metadata) {
+                    if (!plugin.wantsEvent("transferReceived", webviewId)) {
+                        return false;
+                    }
+                    plugin.notifyEvent(
+                        "transferReceived",
+                        webviewId,
+                        () -> {
+                            JSObject data = new JSObject();
+                            data.put("id", webviewId);
+                            data.put("transferId", transferId);
+                            data.put("path", file.getAbsolutePath());
+                            data.put("size", size);
+                            data.put("mimeType", metadata.optString("mimeType", null));
+                            data.put("name", metadata.optString("name", null));
+                            return data;
+                        }
+                    );
+                    return true;
+                }
+
+                @Override
+                public void onCancelled(String webviewId, String transferId, String direction) {
+                    plugin.notifyEvent(
+                        "transferCancelled",
+                        webviewId,
+                        () -> {
+                            JSObject data = new JSObject();
+                            data.put("id", webviewId);
+                            data.put("transferId", transferId);
+                            data.put("direction", direction);
+                            return data;
+                        }
+                    );
+                }
+            },
+            new File(plugin.getContext().getCacheDir(), "multiwebview-transfers")
+        );
+        this.maxLiveWebviews = Math.max(0, maxLiveWebviews);
+        this.hibernateOnMemoryPressure = hibernateOnMemoryPressure;
+        this.maxPrerenders = Math.max(0, maxPrerenders);
+        plugin.getContext().registerComponentCallbacks(memoryCallbacks);
+    }
+
+    public WebviewPool getPool() {
+        return pool;
+    }
+
+    public AssetCache getAssetCache() {
+        return assetCache;
+    }
+
+    /**
+     * The session store, or null if session persistence is disabled.
+     */
+    public SessionStore getSessionStore() {
+        return sessionStore;
+    }
+
+    public RpcRouter getRpc() {
+        return rpc;
+    }
+
+    public TransferManager getTransfers() {
+        return transfers;
+    }
+
+    public SnapshotCache getSnapshotCache() {
+        return snapshotCache;
+    }
+
+    public AssetBundles getAssetBundles() {
+        return assetBundles;
+    }
+
+    public ContentBlocker getContentBlocker() {
+        return contentBlocker;
+    }
+
+    public Metrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Emit a 'metrics' event every intervalMs milliseconds, or stop emitting it if intervalMs is 0.
+     */
+    public synchronized void setMetricsInterval(long intervalMs) {
+        if (metricsReport != null) {
+            metricsReport.cancel(false);
+            metricsReport = null;
+        }
+        if (intervalMs > 0) {
+            metricsReport = inboundExecutor.scheduleAtFixedRate(
+                () -> plugin.notifyEvent("metrics", null, metrics::toJSObject),
+                intervalMs,
+                intervalMs,
+                TimeUnit.MILLISECONDS
+            );
+        }
     }
 
     @SuppressLint("SetJavaScriptEnabled")
@@ -39,315 +402,1924 @@ public class MultiWebviewManager {
         String url,
         WebviewFrame frame,
         Boolean autoFocus,
-        Boolean enableJavaScript,
-        Boolean allowFileAccess,
-        String userAgent
+        WebviewOptions options,
+        boolean prerender
     ) throws Exception {
         if (webviews.containsKey(id)) {
             throw new Exception("Webview with id '" + id + "' already exists");
         }
 
-        // Get the root view group
-        ViewGroup rootView = (ViewGroup) plugin.getBridge().getWebView().getParent();
+        WebviewContainer container = addContainer(id, frame, options);
 
-        // Create WebView
-        WebView webView = new WebView(plugin.getContext());
+        // Create the WebView and add it to the view hierarchy
+        WebView webView = attachWebView(container);
 
-        // Configure settings
-        WebSettings settings = webView.getSettings();
-        settings.setJavaScriptEnabled(enableJavaScript);
-        settings.setDomStorageEnabled(true);
-        settings.setAllowFileAccess(allowFileAccess);
-        settings.setMixedContentMode(WebSettings.MIXED_CONTENT_ALWAYS_ALLOW);
+        // Handle focus
+        if (autoFocus) {
+            setFocusedWebview(id);
+        } else if (focusedWebviewId == null && webviews.size() == 1) {
+            setFocusedWebview(id);
+        } else {
+            container.setHidden(true);
+            if (prerender) {
+                startPrerender(container);
+            }
+            webView.setVisibility(getHiddenVisibility(container));
+        }
+
+        // Load URL if provided, once the focus is known so the load gets the right priority
+        if (url != null && !url.isEmpty()) {
+            container.setRequestedUrl(url);
+            loadScheduler.enqueue(id, url);
+        }
+        if (container.isHidden()) {
+            enforceLiveBudget();
+        }
 
-        if (userAgent != null && !userAgent.isEmpty()) {
-            settings.setUserAgentString(userAgent);
+        refreshVisibilityState();
+        publish();
+    }
+
+    /**
+     * Recreate persisted webviews that do not exist yet, in their previous order. Only the
+     * previously focused webview gets a WebView right away; the others are restored hidden and
+     * hibernated, and are rehydrated from their saved history when they are shown or focused.
+     *
+     * @return the ids of the restored webviews
+     */
+    public List<String> restoreSession(List<SessionStore.Entry> entries) throws Exception {
+        List<String> restored = new ArrayList<>();
+        String focusId = null;
+        for (SessionStore.Entry entry : entries) {
+            JSObject record = entry.record;
+            String id = record.getString("id");
+            if (id == null || webviews.containsKey(id)) {
+                continue;
+            }
+
+            JSObject frameObj = record.getJSObject("frame");
+            WebviewFrame frame = frameObj != null
+                ? new WebviewFrame(
+                    frameObj.optDouble("x", 0),
+                    frameObj.optDouble("y", 0),
+                    frameObj.optDouble("width", 0),
+                    frameObj.optDouble("height", 0)
+                )
+                : null;
+            JSObject options = record.getJSObject("options");
+            WebviewContainer container = addContainer(id, frame, plugin.parseWebviewOptions(options != null ? options : new JSObject()));
+            container.setHidden(true);
+            container.setSavedState(entry.state);
+            String url = record.getString("url");
+            if (url != null) {
+                container.setRequestedUrl(url);
+                updateUrl(container, url);
+            }
+            if (record.optBoolean("focused")) {
+                focusId = id;
+            }
+            restored.add(id);
         }
 
+        if (focusId != null && focusedWebviewId == null) {
+            setFocusedWebview(focusId);
+        }
+        refreshVisibilityState();
+        publish();
+        return restored;
+    }
+
+    /**
+     * Register a new container without a WebView.
+     */
+    private WebviewContainer addContainer(String id, WebviewFrame frame, WebviewOptions options) {
+        WebviewContainer container = new WebviewContainer(id, frame, options);
+        container.setOutbound(new OutboundMessageQueue(payloads -> deliverMessages(container, payloads), options.maxMessageQueueDepth));
+        container.setBroadcasts(new OutboundMessageQueue(payloads -> forwardBroadcasts(container, payloads), options.maxMessageQueueDepth));
+        container.setRpcReplies(new OutboundMessageQueue(payloads -> deliverRpcReplies(container, payloads), options.maxMessageQueueDepth));
+        container.setInbound(
+            new InboundMessageQueue(
+                inboundExecutor,
+                messages -> deliverIncomingMessages(id, options.inboundBatching, messages),
+                options.inboundQueueDepth,
+                options.inboundBatching ? options.inboundBatchWindowMs : 0,
+                options.inboundOverflow
+            )
+        );
+        if (options.messageChannel && Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
+            container.setChannel(new MessagePortChannel());
+        }
+        container.setSessionOrder(nextSessionOrder++);
+        webviews.put(id, container);
+        metrics.addWebview(id);
+        return container;
+    }
+
+    /**
+     * Create and configure a WebView for the container and add it to the view hierarchy.
+     * Used both for new containers and for rehydrating hibernated ones.
+     */
+    @SuppressLint("SetJavaScriptEnabled")
+    private WebView attachWebView(WebviewContainer container) {
+        String id = container.getId();
+
+        // Get the root view group
+        ViewGroup rootView = getRootView();
+
+        // Take a pre-warmed WebView from the pool (falls back to creating one)
+        WebView webView = pool.acquire();
+
+        // Configure per-webview settings; shared defaults are applied by the pool
+        WebviewOptions options = container.getOptions();
+        WebSettings settings = webView.getSettings();
+        settings.setJavaScriptEnabled(options.enableJavaScript);
+        settings.setAllowFileAccess(options.allowFileAccess);
+        String userAgent = options.userAgent;
+        settings.setUserAgentString(userAgent != null && !userAgent.isEmpty() ? userAgent : null);
+
         // Add JavaScript interface for receiving messages from webview
-        webView.addJavascriptInterface(new MessageHandler(id), "MultiWebviewBridge");
+        webView.addJavascriptInterface(new MessageHandler(this, container), BRIDGE_NAME);
 
         // Set WebViewClient for navigation events
-        webView.setWebViewClient(
-            new WebViewClient() {
-                @Override
-                public void onPageStarted(WebView view, String url, android.graphics.Bitmap favicon) {
-                    JSObject data = new JSObject();
-                    data.put("id", id);
-                    data.put("url", url);
-                    plugin.notifyEvent("loadStart", data);
+        webView.setWebViewClient(createWebViewClient(id));
+
+        // Set WebChromeClient
+        webView.setWebChromeClient(new WebChromeClient());
+
+        // Set frame
+        webView.setLayoutParams(createLayoutParams(container.getFrame()));
+        webView.setTranslationX(0);
+        webView.setTranslationY(0);
+        container.setLayoutFrame(container.getFrame());
+        webView.setVisibility(container.isHidden() ? getHiddenVisibility(container) : View.VISIBLE);
+
+        container.setWebView(webView);
+        container.setRendererPriority(null);
+        container.touch();
+
+        // Add to view hierarchy
+        rootView.addView(webView);
+        container.setZOrder(++nextZOrder);
+        return webView;
+    }
+
+    private WebViewClient createWebViewClient(String id) {
+        return new WebViewClient() {
+            @Override
+            public void onPageStarted(WebView view, String url, android.graphics.Bitmap favicon) {
+                // Index the navigation target right away so in-flight navigations are found by URL
+                WebviewContainer container = webviews.get(id);
+                if (container != null) {
+                    updateUrl(container, url);
+                    if (container.getWebView() == view) {
+                        container.setLoadStartedAt(System.nanoTime());
+                    }
+
+                    // The port, topic subscriptions and pending calls belong to the previous document
+                    if (container.getChannel() != null) {
+                        container.getChannel().close();
+                    }
+                    container.getTopics().clear();
+                    abandonPage(container);
+                    publish();
                 }
 
-                @Override
-                public void onPageFinished(WebView view, String url) {
-                    // Update current URL in container
-                    WebviewContainer container = webviews.get(id);
-                    if (container != null) {
-                        container.setCurrentUrl(url);
+                plugin.notifyEvent(
+                    "loadStart",
+                    id,
+                    () -> {
+                        JSObject data = new JSObject();
+                        data.put("id", id);
+                        data.put("url", url);
+                        return data;
                     }
+                );
+            }
 
-                    JSObject data = new JSObject();
-                    data.put("id", id);
-                    data.put("url", url);
-                    plugin.notifyEvent("loadFinish", data);
+            @Override
+            public void onPageFinished(WebView view, String url) {
+                // Update current URL in container
+                WebviewContainer container = webviews.get(id);
+                if (container != null) {
+                    updateUrl(container, url);
+                    if (container.getWebView() == view) {
+                        loadScheduler.finished(id);
+                        if (container.getLoadStartedAt() != 0) {
+                            metrics.recordPageLoad(id, System.nanoTime() - container.getLoadStartedAt());
+                            container.setLoadStartedAt(0);
+                        }
+
+                        if (PRERENDER_LOADING.equals(container.getPrerenderState())) {
+                            // Ready: the page is paused until it is shown or focused
+                            container.setPrerenderState(PRERENDER_READY);
+                            refreshVisibilityState();
+
+                            plugin.notifyEvent(
+                                "prerendered",
+                                id,
+                                () -> {
+                                    JSObject prerendered = new JSObject();
+                                    prerendered.put("id", id);
+                                    prerendered.put("url", url);
+                                    return prerendered;
+                                }
+                            );
+                        }
+                    }
+
+                    if (container.getChannel() != null && container.getWebView() == view) {
+                        InboundMessageQueue inbound = container.getInbound();
+                        container
+                            .getChannel()
+                            .open(
+                                view,
+                                message -> {
+                                    metrics.recordCharsIn(id, message.length());
+                                    inbound.offer(message);
+                                },
+                                getMessageHandler(),
+                                () -> publish()
+                            );
+                    }
+                    publish();
                 }
 
-                @Override
-                public void onReceivedError(WebView view, WebResourceRequest request, WebResourceError error) {
-                    JSObject data = new JSObject();
-                    data.put("id", id);
-                    data.put("url", request.getUrl().toString());
-                    if (android.os.Build.VERSION.SDK_INT >= android.os.Build.VERSION_CODES.M) {
-                        data.put("error", error.getDescription().toString());
+                plugin.notifyEvent(
+                    "loadFinish",
+                    id,
+                    () -> {
+                        JSObject data = new JSObject();
+                        data.put("id", id);
+                        data.put("url", url);
+                        return data;
                     }
-                    plugin.notifyEvent("loadError", data);
+                );
+            }
+
+            @Override
+            public void doUpdateVisitedHistory(WebView view, String url, boolean isReload) {
+                // Covers same-document navigations such as history.pushState
+                WebviewContainer container = webviews.get(id);
+                if (container != null) {
+                    updateUrl(container, url);
+                    container.setStateDirty(true);
+                    publish();
                 }
             }
-        );
 
-        // Set WebChromeClient
-        webView.setWebChromeClient(new WebChromeClient());
+            @Override
+            public WebResourceResponse shouldInterceptRequest(WebView view, WebResourceRequest request) {
+                // Called on a WebView background thread; must not touch the containers
+                WebResourceResponse response = contentBlocker.intercept(id, request);
+                if (response == null) {
+                    response = assetBundles.intercept(request);
+                }
+                if (response == null) {
+                    response = assetCache.intercept(request);
+                }
+                return response != null ? response : super.shouldInterceptRequest(view, request);
+            }
 
-        // Set frame
-        FrameLayout.LayoutParams layoutParams;
-        if (frame != null) {
-            DisplayMetrics metrics = plugin.getContext().getResources().getDisplayMetrics();
-            int x = (int) (frame.x * metrics.density);
-            int y = (int) (frame.y * metrics.density);
-            int width = (int) (frame.width * metrics.density);
-            int height = (int) (frame.height * metrics.density);
-
-            layoutParams = new FrameLayout.LayoutParams(width, height);
-            layoutParams.leftMargin = x;
-            layoutParams.topMargin = y;
+            @Override
+            public boolean onRenderProcessGone(WebView view, RenderProcessGoneDetail detail) {
+                WebviewContainer container = webviews.get(id);
+                if (container == null || container.getWebView() != view) {
+                    // Not a live managed WebView anymore; nothing references it
+                    view.destroy();
+                    return true;
+                }
+
+                handleRenderProcessGone(container, Build.VERSION.SDK_INT >= Build.VERSION_CODES.O && detail.didCrash());
+                return true;
+            }
+
+            @Override
+            public void onReceivedError(WebView view, WebResourceRequest request, WebResourceError error) {
+                WebviewContainer container = webviews.get(id);
+                if (container != null && container.getWebView() == view && request.isForMainFrame()) {
+                    metrics.recordLoadError(id);
+                    container.setLoadStartedAt(0);
+                    loadScheduler.finished(id);
+                    publish();
+                }
+
+                plugin.notifyEvent(
+                    "loadError",
+                    id,
+                    () -> {
+                        JSObject data = new JSObject();
+                        data.put("id", id);
+                        data.put("url", request.getUrl().toString());
+                        if (android.os.Build.VERSION.SDK_INT >= android.os.Build.VERSION_CODES.M) {
+                            data.put("error", error.getDescription().toString());
+                        }
+                        return data;
+                    }
+                );
+            }
+        };
+    }
+
+    private FrameLayout.LayoutParams createLayoutParams(WebviewFrame frame) {
+        if (frame == null) {
+            return new FrameLayout.LayoutParams(ViewGroup.LayoutParams.MATCH_PARENT, ViewGroup.LayoutParams.MATCH_PARENT);
+        }
+
+        DisplayMetrics metrics = plugin.getContext().getResources().getDisplayMetrics();
+        int x = (int) (frame.x * metrics.density);
+        int y = (int) (frame.y * metrics.density);
+        int width = (int) (frame.width * metrics.density);
+        int height = (int) (frame.height * metrics.density);
+
+        FrameLayout.LayoutParams layoutParams = new FrameLayout.LayoutParams(width, height);
+        layoutParams.leftMargin = x;
+        layoutParams.topMargin = y;
+        return layoutParams;
+    }
+
+    /**
+     * Return the live WebView of a container, rehydrating it first if it is hibernated.
+     */
+    private WebView requireWebView(WebviewContainer container) {
+        if (container.getWebView() != null) {
+            return container.getWebView();
+        }
+
+        WebView webView = attachWebView(container);
+        Bundle savedState = container.takeSavedState();
+        if (savedState == null || !restoreState(webView, savedState)) {
+            String url = container.getRestoreUrl();
+            if (url != null && !url.isEmpty()) {
+                loadScheduler.enqueue(container.getId(), url);
+            }
+        }
+
+        // Deliver messages that were queued while hibernated
+        container.getOutbound().scheduleFlush();
+
+        enforceLiveBudget();
+        refreshVisibilityState();
+        publish();
+        return webView;
+    }
+
+    /**
+     * Capture the state of a hidden container and destroy its WebView to free the renderer.
+     */
+    private void hibernate(WebviewContainer container) {
+        WebView webView = container.getWebView();
+        if (webView == null) {
+            return;
+        }
+
+        String queuedUrl = loadScheduler.remove(container.getId());
+        if (queuedUrl != null) {
+            // The queued load replaces the saved page, like loadUrl on a hibernated webview
+            updateUrl(container, queuedUrl);
+            discardSavedState(container);
         } else {
-            layoutParams = new FrameLayout.LayoutParams(
-                ViewGroup.LayoutParams.MATCH_PARENT,
-                ViewGroup.LayoutParams.MATCH_PARENT
-            );
+            Bundle savedState = new Bundle();
+            if (webView.saveState(savedState) != null) {
+                container.setSavedState(savedState);
+                if (sessionStore != null) {
+                    sessionStore.saveState(container.getId(), savedState);
+                    container.setStateDirty(false);
+                }
+            }
         }
 
-        webView.setLayoutParams(layoutParams);
-        webView.setBackgroundColor(Color.WHITE);
+        if (container.getChannel() != null) {
+            container.getChannel().close();
+        }
+        abandonPage(container);
+        cancelFrameAnimation(container);
 
-        // Create container
-        WebviewContainer container = new WebviewContainer(id, webView);
-        webviews.put(id, container);
+        ViewGroup rootView = getRootView();
+        rootView.removeView(webView);
+        webView.destroy();
+        container.setWebView(null);
+    }
 
-        // Add to view hierarchy
-        rootView.addView(webView);
+    /**
+     * Hibernate least recently used hidden webviews until the number of live webviews fits the budget.
+     */
+    private void enforceLiveBudget() {
+        if (maxLiveWebviews <= 0) {
+            return;
+        }
 
-        // Load URL if provided
-        if (url != null && !url.isEmpty()) {
-            webView.loadUrl(url);
+        List<WebviewContainer> candidates = new ArrayList<>();
+        int live = 0;
+        for (WebviewContainer container : webviews.values()) {
+            // Prerenders have their own cap and never take the place of real webviews
+            if (container.getWebView() == null || container.isPrerender()) {
+                continue;
+            }
+            live++;
+            if (container.isHidden() && !container.getId().equals(focusedWebviewId)) {
+                candidates.add(container);
+            }
         }
 
-        // Handle focus
-        if (autoFocus) {
-            setFocusedWebview(id);
-        } else if (focusedWebviewId == null && webviews.size() == 1) {
-            setFocusedWebview(id);
+        candidates.sort((a, b) -> Long.compare(a.getLastActiveAt(), b.getLastActiveAt()));
+        for (int i = 0; i < candidates.size() && live > maxLiveWebviews; i++, live--) {
+            hibernate(candidates.get(i));
+        }
+    }
+
+    /**
+     * Mark a hidden container as prerendering: it loads at the lowest priority and is paused once
+     * loaded. The oldest live prerenders are hibernated if there are more than maxPrerenders.
+     */
+    private void startPrerender(WebviewContainer container) {
+        container.setPrerenderState(PRERENDER_LOADING);
+        container.touch();
+        if (container.getWebView() != null) {
+            container.getWebView().setVisibility(View.INVISIBLE);
+        }
+
+        if (maxPrerenders <= 0) {
+            return;
+        }
+
+        List<WebviewContainer> prerenders = new ArrayList<>();
+        for (WebviewContainer other : webviews.values()) {
+            if (other != container && other.isPrerender() && other.getWebView() != null) {
+                prerenders.add(other);
+            }
+        }
+
+        prerenders.sort((a, b) -> Long.compare(a.getLastActiveAt(), b.getLastActiveAt()));
+        for (int i = 0; i <= prerenders.size() - maxPrerenders; i++) {
+            hibernate(prerenders.get(i));
+        }
+    }
+
+    /**
+     * Turn a prerendering container into a regular one, e.g. when it is shown or focused.
+     */
+    private void promotePrerender(WebviewContainer container) {
+        container.setPrerenderState(null);
+    }
+
+    /**
+     * Visibility of a hidden container's WebView. Prerenders stay laid out at their frame size so
+     * the page renders as it will be shown.
+     */
+    private static int getHiddenVisibility(WebviewContainer container) {
+        return container.isPrerender() ? View.INVISIBLE : View.GONE;
+    }
+
+    private void hibernateHiddenWebviews() {
+        for (WebviewContainer container : webviews.values()) {
+            if (container.isHidden() && !container.getId().equals(focusedWebviewId)) {
+                hibernate(container);
+            }
+        }
+    }
+
+    public int getMaxLiveWebviews() {
+        return maxLiveWebviews;
+    }
+
+    public boolean isHibernateOnMemoryPressure() {
+        return hibernateOnMemoryPressure;
+    }
+
+    public void setHibernationPolicy(int maxLiveWebviews, boolean hibernateOnMemoryPressure) {
+        this.maxLiveWebviews = Math.max(0, maxLiveWebviews);
+        this.hibernateOnMemoryPressure = hibernateOnMemoryPressure;
+        enforceLiveBudget();
+        publish();
+    }
+
+    public void onDestroy() {
+        plugin.getContext().unregisterComponentCallbacks(memoryCallbacks);
+        pool.clear();
+        snapshotCache.clear();
+        inboundExecutor.shutdown();
+        rpc.shutdown();
+        transfers.shutdown();
+        if (sessionStore != null) {
+            sessionStore.shutdown();
+        }
+
+        // Timers are process-wide and would stay paused for the next activity otherwise
+        if (timersPaused) {
+            plugin.getBridge().getWebView().resumeTimers();
+            timersPaused = false;
+        }
+
+        synchronized (this) {
+            if (messageThread != null) {
+                messageThread.quitSafely();
+                messageThread = null;
+                messageHandler = null;
+            }
+        }
+    }
+
+    /**
+     * Pause the JavaScript timers of all webviews while the activity is paused, if any live webview
+     * asks for it. pauseTimers is process-wide and would also stop the app's own webview, so it is
+     * never used just because managed webviews are hidden; those are paused individually.
+     */
+    public void onActivityPause() {
+        for (WebviewContainer container : webviews.values()) {
+            if (container.getWebView() != null && container.getOptions().backgroundPolicy == WebviewOptions.BackgroundPolicy.PAUSE_TIMERS) {
+                plugin.getBridge().getWebView().pauseTimers();
+                timersPaused = true;
+                publish();
+                return;
+            }
+        }
+    }
+
+    public void onActivityResume() {
+        if (timersPaused) {
+            plugin.getBridge().getWebView().resumeTimers();
+            timersPaused = false;
+            publish();
+        }
+    }
+
+    public void setFocusedWebview(String id) throws Exception {
+        WebviewContainer container = webviews.get(id);
+        if (container == null) {
+            throw new Exception("Webview with id '" + id + "' not found");
+        }
+
+        // Only the webview losing focus changed since it was last shown; the others keep their
+        // thumbnails from when they were hidden
+        WebviewContainer previous = focusedWebviewId != null && !focusedWebviewId.equals(id) ? webviews.get(focusedWebviewId) : null;
+        if (previous != null && !previous.isHidden()) {
+            captureSnapshot(previous);
+        }
+
+        // Hide all other webviews
+        for (Map.Entry<String, WebviewContainer> entry : webviews.entrySet()) {
+            if (!entry.getKey().equals(id)) {
+                WebView other = entry.getValue().getWebView();
+                if (other != null) {
+                    other.setVisibility(getHiddenVisibility(entry.getValue()));
+                }
+                entry.getValue().setHidden(true);
+            }
+        }
+
+        // Show and bring to front the focused webview
+        setFocusedId(id);
+        promotePrerender(container);
+        container.setHidden(false);
+        container.touch();
+        WebView webView = requireWebView(container);
+        webView.setVisibility(View.VISIBLE);
+        webView.bringToFront();
+        container.setZOrder(++nextZOrder);
+
+        enforceLiveBudget();
+        refreshVisibilityState();
+        publish();
+    }
+
+    /**
+     * Re-derive everything that depends on which webviews are visible or focused. Must be called
+     * on the UI thread after visibility, focus or liveness of any container changed.
+     */
+    private void refreshVisibilityState() {
+        updateOcclusion();
+        for (WebviewContainer container : webviews.values()) {
+            applyOcclusion(container);
+            applyBackgroundPolicy(container);
+            applyRendererPriority(container);
+            if (container.getWebView() != null && !container.isPaused()) {
+                // Deliver broadcasts that were held while the webview was paused or hibernated
+                container.getBroadcasts().scheduleFlush();
+            }
+        }
+
+        // Focus and visibility decide the order of queued loads
+        loadScheduler.dispatch();
+    }
+
+    /**
+     * Recompute which visible webviews are fully covered by webviews stacked above them or lie
+     * completely off-screen. Hidden and hibernated webviews cover nothing and are never occluded.
+     *
+     * @return whether the occlusion of any container changed
+     */
+    private boolean updateOcclusion() {
+        ViewGroup rootView = getRootView();
+        Rect screen = occlusionScreen;
+        screen.set(0, 0, rootView.getWidth(), rootView.getHeight());
+        if (screen.isEmpty()) {
+            // Not laid out yet
+            return false;
+        }
+
+        boolean changed = false;
+        List<WebviewContainer> visible = occlusionOrder;
+        visible.clear();
+        for (WebviewContainer container : webviews.values()) {
+            if (container.getWebView() != null && !container.isHidden()) {
+                visible.add(container);
+            } else if (container.isOccluded()) {
+                container.setOccluded(false);
+                changed = true;
+            }
+        }
+
+        // Walk from the top; each webview is occluded if the ones above already cover its bounds
+        Collections.sort(visible, (a, b) -> Long.compare(b.getZOrder(), a.getZOrder()));
+        float density = plugin.getContext().getResources().getDisplayMetrics().density;
+        Region covered = occlusionCovered;
+        Region uncovered = occlusionUncovered;
+        Rect bounds = occlusionBounds;
+        covered.setEmpty();
+        for (int i = 0; i < visible.size(); i++) {
+            WebviewContainer container = visible.get(i);
+            WebviewFrame frame = container.getFrame();
+            if (frame == null) {
+                bounds.set(screen);
+            } else {
+                bounds.set(
+                    (int) (frame.x * density),
+                    (int) (frame.y * density),
+                    (int) (frame.x * density) + (int) (frame.width * density),
+                    (int) (frame.y * density) + (int) (frame.height * density)
+                );
+            }
+
+            boolean occluded;
+            if (!bounds.intersect(screen)) {
+                occluded = true;
+            } else {
+                uncovered.set(bounds);
+                uncovered.op(covered, Region.Op.DIFFERENCE);
+                occluded = uncovered.isEmpty();
+                covered.op(bounds, Region.Op.UNION);
+            }
+
+            if (occluded != container.isOccluded()) {
+                container.setOccluded(occluded);
+                changed = true;
+            }
+        }
+        visible.clear();
+        return changed;
+    }
+
+    /**
+     * Re-derive occlusion after frames changed and apply it if it changed.
+     */
+    private void refreshOcclusion() {
+        if (updateOcclusion()) {
+            refreshVisibilityState();
+            publish();
+        }
+    }
+
+    /**
+     * Stop drawing a visible webview while it is occluded. INVISIBLE keeps its layout, so it
+     * continues to take part in occlusion and reappears without a layout pass.
+     */
+    private void applyOcclusion(WebviewContainer container) {
+        WebView webView = container.getWebView();
+        if (webView == null || container.isHidden()) {
+            return;
+        }
+
+        int visibility = container.isOccluded() ? View.INVISIBLE : View.VISIBLE;
+        if (webView.getVisibility() != visibility) {
+            webView.setVisibility(visibility);
+        }
+    }
+
+    /**
+     * Pause or resume a container's WebView according to its background policy. Occluded webviews
+     * are treated like hidden ones. The focused webview is never paused.
+     */
+    private void applyBackgroundPolicy(WebviewContainer container) {
+        WebView webView = container.getWebView();
+        if (webView == null) {
+            container.setPaused(false);
+            return;
+        }
+
+        boolean shouldPause =
+            (container.isHidden() || container.isOccluded()) &&
+            !container.getId().equals(focusedWebviewId) &&
+            (container.getOptions().backgroundPolicy != WebviewOptions.BackgroundPolicy.RUN ||
+                PRERENDER_READY.equals(container.getPrerenderState()));
+
+        if (shouldPause && !container.isPaused()) {
+            webView.onPause();
+            container.setPaused(true);
+        } else if (!shouldPause && container.isPaused()) {
+            webView.onResume();
+            container.setPaused(false);
+        }
+    }
+
+    /**
+     * Assign the renderer priority from the container state: important when focused, bound when
+     * visible and waived when hidden, unless overridden.
+     */
+    private void applyRendererPriority(WebviewContainer container) {
+        WebView webView = container.getWebView();
+        if (webView == null || Build.VERSION.SDK_INT < Build.VERSION_CODES.O) {
+            return;
+        }
+
+        int priority;
+        if (container.getRendererPriorityOverride() != null) {
+            priority = container.getRendererPriorityOverride();
+        } else if (container.getId().equals(focusedWebviewId)) {
+            priority = WebView.RENDERER_PRIORITY_IMPORTANT;
+        } else if (!container.isHidden() && !container.isOccluded()) {
+            priority = WebView.RENDERER_PRIORITY_BOUND;
         } else {
-            webView.setVisibility(View.GONE);
-            container.setHidden(true);
+            priority = WebView.RENDERER_PRIORITY_WAIVED;
+        }
+
+        if (container.getRendererPriority() == null || container.getRendererPriority() != priority) {
+            webView.setRendererPriorityPolicy(priority, false);
+            container.setRendererPriority(priority);
+        }
+    }
+
+    /**
+     * Override the renderer priority of a webview, or pass null to derive it from its state again.
+     */
+    public void setRendererPriority(String id, Integer priority) throws Exception {
+        WebviewContainer container = webviews.get(id);
+        if (container == null) {
+            throw new Exception("Webview with id '" + id + "' not found");
+        }
+
+        container.setRendererPriorityOverride(priority);
+        refreshVisibilityState();
+        publish();
+    }
+
+    /**
+     * Drop a container's WebView after its renderer process died. Visible containers get a new
+     * WebView right away; hidden ones are recreated lazily when they are shown or focused.
+     */
+    private void handleRenderProcessGone(WebviewContainer container, boolean didCrash) {
+        WebView webView = container.getWebView();
+        if (container.getChannel() != null) {
+            container.getChannel().close();
+        }
+        abandonPage(container);
+        cancelFrameAnimation(container);
+
+        getRootView().removeView(webView);
+        webView.destroy();
+        container.setWebView(null);
+        discardSavedState(container);
+        String queuedUrl = loadScheduler.remove(container.getId());
+        if (queuedUrl != null) {
+            updateUrl(container, queuedUrl);
+        }
+
+        String id = container.getId();
+        plugin.notifyEvent(
+            "renderProcessGone",
+            id,
+            () -> {
+                JSObject data = new JSObject();
+                data.put("id", id);
+                data.put("didCrash", didCrash);
+                return data;
+            }
+        );
+
+        if (!container.isHidden() || container.getId().equals(focusedWebviewId)) {
+            requireWebView(container);
         }
+
+        refreshVisibilityState();
+        publish();
     }
 
-    public void setFocusedWebview(String id) throws Exception {
-        WebviewContainer container = webviews.get(id);
-        if (container == null) {
-            throw new Exception("Webview with id '" + id + "' not found");
+    public void setBackgroundPolicy(String id, WebviewOptions.BackgroundPolicy policy) throws Exception {
+        WebviewContainer container = webviews.get(id);
+        if (container == null) {
+            throw new Exception("Webview with id '" + id + "' not found");
+        }
+
+        container.getOptions().backgroundPolicy = policy;
+        refreshVisibilityState();
+        publish();
+    }
+
+    private static String rendererPriorityName(Integer priority) {
+        if (priority == null) {
+            return null;
+        }
+        switch (priority) {
+            case WebView.RENDERER_PRIORITY_IMPORTANT:
+                return "important";
+            case WebView.RENDERER_PRIORITY_BOUND:
+                return "bound";
+            default:
+                return "waived";
+        }
+    }
+
+    /**
+     * Start a batch of operations. Until the matching endBatch, layout of the webview container is
+     * suppressed (Android 10+) and the registry snapshot is published only once at the end.
+     */
+    public void beginBatch() {
+        if (batchDepth++ == 0 && Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
+            getRootView().suppressLayout(true);
+        }
+    }
+
+    public void endBatch() {
+        if (batchDepth == 0 || --batchDepth > 0) {
+            return;
+        }
+
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
+            // Runs a single layout pass if any operation requested one
+            getRootView().suppressLayout(false);
+        }
+        if (publishPending) {
+            publishPending = false;
+            publish();
+        }
+    }
+
+    /**
+     * Focus, visibility, frames and stacking order of the webviews at one point in time.
+     */
+    public static class LayoutState {
+
+        private static class Entry {
+
+            final String id;
+            final WebviewFrame frame;
+            final boolean hidden;
+            final long zOrder;
+
+            Entry(String id, WebviewFrame frame, boolean hidden, long zOrder) {
+                this.id = id;
+                this.frame = frame;
+                this.hidden = hidden;
+                this.zOrder = zOrder;
+            }
+        }
+
+        private final String focusedId;
+        private final List<Entry> entries;
+
+        private LayoutState(String focusedId, List<Entry> entries) {
+            this.focusedId = focusedId;
+            this.entries = entries;
+        }
+    }
+
+    /**
+     * Capture the layout of all webviews, e.g. to undo a failed batch.
+     */
+    public LayoutState captureLayout() {
+        List<LayoutState.Entry> entries = new ArrayList<>(webviews.size());
+        for (WebviewContainer container : webviews.values()) {
+            WebviewFrame frame = container.getPendingFrame() != null ? container.getPendingFrame() : container.getFrame();
+            entries.add(new LayoutState.Entry(container.getId(), frame, container.isHidden(), container.getZOrder()));
+        }
+        Collections.sort(entries, (a, b) -> Long.compare(a.zOrder, b.zOrder));
+        return new LayoutState(focusedWebviewId, entries);
+    }
+
+    /**
+     * Restore a captured layout. Webviews destroyed since are skipped, webviews created since are
+     * left as they are.
+     */
+    public void restoreLayout(LayoutState layout) {
+        for (LayoutState.Entry entry : layout.entries) {
+            WebviewContainer container = webviews.get(entry.id);
+            if (container == null) {
+                continue;
+            }
+
+            cancelFrameAnimation(container);
+            container.setPendingFrame(null);
+            applyFrame(container, entry.frame);
+
+            try {
+                if (entry.hidden && !container.isHidden()) {
+                    hideWebview(entry.id);
+                } else if (!entry.hidden && container.isHidden()) {
+                    showWebview(entry.id);
+                }
+            } catch (Exception e) {
+                Log.e(TAG, "Error restoring visibility of webview '" + entry.id + "'", e);
+            }
+
+            // Entries are in stacking order, so bringing each to the front restores it
+            if (container.getWebView() != null) {
+                container.getWebView().bringToFront();
+            }
+            container.setZOrder(entry.zOrder);
+        }
+
+        setFocusedId(layout.focusedId != null && webviews.containsKey(layout.focusedId) ? layout.focusedId : null);
+        refreshVisibilityState();
+        publish();
+    }
+
+    private ViewGroup getRootView() {
+        return (ViewGroup) plugin.getBridge().getWebView().getParent();
+    }
+
+    /**
+     * The latest published registry snapshot; safe to call from any thread.
+     */
+    public RegistrySnapshot getSnapshot() {
+        return snapshot.get();
+    }
+
+    public void hideWebview(String id) throws Exception {
+        WebviewContainer container = webviews.get(id);
+        if (container == null) {
+            throw new Exception("Webview with id '" + id + "' not found");
+        }
+
+        if (!container.isHidden()) {
+            captureSnapshot(container);
+        }
+        if (container.getWebView() != null) {
+            container.getWebView().setVisibility(getHiddenVisibility(container));
+        }
+        container.setHidden(true);
+
+        if (id.equals(focusedWebviewId)) {
+            setFocusedId(null);
+        }
+
+        enforceLiveBudget();
+        refreshVisibilityState();
+        publish();
+    }
+
+    public void showWebview(String id) throws Exception {
+        WebviewContainer container = webviews.get(id);
+        if (container == null) {
+            throw new Exception("Webview with id '" + id + "' not found");
+        }
+
+        promotePrerender(container);
+        container.setHidden(false);
+        container.touch();
+        requireWebView(container).setVisibility(View.VISIBLE);
+        refreshVisibilityState();
+        publish();
+    }
+
+    /**
+     * Keep a thumbnail of a webview that is about to be hidden. Only visible, live webviews have
+     * content to draw.
+     */
+    private void captureSnapshot(WebviewContainer container) {
+        WebView webView = container.getWebView();
+        if (snapshotCache.isEnabled() && webView != null && webView.getVisibility() == View.VISIBLE) {
+            snapshotCache.capture(container.getId(), webView);
+        }
+    }
+
+    public void destroyWebview(String id) throws Exception {
+        WebviewContainer container = webviews.get(id);
+        if (container == null) {
+            throw new Exception("Webview with id '" + id + "' not found");
+        }
+
+        cancelFrameAnimation(container);
+        WebView webView = container.getWebView();
+        if (webView != null) {
+            ViewGroup rootView = getRootView();
+            rootView.removeView(webView);
+            pool.release(webView);
+        }
+        container.getOutbound().clear("Webview destroyed");
+        container.getBroadcasts().clear("Webview destroyed");
+        abandonPage(container);
+        container.getInbound().close();
+        loadScheduler.remove(id);
+        contentBlocker.removeWebview(id);
+        urlIndex.remove(id);
+        urlIndexChanged = true;
+        if (container.getChannel() != null) {
+            container.getChannel().close();
+        }
+        webviews.remove(id);
+        metrics.removeWebview(id);
+        snapshotCache.remove(id);
+        if (sessionStore != null) {
+            sessionStore.remove(id);
+        }
+
+        if (id.equals(focusedWebviewId)) {
+            setFocusedId(null);
+        }
+
+        refreshVisibilityState();
+        publish();
+    }
+
+    /**
+     * Load a URL in a webview.
+     *
+     * @param prerender if true and the webview is hidden, load it at the lowest priority and pause
+     *                  it once loaded, rehydrating it first if it is hibernated
+     */
+    public void loadUrl(String id, String url, boolean prerender) throws Exception {
+        WebviewContainer container = webviews.get(id);
+        if (container == null) {
+            throw new Exception("Webview with id '" + id + "' not found");
+        }
+
+        container.setRequestedUrl(url);
+        if (prerender && container.isHidden() && !id.equals(focusedWebviewId)) {
+            startPrerender(container);
+            if (container.getWebView() == null) {
+                // Rehydrating loads the restore URL
+                updateUrl(container, url);
+                discardSavedState(container);
+                requireWebView(container);
+                return;
+            }
+            refreshVisibilityState();
+        }
+
+        if (container.getWebView() == null) {
+            // Hibernated: drop the saved history so the new URL is loaded on rehydration
+            updateUrl(container, url);
+            discardSavedState(container);
+            publish();
+            return;
+        }
+
+        loadScheduler.enqueue(id, url);
+        publish();
+    }
+
+    public JSObject getWebviewInfo(String id) throws Exception {
+        RegistrySnapshot current = snapshot.get();
+        RegistrySnapshot.WebviewState state = current.get(id);
+        if (state == null) {
+            throw new Exception("Webview with id '" + id + "' not found");
+        }
+        return current.toInfo(state);
+    }
+
+    /**
+     * Find webviews by URL using the URL index.
+     *
+     * @param match one of "contains", "exact", "host", "prefix" or "glob"
+     */
+    public List<String> getWebviewsByUrl(String urlString, String match) {
+        UrlIndex index = snapshot.get().getUrlIndex();
+        switch (match) {
+            case "exact":
+                return index.findExact(urlString);
+            case "host":
+                return index.findByHost(urlString);
+            case "prefix":
+                return index.findByPathPrefix(urlString);
+            case "glob":
+                return index.findByGlob(urlString);
+            default:
+                return index.findContaining(urlString);
+        }
+    }
+
+    /**
+     * Resolve which webview owns each URL. When several webviews own a URL equally, the focused
+     * one wins, then visible ones, then the most recently active one.
+     */
+    public Map<String, String> resolveUrlOwners(List<String> urls) {
+        RegistrySnapshot current = snapshot.get();
+        Map<String, String> owners = new HashMap<>();
+        for (String url : urls) {
+            String owner = null;
+            RegistrySnapshot.WebviewState ownerState = null;
+            for (String candidate : current.getUrlIndex().findOwners(url)) {
+                RegistrySnapshot.WebviewState state = current.get(candidate);
+                if (state == null) {
+                    continue;
+                }
+                if (candidate.equals(current.getFocusedId())) {
+                    owner = candidate;
+                    break;
+                }
+                if (
+                    ownerState == null ||
+                    (ownerState.isHidden() && !state.isHidden()) ||
+                    (ownerState.isHidden() == state.isHidden() && state.getLastActiveAt() > ownerState.getLastActiveAt())
+                ) {
+                    owner = candidate;
+                    ownerState = state;
+                }
+            }
+            owners.put(url, owner);
+        }
+        return owners;
+    }
+
+    private void updateUrl(WebviewContainer container, String url) {
+        container.setCurrentUrl(url);
+        urlIndex.update(container.getId(), url);
+        urlIndexChanged = true;
+    }
+
+    /**
+     * Publish a new immutable snapshot of the registry. Must be called on the UI thread after
+     * every change that is visible through the query methods.
+     */
+    private void publish() {
+        if (batchDepth > 0) {
+            publishPending = true;
+            return;
+        }
+
+        RegistrySnapshot previous = snapshot.get();
+
+        Map<String, Integer> queuePositions = loadScheduler.getQueuePositions();
+        Map<String, RegistrySnapshot.WebviewState> states = new LinkedHashMap<>();
+        for (WebviewContainer container : webviews.values()) {
+            RegistrySnapshot.WebviewState state = new RegistrySnapshot.WebviewState();
+            state.id = container.getId();
+            state.url = container.getCurrentUrl();
+            state.hidden = container.isHidden();
+            state.hibernated = container.getWebView() == null;
+            state.occluded = container.isOccluded();
+            state.channelOpen = container.getChannel() != null && container.getChannel().isOpen();
+            state.lastActiveAt = container.getLastActiveAt();
+            state.loading = loadScheduler.isLoading(container.getId());
+            state.prerenderState = container.getPrerenderState();
+            state.loadQueuePosition = queuePositions.get(container.getId());
+            state.rendererPriority = container.getWebView() != null ? rendererPriorityName(container.getRendererPriority()) : null;
+            state.lifecycleState = container.getWebView() == null
+                ? "hibernated"
+                : !container.isPaused() ? "active" : timersPaused ? "timersPaused" : "paused";
+            state.inbound = container.getInbound();
+            state.blockedRequests = contentBlocker.getBlockedCounter(container.getId());
+            states.put(state.id, state);
+        }
+
+        // The index is copied only when URLs changed, otherwise the previous copy is shared
+        UrlIndex index = urlIndexChanged ? new UrlIndex(urlIndex) : previous.getUrlIndex();
+        urlIndexChanged = false;
+
+        snapshot.set(new RegistrySnapshot(previous.getVersion() + 1, focusedWebviewId, states, index));
+
+        if (sessionStore != null) {
+            persistRecords();
+        }
+    }
+
+    /**
+     * Restore saved history; a state the installed WebView cannot read is reported as a failure,
+     * so the container falls back to loading its URL.
+     */
+    private static boolean restoreState(WebView webView, Bundle savedState) {
+        try {
+            return webView.restoreState(savedState) != null;
+        } catch (Exception e) {
+            Log.w(TAG, "Failed to restore webview state", e);
+            return false;
+        }
+    }
+
+    /**
+     * Focus a container, or none; the session records of both containers change.
+     */
+    private void setFocusedId(String id) {
+        for (String changed : new String[] { focusedWebviewId, id }) {
+            WebviewContainer container = changed != null ? webviews.get(changed) : null;
+            if (container != null) {
+                container.setRecordDirty(true);
+            }
+        }
+        focusedWebviewId = id;
+    }
+
+    /**
+     * Write the session records of containers whose persisted fields changed since they were last
+     * written; the others are not serialized.
+     */
+    private void persistRecords() {
+        for (WebviewContainer container : webviews.values()) {
+            if (!container.isRecordDirty()) {
+                continue;
+            }
+            container.setRecordDirty(false);
+
+            JSObject record = new JSObject();
+            record.put("id", container.getId());
+            record.put("order", container.getSessionOrder());
+            record.put("url", container.getRestoreUrl());
+            WebviewFrame frame = container.getFrame();
+            if (frame != null) {
+                JSObject frameObj = new JSObject();
+                frameObj.put("x", frame.x);
+                frameObj.put("y", frame.y);
+                frameObj.put("width", frame.width);
+                frameObj.put("height", frame.height);
+                record.put("frame", frameObj);
+            }
+            record.put("hidden", container.isHidden());
+            record.put("focused", container.getId().equals(focusedWebviewId));
+            record.put("options", container.getOptions().toJSObject());
+            sessionStore.saveRecord(container.getId(), record.toString());
+        }
+    }
+
+    /**
+     * Persist the history of live webviews that navigated since it was last saved. Called when the
+     * app goes to the background, as it may be killed afterwards.
+     */
+    public void persistSessionState() {
+        if (sessionStore == null) {
+            return;
+        }
+        for (WebviewContainer container : webviews.values()) {
+            WebView webView = container.getWebView();
+            if (webView == null || !container.isStateDirty()) {
+                continue;
+            }
+            Bundle state = new Bundle();
+            if (webView.saveState(state) != null) {
+                sessionStore.saveState(container.getId(), state);
+                container.setStateDirty(false);
+            }
+        }
+    }
+
+    /**
+     * Delete the persisted session. Webviews that still exist are persisted again once they change.
+     */
+    public void clearSession() {
+        if (sessionStore != null) {
+            sessionStore.clear();
+        }
+    }
+
+    /**
+     * Drop the saved history of a hibernated container, e.g. because a new URL replaces it.
+     */
+    private void discardSavedState(WebviewContainer container) {
+        container.takeSavedState();
+        if (sessionStore != null) {
+            sessionStore.saveState(container.getId(), null);
+            container.setStateDirty(false);
+        }
+    }
+
+    /**
+     * Set the frame of a webview.
+     *
+     * @param coalesce if true, only the latest frame set before the next vsync is applied; use
+     *                 for high-frequency updates such as drag-to-resize
+     */
+    public void setWebviewFrame(String id, WebviewFrame frame, boolean coalesce) throws Exception {
+        WebviewContainer container = webviews.get(id);
+        if (container == null) {
+            throw new Exception("Webview with id '" + id + "' not found");
+        }
+
+        cancelFrameAnimation(container);
+        if (coalesce) {
+            container.setPendingFrame(frame);
+            if (!frameUpdateScheduled) {
+                frameUpdateScheduled = true;
+                Choreographer.getInstance().postFrameCallback(frameUpdateCallback);
+            }
+            return;
+        }
+
+        container.setPendingFrame(null);
+        applyFrame(container, frame);
+        refreshOcclusion();
+    }
+
+    /**
+     * Animate the frame of a webview natively, one update per vsync.
+     *
+     * @param from start frame, or null to start from the current frame
+     * @param interpolator one of "linear", "easeIn", "easeOut" or "easeInOut"
+     */
+    public void animateWebviewFrame(
+        String id,
+        WebviewFrame from,
+        WebviewFrame to,
+        long duration,
+        String interpolator,
+        FrameAnimationCallback callback
+    ) throws Exception {
+        WebviewContainer container = webviews.get(id);
+        if (container == null) {
+            throw new Exception("Webview with id '" + id + "' not found");
+        }
+
+        cancelFrameAnimation(container);
+        container.setPendingFrame(null);
+
+        WebviewFrame start = from != null ? from : container.getFrame() != null ? container.getFrame() : getFullscreenFrame();
+        ValueAnimator animator = ValueAnimator.ofFloat(0f, 1f);
+        animator.setDuration(duration);
+        animator.setInterpolator(createInterpolator(interpolator));
+        animator.addUpdateListener(animation -> {
+            float t = (float) animation.getAnimatedValue();
+            applyFrame(
+                container,
+                new WebviewFrame(
+                    start.x + (to.x - start.x) * t,
+                    start.y + (to.y - start.y) * t,
+                    start.width + (to.width - start.width) * t,
+                    start.height + (to.height - start.height) * t
+                )
+            );
+            // Before the frame is drawn, so webviews uncovered by the animation reappear in time
+            refreshOcclusion();
+        });
+        animator.addListener(
+            new AnimatorListenerAdapter() {
+                private boolean cancelled = false;
+
+                @Override
+                public void onAnimationCancel(Animator animation) {
+                    cancelled = true;
+                }
+
+                @Override
+                public void onAnimationEnd(Animator animation) {
+                    if (container.getFrameAnimator() == animation) {
+                        container.setFrameAnimator(null);
+                    }
+                    if (!cancelled) {
+                        applyFrame(container, to);
+                    }
+                    refreshOcclusion();
+                    if (callback != null) {
+                        callback.onFinished(!cancelled);
+                    }
+                }
+            }
+        );
+
+        container.setFrameAnimator(animator);
+        animator.start();
+    }
+
+    public interface FrameAnimationCallback {
+        void onFinished(boolean completed);
+    }
+
+    private void cancelFrameAnimation(WebviewContainer container) {
+        ValueAnimator animator = container.getFrameAnimator();
+        if (animator != null) {
+            container.setFrameAnimator(null);
+            animator.cancel();
+        }
+    }
+
+    /**
+     * Apply a frame to the container. Position-only changes are applied as a translation of the
+     * last laid out frame, which needs no layout pass; size changes update the layout params.
+     */
+    private void applyFrame(WebviewContainer container, WebviewFrame frame) {
+        container.setFrame(frame);
+
+        WebView webView = container.getWebView();
+        if (webView == null) {
+            // Hibernated; the frame is applied on rehydration
+            return;
+        }
+
+        WebviewFrame laidOut = container.getLayoutFrame();
+        float density = plugin.getContext().getResources().getDisplayMetrics().density;
+        if (laidOut != null && frame != null && laidOut.width == frame.width && laidOut.height == frame.height) {
+            webView.setTranslationX((float) ((frame.x - laidOut.x) * density));
+            webView.setTranslationY((float) ((frame.y - laidOut.y) * density));
+            return;
         }
 
-        // Hide all other webviews
-        for (Map.Entry<String, WebviewContainer> entry : webviews.entrySet()) {
-            if (!entry.getKey().equals(id)) {
-                entry.getValue().getWebView().setVisibility(View.GONE);
-                entry.getValue().setHidden(true);
-            }
+        FrameLayout.LayoutParams layoutParams;
+        if (frame != null && webView.getLayoutParams() instanceof FrameLayout.LayoutParams) {
+            // Reuse the existing params instead of allocating new ones
+            layoutParams = (FrameLayout.LayoutParams) webView.getLayoutParams();
+            layoutParams.width = (int) (frame.width * density);
+            layoutParams.height = (int) (frame.height * density);
+            layoutParams.leftMargin = (int) (frame.x * density);
+            layoutParams.topMargin = (int) (frame.y * density);
+        } else {
+            layoutParams = createLayoutParams(frame);
         }
 
-        // Show and bring to front the focused webview
-        container.getWebView().setVisibility(View.VISIBLE);
-        container.setHidden(false);
-        container.getWebView().bringToFront();
+        webView.setTranslationX(0);
+        webView.setTranslationY(0);
+        webView.setLayoutParams(layoutParams);
+        container.setLayoutFrame(frame);
+    }
 
-        focusedWebviewId = id;
+    private WebviewFrame getFullscreenFrame() {
+        ViewGroup rootView = getRootView();
+        float density = plugin.getContext().getResources().getDisplayMetrics().density;
+        return new WebviewFrame(0, 0, rootView.getWidth() / density, rootView.getHeight() / density);
     }
 
-    public String getFocusedWebviewId() {
-        return focusedWebviewId;
+    private static TimeInterpolator createInterpolator(String name) {
+        if (name == null) {
+            return new AccelerateDecelerateInterpolator();
+        }
+        switch (name) {
+            case "linear":
+                return new LinearInterpolator();
+            case "easeIn":
+                return new AccelerateInterpolator();
+            case "easeOut":
+                return new DecelerateInterpolator();
+            default:
+                return new AccelerateDecelerateInterpolator();
+        }
     }
 
-    public void hideWebview(String id) throws Exception {
+    public void executeJavaScript(String id, String code, ValueCallback<String> callback) throws Exception {
         WebviewContainer container = webviews.get(id);
         if (container == null) {
             throw new Exception("Webview with id '" + id + "' not found");
         }
 
-        container.getWebView().setVisibility(View.GONE);
-        container.setHidden(true);
+        long startedAt = System.nanoTime();
+        requireWebView(container).evaluateJavascript(
+            code,
+            value -> {
+                metrics.recordEvaluateJavascript(id, System.nanoTime() - startedAt);
+                callback.onReceiveValue(value);
+            }
+        );
+    }
 
-        if (id.equals(focusedWebviewId)) {
-            focusedWebviewId = null;
-        }
+    public interface ScriptCallback {
+        void onResult(Object value);
+
+        void onError(String message);
     }
 
-    public void showWebview(String id) throws Exception {
+    /**
+     * Register a script with a webview and define it in the current page. The script stays
+     * registered across navigations and hibernation.
+     *
+     * @param code expression evaluating to a function that takes the invocation arguments
+     * @return handle to invoke the script with
+     */
+    public String registerScript(String id, String code) throws Exception {
         WebviewContainer container = webviews.get(id);
         if (container == null) {
             throw new Exception("Webview with id '" + id + "' not found");
         }
 
-        container.getWebView().setVisibility(View.VISIBLE);
-        container.setHidden(false);
+        RegisteredScripts scripts = container.getScripts();
+        String handle = scripts.register(code);
+        if (container.getWebView() != null) {
+            container.getWebView().evaluateJavascript(scripts.buildDefineScript(handle), null);
+        }
+        return handle;
     }
 
-    public void destroyWebview(String id) throws Exception {
+    public void unregisterScript(String id, String handle) throws Exception {
         WebviewContainer container = webviews.get(id);
         if (container == null) {
             throw new Exception("Webview with id '" + id + "' not found");
         }
-
-        ViewGroup rootView = (ViewGroup) plugin.getBridge().getWebView().getParent();
-        rootView.removeView(container.getWebView());
-        container.getWebView().destroy();
-        webviews.remove(id);
-
-        if (id.equals(focusedWebviewId)) {
-            focusedWebviewId = null;
+        if (!container.getScripts().unregister(handle)) {
+            throw new Exception("Script '" + handle + "' not found");
+        }
+        if (container.getWebView() != null) {
+            container.getWebView().evaluateJavascript(RegisteredScripts.buildUndefineScript(handle), null);
         }
     }
 
-    public void loadUrl(String id, String url) throws Exception {
+    /**
+     * Invoke a registered script with JSON arguments. If the page lost the definition, e.g. after a
+     * navigation, the script is defined again and the invocation retried once.
+     */
+    public void invokeScript(String id, String handle, Object args, ScriptCallback callback) throws Exception {
         WebviewContainer container = webviews.get(id);
         if (container == null) {
             throw new Exception("Webview with id '" + id + "' not found");
         }
+        if (!container.getScripts().contains(handle)) {
+            throw new Exception("Script '" + handle + "' not found");
+        }
 
-        container.getWebView().loadUrl(url);
+        evaluateScript(container, handle, args, false, callback);
     }
 
-    public List<String> listWebviews() {
-        return new ArrayList<>(webviews.keySet());
+    private void evaluateScript(WebviewContainer container, String handle, Object args, boolean define, ScriptCallback callback) {
+        RegisteredScripts scripts = container.getScripts();
+        long startedAt = System.nanoTime();
+        requireWebView(container).evaluateJavascript(
+            scripts.buildInvokeScript(handle, args, define),
+            json -> {
+                metrics.recordEvaluateJavascript(container.getId(), System.nanoTime() - startedAt);
+                RegisteredScripts.Result result = RegisteredScripts.parseResult(json);
+                if (result.miss && !define && scripts.contains(handle) && webviews.get(container.getId()) == container) {
+                    evaluateScript(container, handle, args, true, callback);
+                } else if (result.miss) {
+                    callback.onError("Script '" + handle + "' is not available in the page");
+                } else if (result.error != null) {
+                    callback.onError(result.error);
+                } else {
+                    callback.onResult(result.value);
+                }
+            }
+        );
     }
 
-    public JSObject getWebviewInfo(String id) throws Exception {
+    /**
+     * Queue a message for the webview. Messages are flushed once per frame in a single script
+     * evaluation; the callback is invoked when the message was actually delivered or dropped.
+     */
+    public void sendMessage(String id, Object data, String coalesceKey, OutboundMessageQueue.DeliveryCallback callback)
+        throws Exception {
         WebviewContainer container = webviews.get(id);
         if (container == null) {
             throw new Exception("Webview with id '" + id + "' not found");
         }
 
-        JSObject info = new JSObject();
-        info.put("id", id);
-        info.put("url", container.getCurrentUrl());
-        info.put("isHidden", container.isHidden());
-        info.put("isFocused", id.equals(focusedWebviewId));
-        return info;
+        // Serialize once; the payload is embedded as-is into the dispatch script
+        JSONObject detail = new JSONObject();
+        detail.put("data", data);
+        String payload = detail.toString();
+        metrics.recordMessageOut(id, payload.length());
+        container.getOutbound().enqueue(payload, coalesceKey, callback);
     }
 
-    public List<JSObject> getAllWebviews() {
-        List<JSObject> result = new ArrayList<>();
-        for (Map.Entry<String, WebviewContainer> entry : webviews.entrySet()) {
-            String id = entry.getKey();
-            WebviewContainer container = entry.getValue();
-
-            JSObject info = new JSObject();
-            info.put("id", id);
-            info.put("url", container.getCurrentUrl());
-            info.put("isHidden", container.isHidden());
-            info.put("isFocused", id.equals(focusedWebviewId));
-            result.add(info);
+    /**
+     * Send a message to every webview matching the filter. The message is serialized once and the
+     * same payload is queued for every recipient; recipients that are paused or hibernated keep it
+     * in their broadcast queue, where messages with the same coalescing key replace each other,
+     * until they resume.
+     *
+     * @return the ids of the recipients
+     */
+    public List<String> broadcastMessage(Object data, BroadcastFilter filter, String coalesceKey) throws JSONException {
+        JSONObject detail = new JSONObject();
+        detail.put("data", data);
+        if (filter.topic != null) {
+            detail.put("topic", filter.topic);
         }
-        return result;
-    }
+        String payload = detail.toString();
 
-    public List<String> getWebviewsByUrl(String urlString, boolean exactMatch) {
-        List<String> result = new ArrayList<>();
-        for (Map.Entry<String, WebviewContainer> entry : webviews.entrySet()) {
-            String id = entry.getKey();
-            WebviewContainer container = entry.getValue();
-            String currentUrl = container.getCurrentUrl();
-
-            if (currentUrl != null) {
-                if (exactMatch) {
-                    if (currentUrl.equals(urlString)) {
-                        result.add(id);
-                    }
-                } else {
-                    if (currentUrl.contains(urlString)) {
-                        result.add(id);
-                    }
-                }
+        Set<String> ids = filter.ids != null ? new HashSet<>(filter.ids) : null;
+        Set<String> urlMatches = filter.urlPattern != null ? new HashSet<>(urlIndex.findByGlob(filter.urlPattern)) : null;
+
+        List<String> recipients = new ArrayList<>();
+        for (WebviewContainer container : webviews.values()) {
+            String id = container.getId();
+            if (ids != null && !ids.contains(id)) {
+                continue;
+            }
+            if (urlMatches != null && !urlMatches.contains(id)) {
+                continue;
             }
+            if (filter.topic != null && !container.getTopics().contains(filter.topic)) {
+                continue;
+            }
+            boolean visible = !container.isHidden() || id.equals(focusedWebviewId);
+            if (
+                (filter.visibility == BroadcastFilter.Visibility.VISIBLE && !visible) ||
+                (filter.visibility == BroadcastFilter.Visibility.HIDDEN && visible)
+            ) {
+                continue;
+            }
+
+            deliverBroadcast(container, payload, coalesceKey);
+            recipients.add(id);
         }
-        return result;
+        return recipients;
     }
 
-    public void setWebviewFrame(String id, WebviewFrame frame) throws Exception {
-        WebviewContainer container = webviews.get(id);
-        if (container == null) {
-            throw new Exception("Webview with id '" + id + "' not found");
+    private void deliverBroadcast(WebviewContainer container, String payload, String coalesceKey) {
+        metrics.recordMessageOut(container.getId(), payload.length());
+        if (container.getWebView() == null || container.isPaused()) {
+            container.getBroadcasts().enqueue(payload, coalesceKey, null);
+        } else {
+            container.getOutbound().enqueue(payload, coalesceKey, null);
         }
+    }
 
-        DisplayMetrics metrics = plugin.getContext().getResources().getDisplayMetrics();
-        int x = (int) (frame.x * metrics.density);
-        int y = (int) (frame.y * metrics.density);
-        int width = (int) (frame.width * metrics.density);
-        int height = (int) (frame.height * metrics.density);
+    /**
+     * Move held broadcasts into the regular queue once the webview runs again.
+     */
+    private boolean forwardBroadcasts(WebviewContainer container, List<String> payloads) {
+        if (container.getWebView() == null || container.isPaused()) {
+            return false;
+        }
+        for (String payload : payloads) {
+            container.getOutbound().enqueue(payload, null, null);
+        }
+        return true;
+    }
 
-        FrameLayout.LayoutParams layoutParams = new FrameLayout.LayoutParams(width, height);
-        layoutParams.leftMargin = x;
-        layoutParams.topMargin = y;
+    /**
+     * Route a message a page published to a topic to every other subscribed webview. Called on
+     * the UI thread.
+     */
+    private void routeTopicMessage(String fromId, String topic, String payload) {
+        WebviewContainer from = webviews.get(fromId);
+        if (from == null) {
+            return;
+        }
+        for (WebviewContainer container : webviews.values()) {
+            if (
+                container != from &&
+                container.getTopics().contains(topic) &&
+                WebviewOptions.canRoute(fromId, from.getOptions(), container.getId(), container.getOptions())
+            ) {
+                deliverBroadcast(container, payload, null);
+            }
+        }
+    }
 
-        container.getWebView().setLayoutParams(layoutParams);
+    /**
+     * Route a message a page addressed to another webview. Messages to unknown webviews, or to
+     * webviews it may not route to, are dropped. Called on the UI thread.
+     */
+    private void routeDirectMessage(String fromId, String targetId, String payload) {
+        WebviewContainer from = webviews.get(fromId);
+        WebviewContainer container = webviews.get(targetId);
+        if (
+            from != null &&
+            container != null &&
+            WebviewOptions.canRoute(fromId, from.getOptions(), targetId, container.getOptions())
+        ) {
+            deliverBroadcast(container, payload, null);
+        }
     }
 
-    public void executeJavaScript(String id, String code, ValueCallback<String> callback) throws Exception {
-        WebviewContainer container = webviews.get(id);
-        if (container == null) {
-            throw new Exception("Webview with id '" + id + "' not found");
+    private boolean deliverRpcReplies(WebviewContainer container, List<String> payloads) {
+        WebView webView = container.getWebView();
+        if (webView == null) {
+            return false;
         }
+        webView.evaluateJavascript(OutboundMessageQueue.buildDispatchScript(payloads, "multiwebview-rpc"), null);
+        return true;
+    }
 
-        container.getWebView().evaluateJavascript(code, callback);
+    /**
+     * Forget the calls and transfers of a page that is going away; their replies and chunks could
+     * not be delivered.
+     */
+    private void abandonPage(WebviewContainer container) {
+        rpc.abandonWebview(container.getId());
+        container.getRpcReplies().clear("Page unloaded");
+        transfers.abandonWebview(container.getId());
     }
 
-    public void sendMessage(String id, Object data) throws Exception {
-        WebviewContainer container = webviews.get(id);
-        if (container == null) {
-            throw new Exception("Webview with id '" + id + "' not found");
+    private boolean deliverMessages(WebviewContainer container, List<String> payloads) {
+        WebView webView = container.getWebView();
+        if (webView == null) {
+            // Hibernated; delivered after rehydration
+            return false;
         }
 
-        // Convert data to JSON string
-        String jsonString = new JSONObject(Map.of("data", data)).toString();
+        // Prefer the message port when the page has one; it needs no script evaluation
+        if (container.getChannel() != null && container.getChannel().post(payloads)) {
+            return true;
+        }
+
+        webView.evaluateJavascript(OutboundMessageQueue.buildDispatchScript(payloads), null);
+        return true;
+    }
+
+    /**
+     * Emit messages posted by a page, either as one 'messages' event per flush or as individual
+     * 'message' events. Called on the inbound executor.
+     */
+    private void deliverIncomingMessages(String webviewId, boolean batched, List<Object> messages) {
+        metrics.recordMessagesIn(webviewId, messages.size());
+        String eventName = batched ? "messages" : "message";
+        if (!plugin.wantsEvent(eventName, webviewId)) {
+            return;
+        }
 
-        // Escape for JavaScript
-        String escapedJson = jsonString.replace("\\", "\\\\").replace("'", "\\'").replace("\n", "\\n").replace("\r", "\\r");
+        if (batched) {
+            plugin.notifyEvent(
+                eventName,
+                webviewId,
+                () -> {
+                    JSArray batch = new JSArray();
+                    for (Object message : messages) {
+                        batch.put(message);
+                    }
+                    JSObject data = new JSObject();
+                    data.put("id", webviewId);
+                    data.put("messages", batch);
+                    return data;
+                }
+            );
+            return;
+        }
 
-        // Inject JavaScript to dispatch custom event
-        String script = "javascript:(function() {" + "var event = new CustomEvent('multiwebview-message', {" + "detail: " + escapedJson + "" + "});" + "window.dispatchEvent(event);" + "})();";
+        for (Object message : messages) {
+            plugin.notifyEvent(
+                eventName,
+                webviewId,
+                () -> {
+                    JSObject data = new JSObject();
+                    data.put("id", webviewId);
+                    data.put("data", message);
+                    return data;
+                }
+            );
+        }
+    }
 
-        container.getWebView().loadUrl(script);
+    /**
+     * Background handler on which message port callbacks are delivered.
+     */
+    private synchronized Handler getMessageHandler() {
+        if (messageThread == null) {
+            messageThread = new HandlerThread("MultiWebviewMessages");
+            messageThread.start();
+            messageHandler = new Handler(messageThread.getLooper());
+        }
+        return messageHandler;
     }
 
     // JavaScript interface for receiving messages from webviews
-    private class MessageHandler {
+    private static class MessageHandler {
 
-        private final String webviewId;
+        private final MultiWebviewManager manager;
+        private final WebviewContainer container;
+        private final Metrics metrics;
 
-        MessageHandler(String webviewId) {
-            this.webviewId = webviewId;
+        MessageHandler(MultiWebviewManager manager, WebviewContainer container) {
+            this.manager = manager;
+            this.container = container;
+            this.metrics = manager.metrics;
         }
 
         @JavascriptInterface
         public void postMessage(String message) {
+            if (message == null) {
+                return;
+            }
+            metrics.recordCharsIn(container.getId(), message.length());
+            container.getInbound().offer(message);
+        }
+
+        @JavascriptInterface
+        public void postMessages(String messages) {
+            if (messages == null) {
+                return;
+            }
+            metrics.recordCharsIn(container.getId(), messages.length());
+            container.getInbound().offerBatch(messages);
+        }
+
+        @JavascriptInterface
+        public void subscribe(String topic) {
+            if (topic == null || !container.getOptions().routing) {
+                return;
+            }
+            manager.uiHandler.post(() -> {
+                Set<String> topics = container.getTopics();
+                if (topics.size() < MAX_TOPICS_PER_PAGE) {
+                    topics.add(topic);
+                } else {
+                    Log.w(TAG, "Ignoring subscription of webview '" + container.getId() + "' beyond " + MAX_TOPICS_PER_PAGE + " topics");
+                }
+            });
+        }
+
+        @JavascriptInterface
+        public void unsubscribe(String topic) {
+            if (topic != null) {
+                manager.uiHandler.post(() -> container.getTopics().remove(topic));
+            }
+        }
+
+        /**
+         * Send a JSON message to every other webview subscribed to the topic.
+         */
+        @JavascriptInterface
+        public void publish(String topic, String message) {
+            if (topic == null || message == null || !container.getOptions().routing) {
+                return;
+            }
+            metrics.recordCharsIn(container.getId(), message.length());
+            String payload = buildRoutedPayload(message, topic);
+            if (payload != null) {
+                manager.uiHandler.post(() -> manager.routeTopicMessage(container.getId(), topic, payload));
+            }
+        }
+
+        /**
+         * Send a JSON message to another webview by id.
+         */
+        @JavascriptInterface
+        public void postTo(String targetId, String message) {
+            if (targetId == null || message == null || !container.getOptions().routing) {
+                return;
+            }
+            metrics.recordCharsIn(container.getId(), message.length());
+            String payload = buildRoutedPayload(message, null);
+            if (payload != null) {
+                manager.uiHandler.post(() -> manager.routeDirectMessage(container.getId(), targetId, payload));
+            }
+        }
+
+        /**
+         * Call a method of the host. The reply is dispatched as a 'multiwebview-rpc' event with the
+         * call id and either a result or an error.
+         *
+         * @param params JSON text of the parameters
+         * @param timeoutMs time after which the call fails, or 0 for the default
+         */
+        @JavascriptInterface
+        public void call(String callId, String method, String params, long timeoutMs) {
+            if (callId == null || method == null) {
+                return;
+            }
+            if (params != null) {
+                metrics.recordCharsIn(container.getId(), params.length());
+            }
+            manager.rpc.call(container.getId(), callId, method, params, timeoutMs);
+        }
+
+        @JavascriptInterface
+        public void cancelCall(String callId) {
+            if (callId != null) {
+                manager.rpc.cancel(container.getId(), callId);
+            }
+        }
+
+        /**
+         * Start sending a large or binary payload to the host in chunks.
+         *
+         * @param metadata JSON object with the optional size, mimeType and name of the payload
+         * @return null on success, otherwise an error message
+         */
+        @JavascriptInterface
+        public String beginTransfer(String transferId, String metadata) {
+            if (transferId == null) {
+                return "Must provide transfer id";
+            }
+            return manager.transfers.begin(container.getId(), transferId, metadata);
+        }
+
+        /**
+         * Append a chunk as a binary string with one char per byte, e.g. built with
+         * String.fromCharCode from a Uint8Array. Returns once the chunk is written.
+         *
+         * @return false if the transfer was cancelled
+         */
+        @JavascriptInterface
+        public boolean writeTransfer(String transferId, String chunk) {
+            if (transferId == null || chunk == null) {
+                return false;
+            }
+            metrics.recordCharsIn(container.getId(), chunk.length());
+            return manager.transfers.write(container.getId(), transferId, chunk);
+        }
+
+        @JavascriptInterface
+        public boolean endTransfer(String transferId) {
+            return transferId != null && manager.transfers.end(container.getId(), transferId);
+        }
+
+        /**
+         * Cancel a transfer in either direction.
+         */
+        @JavascriptInterface
+        public boolean cancelTransfer(String transferId) {
+            return transferId != null && manager.transfers.cancel(container.getId(), transferId);
+        }
+
+        /**
+         * Parse and re-serialize a message on the bridge thread, so that only valid JSON is
+         * embedded into other pages and the UI thread only enqueues.
+         */
+        private String buildRoutedPayload(String message, String topic) {
             try {
-                JSObject data = new JSObject();
-                data.put("id", webviewId);
-                data.put("data", new JSONObject(message));
-                plugin.notifyEvent("message", data);
-            } catch (Exception e) {
-                Log.e(TAG, "Error handling message", e);
+                JSONObject detail = new JSONObject();
+                detail.put("data", new JSONTokener(message).nextValue());
+                if (topic != null) {
+                    detail.put("topic", topic);
+                }
+                detail.put("from", container.getId());
+                return detail.toString();
+            } catch (JSONException e) {
+                Log.w(TAG, "Dropping invalid message from webview '" + container.getId() + "': " + e.getMessage());
+                return null;
             }
         }
     }
@@ -355,29 +2327,163 @@ public class MultiWebviewManager {
     private static class WebviewContainer {
 
         private final String id;
-        private final WebView webView;
+        private final WebviewOptions options;
+        private OutboundMessageQueue outbound;
+        private OutboundMessageQueue broadcasts;
+        private OutboundMessageQueue rpcReplies;
+        private InboundMessageQueue inbound;
+        private MessagePortChannel channel;
+        private WebView webView;
+        private WebviewFrame frame;
+        private WebviewFrame layoutFrame;
+        private WebviewFrame pendingFrame;
+        private ValueAnimator frameAnimator;
         private boolean isHidden = false;
         private String currentUrl = null;
-
-        WebviewContainer(String id, WebView webView) {
+        private String requestedUrl = null;
+        private Bundle savedState = null;
+        private long lastActiveAt = 0;
+        private boolean paused = false;
+        private Integer rendererPriority = null;
+        private Integer rendererPriorityOverride = null;
+        private String prerenderState = null;
+        private long loadStartedAt = 0;
+        private final RegisteredScripts scripts = new RegisteredScripts();
+        private final Set<String> topics = new HashSet<>();
+        // Whether a field of the session record changed since it was last written
+        private boolean recordDirty = true;
+        private long sessionOrder = 0;
+        private long zOrder = 0;
+        private boolean occluded = false;
+        private boolean stateDirty = false;
+
+        WebviewContainer(String id, WebviewFrame frame, WebviewOptions options) {
             this.id = id;
-            this.webView = webView;
+            this.frame = frame;
+            this.options = options;
         }
 
         public String getId() {
             return id;
         }
 
+        /**
+         * The live WebView, or null while the container is hibernated.
+         */
         public WebView getWebView() {
             return webView;
         }
 
+        public void setWebView(WebView webView) {
+            this.webView = webView;
+        }
+
+        public WebviewOptions getOptions() {
+            return options;
+        }
+
+        public OutboundMessageQueue getOutbound() {
+            return outbound;
+        }
+
+        public void setOutbound(OutboundMessageQueue outbound) {
+            this.outbound = outbound;
+        }
+
+        /**
+         * Broadcast messages held while the webview is paused or hibernated.
+         */
+        public OutboundMessageQueue getBroadcasts() {
+            return broadcasts;
+        }
+
+        public void setBroadcasts(OutboundMessageQueue broadcasts) {
+            this.broadcasts = broadcasts;
+        }
+
+        /**
+         * Replies to calls of the page, dispatched as 'multiwebview-rpc' events.
+         */
+        public OutboundMessageQueue getRpcReplies() {
+            return rpcReplies;
+        }
+
+        public void setRpcReplies(OutboundMessageQueue rpcReplies) {
+            this.rpcReplies = rpcReplies;
+        }
+
+        /**
+         * Topics the current page subscribed to.
+         */
+        public Set<String> getTopics() {
+            return topics;
+        }
+
+        public InboundMessageQueue getInbound() {
+            return inbound;
+        }
+
+        public void setInbound(InboundMessageQueue inbound) {
+            this.inbound = inbound;
+        }
+
+        /**
+         * The message port channel, or null if the webview uses script evaluation for messages.
+         */
+        public MessagePortChannel getChannel() {
+            return channel;
+        }
+
+        public void setChannel(MessagePortChannel channel) {
+            this.channel = channel;
+        }
+
+        public WebviewFrame getFrame() {
+            return frame;
+        }
+
+        public void setFrame(WebviewFrame frame) {
+            this.frame = frame;
+            recordDirty = true;
+        }
+
+        /**
+         * The frame the layout params were last computed from; the current frame may differ from
+         * it by a translation only.
+         */
+        public WebviewFrame getLayoutFrame() {
+            return layoutFrame;
+        }
+
+        public void setLayoutFrame(WebviewFrame layoutFrame) {
+            this.layoutFrame = layoutFrame;
+        }
+
+        public WebviewFrame getPendingFrame() {
+            return pendingFrame;
+        }
+
+        public void setPendingFrame(WebviewFrame pendingFrame) {
+            this.pendingFrame = pendingFrame;
+        }
+
+        public ValueAnimator getFrameAnimator() {
+            return frameAnimator;
+        }
+
+        public void setFrameAnimator(ValueAnimator frameAnimator) {
+            this.frameAnimator = frameAnimator;
+        }
+
         public boolean isHidden() {
             return isHidden;
         }
 
         public void setHidden(boolean hidden) {
-            isHidden = hidden;
+            if (isHidden != hidden) {
+                isHidden = hidden;
+                recordDirty = true;
+            }
         }
 
         public String getCurrentUrl() {
@@ -385,7 +2491,152 @@ public class MultiWebviewManager {
         }
 
         public void setCurrentUrl(String currentUrl) {
-            this.currentUrl = currentUrl;
+            if (currentUrl != null ? !currentUrl.equals(this.currentUrl) : this.currentUrl != null) {
+                this.currentUrl = currentUrl;
+                recordDirty = true;
+            }
+        }
+
+        public void setRequestedUrl(String requestedUrl) {
+            this.requestedUrl = requestedUrl;
+            recordDirty = true;
+        }
+
+        /**
+         * URL to load when rehydrating without a saved state.
+         */
+        public String getRestoreUrl() {
+            return currentUrl != null ? currentUrl : requestedUrl;
+        }
+
+        public void setSavedState(Bundle savedState) {
+            this.savedState = savedState;
+        }
+
+        public Bundle takeSavedState() {
+            Bundle state = savedState;
+            savedState = null;
+            return state;
+        }
+
+        /**
+         * Whether WebView.onPause was called because of the background policy.
+         */
+        public boolean isPaused() {
+            return paused;
+        }
+
+        public void setPaused(boolean paused) {
+            this.paused = paused;
+        }
+
+        /**
+         * Renderer priority last applied to the current WebView, or null if none was applied yet.
+         */
+        public Integer getRendererPriority() {
+            return rendererPriority;
+        }
+
+        public void setRendererPriority(Integer rendererPriority) {
+            this.rendererPriority = rendererPriority;
+        }
+
+        public Integer getRendererPriorityOverride() {
+            return rendererPriorityOverride;
+        }
+
+        public void setRendererPriorityOverride(Integer rendererPriorityOverride) {
+            this.rendererPriorityOverride = rendererPriorityOverride;
+        }
+
+        /**
+         * "loading" or "ready" while the container is a prerender, otherwise null.
+         */
+        public String getPrerenderState() {
+            return prerenderState;
+        }
+
+        public void setPrerenderState(String prerenderState) {
+            this.prerenderState = prerenderState;
+        }
+
+        public boolean isPrerender() {
+            return prerenderState != null;
+        }
+
+        public RegisteredScripts getScripts() {
+            return scripts;
+        }
+
+        /**
+         * System.nanoTime() at which the current page load started, or 0 if none is in progress.
+         */
+        public long getLoadStartedAt() {
+            return loadStartedAt;
+        }
+
+        public void setLoadStartedAt(long loadStartedAt) {
+            this.loadStartedAt = loadStartedAt;
+        }
+
+        public long getZOrder() {
+            return zOrder;
+        }
+
+        public void setZOrder(long zOrder) {
+            this.zOrder = zOrder;
+        }
+
+        /**
+         * Whether the container is visible but fully covered by other webviews or off-screen.
+         */
+        public boolean isOccluded() {
+            return occluded;
+        }
+
+        public void setOccluded(boolean occluded) {
+            this.occluded = occluded;
+        }
+
+        /**
+         * Whether the session record must be written again; set by the setters of persisted fields.
+         */
+        public boolean isRecordDirty() {
+            return recordDirty;
+        }
+
+        public void setRecordDirty(boolean recordDirty) {
+            this.recordDirty = recordDirty;
+        }
+
+        /**
+         * Position among the persisted webviews; increases with creation order.
+         */
+        public long getSessionOrder() {
+            return sessionOrder;
+        }
+
+        public void setSessionOrder(long sessionOrder) {
+            this.sessionOrder = sessionOrder;
+        }
+
+        /**
+         * Whether the history changed since the WebView state was last persisted.
+         */
+        public boolean isStateDirty() {
+            return stateDirty;
+        }
+
+        public void setStateDirty(boolean stateDirty) {
+            this.stateDirty = stateDirty;
+        }
+
+        public long getLastActiveAt() {
+            return lastActiveAt;
+        }
+
+        public void touch() {
+            lastActiveAt = SystemClock.uptimeMillis();
         }
     }
 }
@@ -1,24 +1,101 @@
 package net.bitburst.plugins.multiwebview;
 
+import android.net.Uri;
 import android.util.Log;
+import android.webkit.WebView;
 import com.getcapacitor.JSArray;
 import com.getcapacitor.JSObject;
 import com.getcapacitor.Plugin;
 import com.getcapacitor.PluginCall;
 import com.getcapacitor.PluginMethod;
 import com.getcapacitor.annotation.CapacitorPlugin;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import org.json.JSONArray;
 import org.json.JSONException;
+import org.json.JSONObject;
 
 @CapacitorPlugin(name = "MultiWebview")
 public class MultiWebviewPlugin extends Plugin {
 
     private static final String TAG = "MultiWebview";
     private MultiWebviewManager manager;
+    private EventEmitter events;
+
 
     @Override
     public void load() {
         super.load();
-        manager = new MultiWebviewManager(this);
+        events = new EventEmitter(
+            new EventEmitter.Sink() {
+                @Override
+                public boolean hasListeners(String eventName) {
+                    return MultiWebviewPlugin.this.hasListeners(eventName);
+                }
+
+                @Override
+                public void emit(String eventName, JSObject data) {
+                    notifyListeners(eventName, data);
+                }
+            }
+        );
+        WebviewPool pool = new WebviewPool(
+            getContext(),
+            getConfig().getInt("poolSize", 1),
+            getConfig().getBoolean("recycleOnDestroy", false)
+        );
+        AssetCache assetCache = new AssetCache(
+            getContext().getCacheDir(),
+            getConfig().getBoolean("assetCache", false),
+            getConfig().getInt("assetCacheMaxSize", (int) AssetCache.DEFAULT_MAX_SIZE)
+        );
+        SessionStore sessionStore = getConfig().getBoolean("persistSession", false)
+            ? new SessionStore(new File(getContext().getFilesDir(), "multiwebview-session"))
+            : null;
+        manager = new MultiWebviewManager(
+            this,
+            pool,
+            assetCache,
+            sessionStore,
+            new SnapshotCache(
+                getConfig().getInt("snapshotCacheSize", (int) SnapshotCache.DEFAULT_MAX_BYTES),
+                getConfig().getInt("snapshotMaxWidth", SnapshotCache.DEFAULT_MAX_WIDTH)
+            ),
+            getConfig().getInt("maxLiveWebviews", 0),
+            getConfig().getBoolean("hibernateOnMemoryPressure", false),
+            getConfig().getInt("maxBackgroundLoads", LoadScheduler.DEFAULT_MAX_BACKGROUND_LOADS),
+            getConfig().getInt("maxPrerenders", 2)
+        );
+
+        // Warm the pool during idle frames once the app has finished starting up
+        runOnUi(() -> pool.scheduleWarmUp());
+    }
+
+    @Override
+    protected void handleOnPause() {
+        // The app may be killed in the background; save the history of the webviews first
+        manager.persistSessionState();
+        manager.onActivityPause();
+        super.handleOnPause();
+    }
+
+    @Override
+    protected void handleOnResume() {
+        manager.onActivityResume();
+        super.handleOnResume();
+    }
+
+    @Override
+    protected void handleOnDestroy() {
+        runOnUi(() -> manager.onDestroy());
+        super.handleOnDestroy();
     }
 
     @PluginMethod
@@ -30,37 +107,22 @@ public class MultiWebviewPlugin extends Plugin {
         }
 
         String url = call.getString("url");
-        Boolean autoFocus = call.getBoolean("autoFocus", true);
-        Boolean enableJavaScript = call.getBoolean("enableJavaScript", true);
-        Boolean allowFileAccess = call.getBoolean("allowFileAccess", false);
-        String userAgent = call.getString("userAgent");
+        boolean prerender = call.getBoolean("prerender", false);
+        // A prerender is created in the background unless focus is requested explicitly
+        Boolean autoFocus = call.getBoolean("autoFocus", !prerender);
+        WebviewOptions options = parseWebviewOptions(call.getData());
 
-        JSObject frameObj = call.getObject("frame");
-        WebviewFrame frame = null;
-        if (frameObj != null) {
-            try {
-                frame = new WebviewFrame(
-                    frameObj.getDouble("x", 0.0),
-                    frameObj.getDouble("y", 0.0),
-                    frameObj.getDouble("width", 0.0),
-                    frameObj.getDouble("height", 0.0)
-                );
-            } catch (Exception e) {
-                Log.e(TAG, "Error parsing frame", e);
-            }
-        }
+        WebviewFrame frame = parseFrame(call.getObject("frame"));
 
-        WebviewFrame finalFrame = frame;
-        getActivity().runOnUiThread(() -> {
+        runOnUi(() -> {
             try {
                 manager.createWebview(
                     id,
                     url,
-                    finalFrame,
+                    frame,
                     autoFocus,
-                    enableJavaScript,
-                    allowFileAccess,
-                    userAgent
+                    options,
+                    prerender
                 );
 
                 JSObject data = new JSObject();
@@ -82,7 +144,7 @@ public class MultiWebviewPlugin extends Plugin {
             return;
         }
 
-        getActivity().runOnUiThread(() -> {
+        runOnUi(() -> {
             try {
                 manager.setFocusedWebview(id);
 
@@ -99,9 +161,10 @@ public class MultiWebviewPlugin extends Plugin {
 
     @PluginMethod
     public void getFocusedWebview(PluginCall call) {
-        String focusedId = manager.getFocusedWebviewId();
+        RegistrySnapshot snapshot = manager.getSnapshot();
         JSObject result = new JSObject();
-        result.put("id", focusedId);
+        result.put("id", snapshot.getFocusedId());
+        result.put("version", snapshot.getVersion());
         call.resolve(result);
     }
 
@@ -113,7 +176,7 @@ public class MultiWebviewPlugin extends Plugin {
             return;
         }
 
-        getActivity().runOnUiThread(() -> {
+        runOnUi(() -> {
             try {
                 manager.hideWebview(id);
                 call.resolve();
@@ -131,7 +194,7 @@ public class MultiWebviewPlugin extends Plugin {
             return;
         }
 
-        getActivity().runOnUiThread(() -> {
+        runOnUi(() -> {
             try {
                 manager.showWebview(id);
                 call.resolve();
@@ -149,7 +212,7 @@ public class MultiWebviewPlugin extends Plugin {
             return;
         }
 
-        getActivity().runOnUiThread(() -> {
+        runOnUi(() -> {
             try {
                 manager.destroyWebview(id);
 
@@ -178,9 +241,11 @@ public class MultiWebviewPlugin extends Plugin {
             return;
         }
 
-        getActivity().runOnUiThread(() -> {
+        boolean prerender = call.getBoolean("prerender", false);
+
+        runOnUi(() -> {
             try {
-                manager.loadUrl(id, url);
+                manager.loadUrl(id, url, prerender);
                 call.resolve();
             } catch (Exception e) {
                 call.reject("Failed to load URL: " + e.getMessage(), e);
@@ -191,9 +256,11 @@ public class MultiWebviewPlugin extends Plugin {
     @PluginMethod
     public void listWebviews(PluginCall call) {
         try {
-            JSArray webviews = new JSArray(manager.listWebviews());
+            RegistrySnapshot snapshot = manager.getSnapshot();
+            JSArray webviews = new JSArray(snapshot.getIds());
             JSObject result = new JSObject();
             result.put("webviews", webviews);
+            result.put("version", snapshot.getVersion());
             call.resolve(result);
         } catch (Exception e) {
             call.reject("Failed to list webviews: " + e.getMessage(), e);
@@ -219,19 +286,27 @@ public class MultiWebviewPlugin extends Plugin {
     @PluginMethod
     public void getAllWebviews(PluginCall call) {
         try {
-            List<JSObject> webviewsList = manager.getAllWebviews();
+            RegistrySnapshot snapshot = manager.getSnapshot();
             JSArray webviews = new JSArray();
-            for (JSObject webview : webviewsList) {
-                webviews.put(webview);
+            for (RegistrySnapshot.WebviewState state : snapshot.getWebviews()) {
+                webviews.put(snapshot.toInfo(state));
             }
             JSObject result = new JSObject();
             result.put("webviews", webviews);
+            result.put("version", snapshot.getVersion());
             call.resolve(result);
         } catch (Exception e) {
             call.reject("Failed to get all webviews: " + e.getMessage(), e);
         }
     }
 
+    @PluginMethod
+    public void getRegistryVersion(PluginCall call) {
+        JSObject result = new JSObject();
+        result.put("version", manager.getSnapshot().getVersion());
+        call.resolve(result);
+    }
+
     @PluginMethod
     public void getWebviewsByUrl(PluginCall call) {
         String url = call.getString("url");
@@ -241,9 +316,10 @@ public class MultiWebviewPlugin extends Plugin {
         }
 
         Boolean exactMatch = call.getBoolean("exactMatch", false);
+        String match = call.getString("match", exactMatch ? "exact" : "contains");
 
         try {
-            List<String> matchingWebviews = manager.getWebviewsByUrl(url, exactMatch);
+            List<String> matchingWebviews = manager.getWebviewsByUrl(url, match);
             JSArray webviews = new JSArray(matchingWebviews);
             JSObject result = new JSObject();
             result.put("webviews", webviews);
@@ -253,6 +329,29 @@ public class MultiWebviewPlugin extends Plugin {
         }
     }
 
+    @PluginMethod
+    public void resolveUrlOwners(PluginCall call) {
+        JSArray urls = call.getArray("urls");
+        if (urls == null) {
+            call.reject("Must provide urls");
+            return;
+        }
+
+        try {
+            List<String> urlList = urls.toList();
+            Map<String, String> owners = manager.resolveUrlOwners(urlList);
+            JSObject ownersObj = new JSObject();
+            for (String url : urlList) {
+                ownersObj.put(url, owners.get(url) != null ? owners.get(url) : JSONObject.NULL);
+            }
+            JSObject result = new JSObject();
+            result.put("owners", ownersObj);
+            call.resolve(result);
+        } catch (Exception e) {
+            call.reject("Failed to resolve URL owners: " + e.getMessage(), e);
+        }
+    }
+
     @PluginMethod
     public void setWebviewFrame(PluginCall call) {
         String id = call.getString("id");
@@ -275,9 +374,11 @@ public class MultiWebviewPlugin extends Plugin {
                 frameObj.getDouble("height", 0.0)
             );
 
-            getActivity().runOnUiThread(() -> {
+            // With coalesce, the manager keeps only the latest frame per webview until the next vsync
+            boolean coalesce = call.getBoolean("coalesce", false);
+            runOnUi(() -> {
                 try {
-                    manager.setWebviewFrame(id, frame);
+                    manager.setWebviewFrame(id, frame, coalesce);
                     call.resolve();
                 } catch (Exception e) {
                     call.reject("Failed to set webview frame: " + e.getMessage(), e);
@@ -288,6 +389,37 @@ public class MultiWebviewPlugin extends Plugin {
         }
     }
 
+    @PluginMethod
+    public void animateWebviewFrame(PluginCall call) {
+        String id = call.getString("id");
+        if (id == null || id.isEmpty()) {
+            call.reject("Must provide webview id");
+            return;
+        }
+
+        WebviewFrame to = parseFrame(call.getObject("to"));
+        if (to == null) {
+            call.reject("Must provide target frame");
+            return;
+        }
+
+        WebviewFrame from = parseFrame(call.getObject("from"));
+        long duration = call.getInt("duration", 300);
+        String interpolator = call.getString("interpolator", "easeInOut");
+
+        runOnUi(() -> {
+            try {
+                manager.animateWebviewFrame(id, from, to, duration, interpolator, completed -> {
+                    JSObject result = new JSObject();
+                    result.put("completed", completed);
+                    call.resolve(result);
+                });
+            } catch (Exception e) {
+                call.reject("Failed to animate webview frame: " + e.getMessage(), e);
+            }
+        });
+    }
+
     @PluginMethod
     public void executeJavaScript(PluginCall call) {
         String id = call.getString("id");
@@ -302,7 +434,7 @@ public class MultiWebviewPlugin extends Plugin {
             return;
         }
 
-        getActivity().runOnUiThread(() -> {
+        runOnUi(() -> {
             try {
                 manager.executeJavaScript(id, code, result -> {
                     JSObject response = new JSObject();
@@ -315,6 +447,97 @@ public class MultiWebviewPlugin extends Plugin {
         });
     }
 
+    @PluginMethod
+    public void registerScript(PluginCall call) {
+        String id = call.getString("id");
+        if (id == null || id.isEmpty()) {
+            call.reject("Must provide webview id");
+            return;
+        }
+
+        String code = call.getString("code");
+        if (code == null || code.isEmpty()) {
+            call.reject("Must provide code to register");
+            return;
+        }
+
+        runOnUi(() -> {
+            try {
+                JSObject result = new JSObject();
+                result.put("handle", manager.registerScript(id, code));
+                call.resolve(result);
+            } catch (Exception e) {
+                call.reject("Failed to register script: " + e.getMessage(), e);
+            }
+        });
+    }
+
+    @PluginMethod
+    public void invokeScript(PluginCall call) {
+        String id = call.getString("id");
+        if (id == null || id.isEmpty()) {
+            call.reject("Must provide webview id");
+            return;
+        }
+
+        String handle = call.getString("handle");
+        if (handle == null || handle.isEmpty()) {
+            call.reject("Must provide script handle");
+            return;
+        }
+
+        Object args = call.getData().opt("args");
+
+        runOnUi(() -> {
+            try {
+                manager.invokeScript(
+                    id,
+                    handle,
+                    args,
+                    new MultiWebviewManager.ScriptCallback() {
+                        @Override
+                        public void onResult(Object value) {
+                            JSObject result = new JSObject();
+                            result.put("result", value != null ? value : JSONObject.NULL);
+                            call.resolve(result);
+                        }
+
+                        @Override
+                        public void onError(String message) {
+                            call.reject("Script failed: " + message);
+                        }
+                    }
+                );
+            } catch (Exception e) {
+                call.reject("Failed to invoke script: " + e.getMessage(), e);
+            }
+        });
+    }
+
+    @PluginMethod
+    public void unregisterScript(PluginCall call) {
+        String id = call.getString("id");
+        if (id == null || id.isEmpty()) {
+            call.reject("Must provide webview id");
+            return;
+        }
+
+        String handle = call.getString("handle");
+        if (handle == null || handle.isEmpty()) {
+            call.reject("Must provide script handle");
+            return;
+        }
+
+        runOnUi(() -> {
+            try {
+                manager.unregisterScript(id, handle);
+                call.resolve();
+            } catch (Exception e) {
+                call.reject("Failed to unregister script: " + e.getMessage(), e);
+            }
+        });
+    }
+
     @PluginMethod
     public void sendMessage(PluginCall call) {
         String id = call.getString("id");
@@ -329,17 +552,773 @@ public class MultiWebviewPlugin extends Plugin {
             return;
         }
 
+        String coalesceKey = call.getString("coalesceKey");
+
+        runOnUi(() -> {
+            try {
+                manager.sendMessage(
+                    id,
+                    data,
+                    coalesceKey,
+                    new OutboundMessageQueue.DeliveryCallback() {
+                        @Override
+                        public void onDelivered(boolean coalesced) {
+                            JSObject result = new JSObject();
+                            result.put("coalesced", coalesced);
+                            call.resolve(result);
+                        }
+
+                        @Override
+                        public void onDropped(String reason) {
+                            call.reject("Message dropped: " + reason);
+                        }
+                    }
+                );
+            } catch (Exception e) {
+                call.reject("Failed to send message: " + e.getMessage(), e);
+            }
+        });
+    }
+
+    @PluginMethod
+    public void broadcastMessage(PluginCall call) {
+        Object data = call.getData().opt("data");
+        if (data == null) {
+            call.reject("Must provide data");
+            return;
+        }
+
+        BroadcastFilter filter = new BroadcastFilter();
+        String coalesceKey = call.getString("coalesceKey");
+        try {
+            JSArray ids = call.getArray("ids", null);
+            if (ids != null) {
+                filter.ids = ids.toList();
+            }
+        } catch (Exception e) {
+            call.reject("Failed to broadcast message: " + e.getMessage(), e);
+            return;
+        }
+        filter.urlPattern = call.getString("urlPattern");
+        filter.visibility = BroadcastFilter.Visibility.fromString(call.getString("visibility", "all"));
+        filter.topic = call.getString("topic");
+
+        runOnUi(() -> {
+            try {
+                JSArray recipients = new JSArray();
+                for (String id : manager.broadcastMessage(data, filter, coalesceKey)) {
+                    recipients.put(id);
+                }
+                JSObject result = new JSObject();
+                result.put("recipients", recipients);
+                call.resolve(result);
+            } catch (Exception e) {
+                call.reject("Failed to broadcast message: " + e.getMessage(), e);
+            }
+        });
+    }
+
+    @PluginMethod
+    public void setEventFilter(PluginCall call) {
+        String event = call.getString("event", EventEmitter.ALL_EVENTS);
+        try {
+            JSArray ids = call.getArray("ids", null);
+            events.setFilter(event, ids != null ? ids.<String>toList() : null, call.getBoolean("coalesce", false));
+            call.resolve();
+        } catch (Exception e) {
+            call.reject("Failed to set event filter: " + e.getMessage(), e);
+        }
+    }
+
+    @PluginMethod
+    public void clearEventFilter(PluginCall call) {
+        events.clearFilter(call.getString("event"));
+        call.resolve();
+    }
+
+    @PluginMethod
+    public void getEventStats(PluginCall call) {
+        call.resolve(events.getStats());
+    }
+
+    @PluginMethod
+    public void restoreSession(PluginCall call) {
+        SessionStore sessionStore = manager.getSessionStore();
+        if (sessionStore == null) {
+            call.reject("Session persistence is not enabled");
+            return;
+        }
+
+        List<SessionStore.Entry> entries;
+        try {
+            // Reads the session files on the plugin thread
+            entries = sessionStore.load();
+        } catch (Exception e) {
+            call.reject("Failed to restore session: " + e.getMessage(), e);
+            return;
+        }
+
+        runOnUi(() -> {
+            try {
+                JSArray restored = new JSArray();
+                for (String id : manager.restoreSession(entries)) {
+                    restored.put(id);
+                }
+                JSObject result = new JSObject();
+                result.put("ids", restored);
+                call.resolve(result);
+            } catch (Exception e) {
+                call.reject("Failed to restore session: " + e.getMessage(), e);
+            }
+        });
+    }
+
+    @PluginMethod
+    public void clearSession(PluginCall call) {
+        manager.clearSession();
+        call.resolve();
+    }
+
+    @PluginMethod
+    public void getWebviewSnapshot(PluginCall call) {
+        String id = call.getString("id");
+        if (id == null || id.isEmpty()) {
+            call.reject("Must provide webview id");
+            return;
+        }
+
+        if (manager.getSnapshot().get(id) == null) {
+            call.reject("Webview with id '" + id + "' not found");
+            return;
+        }
+
+        try {
+            // Compresses on the plugin thread; the UI thread is not involved
+            JSObject result = manager.getSnapshotCache().encode(id, call.getString("format", "jpeg"), call.getInt("quality", 80));
+            call.resolve(result != null ? result : new JSObject());
+        } catch (Exception e) {
+            call.reject("Failed to get webview snapshot: " + e.getMessage(), e);
+        }
+    }
+
+    @PluginMethod
+    public void getSnapshotCacheStats(PluginCall call) {
+        call.resolve(manager.getSnapshotCache().getStats());
+    }
+
+    @PluginMethod
+    public void respondRpc(PluginCall call) {
+        String id = call.getString("id");
+        if (id == null || id.isEmpty()) {
+            call.reject("Must provide webview id");
+            return;
+        }
+
+        String callId = call.getString("callId");
+        if (callId == null) {
+            call.reject("Must provide callId");
+            return;
+        }
+
+        if (manager.getRpc().respond(id, callId, call.getData().opt("result"), call.getString("error"))) {
+            call.resolve();
+        } else {
+            call.reject("Call '" + callId + "' is not pending");
+        }
+    }
+
+    @PluginMethod
+    public void sendTransfer(PluginCall call) {
+        String id = call.getString("id");
+        if (id == null || id.isEmpty()) {
+            call.reject("Must provide webview id");
+            return;
+        }
+
+        String transferId = call.getString("transferId");
+        if (transferId == null) {
+            call.reject("Must provide transferId");
+            return;
+        }
+
+        String path = call.getString("path");
+        if (path == null || path.isEmpty()) {
+            call.reject("Must provide path");
+            return;
+        }
+        if (path.startsWith("file://")) {
+            path = Uri.parse(path).getPath();
+        }
+
+        File file = new File(path);
+        if (!file.isFile()) {
+            call.reject("File '" + path + "' not found");
+            return;
+        }
+
+        if (manager.getSnapshot().get(id) == null) {
+            call.reject("Webview with id '" + id + "' not found");
+            return;
+        }
+
+        // Resolves once the page received the last chunk
+        manager
+            .getTransfers()
+            .send(
+                id,
+                transferId,
+                file,
+                call.getInt("chunkSize", 0),
+                call.getString("mimeType", "application/octet-stream"),
+                new TransferManager.Callback() {
+                    @Override
+                    public void onComplete(long bytes) {
+                        JSObject result = new JSObject();
+                        result.put("bytes", bytes);
+                        call.resolve(result);
+                    }
+
+                    @Override
+                    public void onError(String error) {
+                        call.reject("Failed to send transfer: " + error);
+                    }
+                }
+            );
+    }
+
+    @PluginMethod
+    public void cancelTransfer(PluginCall call) {
+        String id = call.getString("id");
+        if (id == null || id.isEmpty()) {
+            call.reject("Must provide webview id");
+            return;
+        }
+
+        String transferId = call.getString("transferId");
+        if (transferId == null) {
+            call.reject("Must provide transferId");
+            return;
+        }
+
+        if (manager.getTransfers().cancel(id, transferId)) {
+            call.resolve();
+        } else {
+            call.reject("Transfer '" + transferId + "' is not in progress");
+        }
+    }
+
+    @PluginMethod
+    public void releaseTransfer(PluginCall call) {
+        String path = call.getString("path");
+        if (path == null || path.isEmpty()) {
+            call.reject("Must provide path");
+            return;
+        }
+
+        if (manager.getTransfers().release(new File(path))) {
+            call.resolve();
+        } else {
+            call.reject("File '" + path + "' is not a received transfer");
+        }
+    }
+
+    @PluginMethod
+    public void configurePool(PluginCall call) {
+        Integer size = call.getInt("size");
+        Boolean recycleOnDestroy = call.getBoolean("recycleOnDestroy");
+
+        runOnUi(() -> {
+            try {
+                WebviewPool pool = manager.getPool();
+                pool.configure(
+                    size != null ? size : pool.getCapacity(),
+                    recycleOnDestroy != null ? recycleOnDestroy : pool.isRecycleOnDestroy()
+                );
+                call.resolve();
+            } catch (Exception e) {
+                call.reject("Failed to configure pool: " + e.getMessage(), e);
+            }
+        });
+    }
+
+    @PluginMethod
+    public void getPoolStats(PluginCall call) {
+        runOnUi(() -> {
+            try {
+                call.resolve(manager.getPool().getStats());
+            } catch (Exception e) {
+                call.reject("Failed to get pool stats: " + e.getMessage(), e);
+            }
+        });
+    }
+
+    @PluginMethod
+    public void configureAssetCache(PluginCall call) {
+        AssetCache assetCache = manager.getAssetCache();
+        Boolean enabled = call.getBoolean("enabled");
+        Long maxSize = call.getLong("maxSize");
+        boolean clear = call.getBoolean("clear", false);
+
+        // Touches the disk only, so it runs on the plugin thread
+        try {
+            assetCache.configure(
+                enabled != null ? enabled : assetCache.isEnabled(),
+                maxSize != null ? maxSize : assetCache.getMaxSize()
+            );
+            if (clear) {
+                assetCache.clear();
+            }
+            call.resolve();
+        } catch (Exception e) {
+            call.reject("Failed to configure asset cache: " + e.getMessage(), e);
+        }
+    }
+
+    @PluginMethod
+    public void getAssetCacheStats(PluginCall call) {
+        call.resolve(manager.getAssetCache().getStats());
+    }
+
+    @PluginMethod
+    public void registerAssetBundle(PluginCall call) {
+        String name = call.getString("name");
+        if (name == null || name.isEmpty()) {
+            call.reject("Must provide bundle name");
+            return;
+        }
+
+        String path = call.getString("path");
+        if (path == null || path.isEmpty()) {
+            call.reject("Must provide bundle path");
+            return;
+        }
+
+        // Relative paths are resolved against the app's files directory
+        File file = new File(path);
+        if (!file.isAbsolute()) {
+            file = new File(getContext().getFilesDir(), path);
+        }
+
+        // Maps and indexes the archive, so it runs on the plugin thread
+        try {
+            String origin = manager.getAssetBundles().register(name, file, call.getString("version"));
+            JSObject result = new JSObject();
+            result.put("origin", origin);
+            call.resolve(result);
+        } catch (Exception e) {
+            call.reject("Failed to register asset bundle: " + e.getMessage(), e);
+        }
+    }
+
+    @PluginMethod
+    public void unregisterAssetBundle(PluginCall call) {
+        String name = call.getString("name");
+        if (name == null || name.isEmpty()) {
+            call.reject("Must provide bundle name");
+            return;
+        }
+
+        if (!manager.getAssetBundles().unregister(name)) {
+            call.reject("Asset bundle '" + name + "' not found");
+            return;
+        }
+        call.resolve();
+    }
+
+    @PluginMethod
+    public void listAssetBundles(PluginCall call) {
+        JSObject result = new JSObject();
+        result.put("bundles", manager.getAssetBundles().list());
+        call.resolve(result);
+    }
+
+    @PluginMethod
+    public void setContentBlockerRules(PluginCall call) {
+        String rules = call.getString("rules");
+        String path = call.getString("path");
+
+        // Compiling a large list takes a while, so it runs on the plugin thread
+        try {
+            if (rules == null && path != null) {
+                File file = new File(path);
+                if (!file.isAbsolute()) {
+                    file = new File(getContext().getFilesDir(), path);
+                }
+                rules = readFile(file);
+            }
+
+            ContentBlocker contentBlocker = manager.getContentBlocker();
+            int count = 0;
+            if (rules != null) {
+                count = contentBlocker.load(rules);
+            } else {
+                contentBlocker.clear();
+            }
+
+            JSObject result = new JSObject();
+            result.put("rules", count);
+            call.resolve(result);
+        } catch (Exception e) {
+            call.reject("Failed to set content blocker rules: " + e.getMessage(), e);
+        }
+    }
+
+    @PluginMethod
+    public void setContentBlockerOverrides(PluginCall call) {
+        String id = call.getString("id");
+        if (id == null || id.isEmpty()) {
+            call.reject("Must provide webview id");
+            return;
+        }
+
+        if (manager.getSnapshot().get(id) == null) {
+            call.reject("Webview with id '" + id + "' not found");
+            return;
+        }
+
+        try {
+            JSArray allow = call.getArray("allow", new JSArray());
+            JSArray block = call.getArray("block", new JSArray());
+            manager.getContentBlocker().setOverrides(id, allow.toList(), block.toList());
+            call.resolve();
+        } catch (Exception e) {
+            call.reject("Failed to set content blocker overrides: " + e.getMessage(), e);
+        }
+    }
+
+    @PluginMethod
+    public void getContentBlockerStats(PluginCall call) {
+        call.resolve(manager.getContentBlocker().getStats());
+    }
+
+    /**
+     * Run a task on the UI thread, recording how long it waited in the queue.
+     */
+    private void runOnUi(Runnable task) {
+        long postedAt = System.nanoTime();
         getActivity().runOnUiThread(() -> {
+            manager.getMetrics().recordUiQueueDelay(System.nanoTime() - postedAt);
+            task.run();
+        });
+    }
+
+    private static String readFile(File file) throws IOException {
+        try (InputStream input = new FileInputStream(file)) {
+            ByteArrayOutputStream output = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = input.read(buffer)) != -1) {
+                output.write(buffer, 0, read);
+            }
+            return new String(output.toByteArray(), StandardCharsets.UTF_8);
+        }
+    }
+
+    @PluginMethod
+    public void getMetrics(PluginCall call) {
+        Metrics metrics = manager.getMetrics();
+        JSObject result = metrics.toJSObject();
+        if (call.getBoolean("reset", false)) {
+            metrics.reset();
+        }
+        call.resolve(result);
+    }
+
+    @PluginMethod
+    public void setMetricsInterval(PluginCall call) {
+        Integer interval = call.getInt("interval", 0);
+        manager.setMetricsInterval(Math.max(0, interval));
+        call.resolve();
+    }
+
+    @PluginMethod
+    public void setHibernationPolicy(PluginCall call) {
+        Integer maxLiveWebviews = call.getInt("maxLiveWebviews");
+        Boolean hibernateOnMemoryPressure = call.getBoolean("hibernateOnMemoryPressure");
+
+        runOnUi(() -> {
             try {
-                manager.sendMessage(id, data);
+                manager.setHibernationPolicy(
+                    maxLiveWebviews != null ? maxLiveWebviews : manager.getMaxLiveWebviews(),
+                    hibernateOnMemoryPressure != null ? hibernateOnMemoryPressure : manager.isHibernateOnMemoryPressure()
+                );
                 call.resolve();
             } catch (Exception e) {
-                call.reject("Failed to send message: " + e.getMessage(), e);
+                call.reject("Failed to set hibernation policy: " + e.getMessage(), e);
+            }
+        });
+    }
+
+    @PluginMethod
+    public void setBackgroundPolicy(PluginCall call) {
+        String id = call.getString("id");
+        if (id == null || id.isEmpty()) {
+            call.reject("Must provide webview id");
+            return;
+        }
+
+        WebviewOptions.BackgroundPolicy policy = WebviewOptions.BackgroundPolicy.fromString(call.getString("policy"));
+
+        runOnUi(() -> {
+            try {
+                manager.setBackgroundPolicy(id, policy);
+                call.resolve();
+            } catch (Exception e) {
+                call.reject("Failed to set background policy: " + e.getMessage(), e);
             }
         });
     }
 
-    public void notifyEvent(String eventName, JSObject data) {
-        notifyListeners(eventName, data);
+    @PluginMethod
+    public void setRendererPriority(PluginCall call) {
+        String id = call.getString("id");
+        if (id == null || id.isEmpty()) {
+            call.reject("Must provide webview id");
+            return;
+        }
+
+        String priorityName = call.getString("priority");
+        Integer priority;
+        if (priorityName == null) {
+            priority = null;
+        } else if (priorityName.equals("important")) {
+            priority = WebView.RENDERER_PRIORITY_IMPORTANT;
+        } else if (priorityName.equals("bound")) {
+            priority = WebView.RENDERER_PRIORITY_BOUND;
+        } else if (priorityName.equals("waived")) {
+            priority = WebView.RENDERER_PRIORITY_WAIVED;
+        } else {
+            call.reject("Invalid priority '" + priorityName + "'");
+            return;
+        }
+
+        runOnUi(() -> {
+            try {
+                manager.setRendererPriority(id, priority);
+                call.resolve();
+            } catch (Exception e) {
+                call.reject("Failed to set renderer priority: " + e.getMessage(), e);
+            }
+        });
+    }
+
+    @PluginMethod
+    public void batch(PluginCall call) {
+        JSArray operations = call.getArray("operations");
+        if (operations == null) {
+            call.reject("Must provide operations");
+            return;
+        }
+
+        boolean atomic = call.getBoolean("atomic", false);
+
+        // All operations run in a single UI thread task with layout and snapshot publication deferred
+        runOnUi(() -> {
+            JSArray results = new JSArray();
+            List<String> created = new ArrayList<>();
+            boolean success = true;
+            boolean rolledBack = false;
+
+            manager.beginBatch();
+            try {
+                MultiWebviewManager.LayoutState layout = atomic ? manager.captureLayout() : null;
+                for (int i = 0; i < operations.length(); i++) {
+                    JSObject result = new JSObject();
+                    String method = null;
+                    try {
+                        JSObject operation = JSObject.fromJSONObject(operations.getJSONObject(i));
+                        method = operation.getString("method");
+                        result.put("method", method);
+                        executeBatchOperation(operation, created);
+                        result.put("success", true);
+                    } catch (Exception e) {
+                        success = false;
+                        result.put("method", method);
+                        result.put("success", false);
+                        result.put("error", e.getMessage());
+                    }
+                    results.put(result);
+
+                    if (!success && atomic) {
+                        rolledBack = true;
+                        rollbackBatch(created, layout);
+                        break;
+                    }
+                }
+            } finally {
+                manager.endBatch();
+            }
+
+            JSObject response = new JSObject();
+            response.put("results", results);
+            response.put("success", success);
+            response.put("rolledBack", rolledBack);
+            call.resolve(response);
+        });
+    }
+
+    private void executeBatchOperation(JSObject operation, List<String> created) throws Exception {
+        String method = operation.getString("method");
+        if (method == null) {
+            throw new Exception("Must provide method");
+        }
+
+        String id = operation.getString("id");
+        if (id == null || id.isEmpty()) {
+            throw new Exception("Must provide webview id");
+        }
+
+        JSObject data = new JSObject();
+        data.put("id", id);
+
+        switch (method) {
+            case "createWebview":
+                boolean prerender = operation.getBoolean("prerender", false);
+                manager.createWebview(
+                    id,
+                    operation.getString("url"),
+                    parseFrame(operation.getJSObject("frame")),
+                    operation.getBoolean("autoFocus", !prerender),
+                    parseWebviewOptions(operation),
+                    prerender
+                );
+                created.add(id);
+                notifyListeners("webviewCreated", data);
+                break;
+            case "setFocusedWebview":
+                manager.setFocusedWebview(id);
+                notifyListeners("webviewFocused", data);
+                break;
+            case "hideWebview":
+                manager.hideWebview(id);
+                break;
+            case "showWebview":
+                manager.showWebview(id);
+                break;
+            case "destroyWebview":
+                manager.destroyWebview(id);
+                created.remove(id);
+                notifyListeners("webviewDestroyed", data);
+                break;
+            case "loadUrl":
+                String url = operation.getString("url");
+                if (url == null || url.isEmpty()) {
+                    throw new Exception("Must provide url");
+                }
+                manager.loadUrl(id, url, operation.getBoolean("prerender", false));
+                break;
+            case "setWebviewFrame":
+                WebviewFrame frame = parseFrame(operation.getJSObject("frame"));
+                if (frame == null) {
+                    throw new Exception("Must provide frame");
+                }
+                manager.setWebviewFrame(id, frame, operation.getBoolean("coalesce", false));
+                break;
+            case "sendMessage":
+                Object message = operation.opt("data");
+                if (message == null) {
+                    throw new Exception("Must provide data");
+                }
+                manager.sendMessage(id, message, operation.getString("coalesceKey"), null);
+                break;
+            default:
+                throw new Exception("Unsupported batch method '" + method + "'");
+        }
+    }
+
+    /**
+     * Destroy the webviews created by a failed atomic batch, newest first, and restore the layout
+     * of the others from before the batch.
+     */
+    private void rollbackBatch(List<String> created, MultiWebviewManager.LayoutState layout) {
+        for (int i = created.size() - 1; i >= 0; i--) {
+            String id = created.get(i);
+            try {
+                manager.destroyWebview(id);
+
+                JSObject data = new JSObject();
+                data.put("id", id);
+                notifyListeners("webviewDestroyed", data);
+            } catch (Exception e) {
+                Log.e(TAG, "Error rolling back webview '" + id + "'", e);
+            }
+        }
+        created.clear();
+        manager.restoreLayout(layout);
+    }
+
+    private WebviewFrame parseFrame(JSObject frameObj) {
+        if (frameObj == null) {
+            return null;
+        }
+
+        try {
+            return new WebviewFrame(
+                frameObj.getDouble("x", 0.0),
+                frameObj.getDouble("y", 0.0),
+                frameObj.getDouble("width", 0.0),
+                frameObj.getDouble("height", 0.0)
+            );
+        } catch (Exception e) {
+            Log.e(TAG, "Error parsing frame", e);
+            return null;
+        }
+    }
+
+    WebviewOptions parseWebviewOptions(JSObject obj) {
+        WebviewOptions options = new WebviewOptions();
+        options.enableJavaScript = obj.getBoolean("enableJavaScript", true);
+        options.allowFileAccess = obj.getBoolean("allowFileAccess", false);
+        options.userAgent = obj.getString("userAgent");
+        options.backgroundPolicy = WebviewOptions.BackgroundPolicy.fromString(
+            obj.getString("backgroundPolicy", getConfig().getString("backgroundPolicy", "run"))
+        );
+        options.messageChannel = obj.getBoolean("messageChannel", false);
+        options.maxMessageQueueDepth = obj.getInteger(
+            "maxMessageQueueDepth",
+            getConfig().getInt("maxMessageQueueDepth", OutboundMessageQueue.DEFAULT_MAX_DEPTH)
+        );
+        options.inboundBatching = obj.getBoolean("inboundBatching", false);
+        options.inboundBatchWindowMs = obj.getInteger("inboundBatchWindowMs", (int) InboundMessageQueue.DEFAULT_WINDOW_MS);
+        options.inboundQueueDepth = obj.getInteger("inboundQueueDepth", InboundMessageQueue.DEFAULT_MAX_DEPTH);
+        options.inboundOverflow = InboundMessageQueue.OverflowPolicy.fromString(obj.getString("inboundOverflow"));
+        options.routing = obj.getBoolean("routing", false);
+        JSONArray routingPeers = obj.optJSONArray("routingPeers");
+        if (routingPeers != null) {
+            options.routingPeers = new ArrayList<>();
+            for (int i = 0; i < routingPeers.length(); i++) {
+                options.routingPeers.add(routingPeers.optString(i));
+            }
+        }
+        return options;
+    }
+
+    /**
+     * Answer calls of a method from pages natively instead of through the 'rpcRequest' event.
+     * The handler runs on a background thread.
+     */
+    public void registerRpcHandler(String method, RpcRouter.Handler handler) {
+        manager.getRpc().registerHandler(method, handler);
+    }
+
+    public void unregisterRpcHandler(String method) {
+        manager.getRpc().unregisterHandler(method);
+    }
+
+    /**
+     * Emit an event about a webview; the data is only built if the event has listeners that
+     * accept events about the webview.
+     *
+     * @param webviewId the webview the event is about, or null
+     */
+    public void notifyEvent(String eventName, String webviewId, EventEmitter.EventData data) {
+        events.emit(eventName, webviewId, data);
+    }
+
+    /**
+     * Whether an event about the webview would currently be emitted.
+     */
+    public boolean wantsEvent(String eventName, String webviewId) {
+        return events.wants(eventName, webviewId);
     }
 }
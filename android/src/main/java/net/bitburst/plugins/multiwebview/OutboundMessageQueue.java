@@ -0,0 +1,198 @@
+package net.bitburst.plugins.multiwebview;
+
+import android.view.Choreographer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Per-webview queue of native-to-web messages.
+ *
+ * Messages are stored as already serialized JSON payloads and flushed at most once per frame
+ * (aligned with the Choreographer) in a single delivery, instead of one script evaluation per
+ * message. Messages with the same coalescing key replace each other while they are pending.
+ *
+ * All methods must be called on the UI thread.
+ */
+public class OutboundMessageQueue {
+
+    public static final int DEFAULT_MAX_DEPTH = 1000;
+
+    public interface DeliveryCallback {
+        /**
+         * Called once the message was flushed to the webview, or, if it was replaced by a newer
+         * message with the same key, once that message was flushed.
+         */
+        void onDelivered(boolean coalesced);
+
+        void onDropped(String reason);
+    }
+
+    public interface Sink {
+        /**
+         * Deliver the payloads to the page in order. Returns false if the webview cannot receive
+         * messages right now, in which case the payloads stay queued.
+         */
+        boolean deliver(List<String> payloads);
+    }
+
+    private static class Entry {
+
+        final String key;
+        String payload;
+        final DeliveryCallback callback;
+        List<DeliveryCallback> superseded;
+
+        Entry(String key, String payload, DeliveryCallback callback) {
+            this.key = key;
+            this.payload = payload;
+            this.callback = callback;
+        }
+    }
+
+    private final Sink sink;
+    private final int maxDepth;
+    private final ArrayDeque<Entry> pending = new ArrayDeque<>();
+    private final Map<String, Entry> pendingByKey = new HashMap<>();
+    private boolean frameScheduled = false;
+
+    private final Choreographer.FrameCallback frameCallback = frameTimeNanos -> {
+        frameScheduled = false;
+        flush();
+    };
+
+    public OutboundMessageQueue(Sink sink, int maxDepth) {
+        this.sink = sink;
+        this.maxDepth = maxDepth > 0 ? maxDepth : DEFAULT_MAX_DEPTH;
+    }
+
+    /**
+     * Queue a serialized payload for delivery on the next frame.
+     *
+     * @param payload JSON text used as the detail of the dispatched event
+     * @param coalesceKey optional key; a pending message with the same key is replaced
+     * @param callback optional delivery callback
+     */
+    public void enqueue(String payload, String coalesceKey, DeliveryCallback callback) {
+        if (coalesceKey != null) {
+            Entry existing = pendingByKey.get(coalesceKey);
+            if (existing != null) {
+                existing.payload = payload;
+                if (callback != null) {
+                    if (existing.superseded == null) {
+                        existing.superseded = new ArrayList<>();
+                    }
+                    existing.superseded.add(callback);
+                }
+                scheduleFlush();
+                return;
+            }
+        }
+
+        while (pending.size() >= maxDepth) {
+            drop(pending.pollFirst(), "Message queue overflow");
+        }
+
+        Entry entry = new Entry(coalesceKey, payload, callback);
+        pending.addLast(entry);
+        if (coalesceKey != null) {
+            pendingByKey.put(coalesceKey, entry);
+        }
+        scheduleFlush();
+    }
+
+    public void scheduleFlush() {
+        if (frameScheduled || pending.isEmpty()) {
+            return;
+        }
+        frameScheduled = true;
+        Choreographer.getInstance().postFrameCallback(frameCallback);
+    }
+
+    public int size() {
+        return pending.size();
+    }
+
+    /**
+     * Drop every pending message, e.g. when the webview is destroyed.
+     */
+    public void clear(String reason) {
+        if (frameScheduled) {
+            Choreographer.getInstance().removeFrameCallback(frameCallback);
+            frameScheduled = false;
+        }
+        while (!pending.isEmpty()) {
+            drop(pending.pollFirst(), reason);
+        }
+    }
+
+    private void flush() {
+        if (pending.isEmpty()) {
+            return;
+        }
+
+        List<String> payloads = new ArrayList<>(pending.size());
+        for (Entry entry : pending) {
+            payloads.add(entry.payload);
+        }
+        if (!sink.deliver(payloads)) {
+            return;
+        }
+
+        List<Entry> delivered = new ArrayList<>(pending);
+        pending.clear();
+        pendingByKey.clear();
+
+        for (Entry entry : delivered) {
+            if (entry.callback != null) {
+                entry.callback.onDelivered(false);
+            }
+            if (entry.superseded != null) {
+                for (DeliveryCallback callback : entry.superseded) {
+                    callback.onDelivered(true);
+                }
+            }
+        }
+    }
+
+    private void drop(Entry entry, String reason) {
+        if (entry.key != null) {
+            pendingByKey.remove(entry.key);
+        }
+        if (entry.callback != null) {
+            entry.callback.onDropped(reason);
+        }
+        if (entry.superseded != null) {
+            for (DeliveryCallback callback : entry.superseded) {
+                callback.onDropped(reason);
+            }
+        }
+    }
+
+    /**
+     * Build a single script that dispatches one multiwebview-message event per payload.
+     */
+    public static String buildDispatchScript(List<String> payloads) {
+        return buildDispatchScript(payloads, "multiwebview-message");
+    }
+
+    /**
+     * Build a single script that dispatches one event of the given type per payload.
+     */
+    public static String buildDispatchScript(List<String> payloads, String eventName) {
+        StringBuilder script = new StringBuilder(64 + payloads.size() * 32);
+        script.append("(function() {var m = [");
+        for (int i = 0; i < payloads.size(); i++) {
+            if (i > 0) {
+                script.append(',');
+            }
+            script.append(payloads.get(i));
+        }
+        script.append("];for (var i = 0; i < m.length; i++) {");
+        script.append("window.dispatchEvent(new CustomEvent('").append(eventName).append("', {detail: m[i]}));");
+        script.append("}})();");
+        return script.toString();
+    }
+}
@@ -0,0 +1,121 @@
+package net.bitburst.plugins.multiwebview;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.json.JSONTokener;
+
+/**
+ * Scripts registered once per webview and invoked by handle.
+ *
+ * A registered script is an expression evaluating to a function. It is defined in the page under
+ * its handle, so an invocation only sends the handle and the JSON arguments. When the page no
+ * longer has the definition, e.g. after a navigation, the invocation reports a miss and is retried
+ * together with the definition. Results are returned as JSON values and parsed natively.
+ *
+ * All methods must be called on the UI thread.
+ */
+public class RegisteredScripts {
+
+    private static final String GLOBAL = "window.__multiwebviewScripts";
+
+    private static final AtomicLong nextHandle = new AtomicLong(1);
+
+    /**
+     * Outcome of an invocation.
+     */
+    public static class Result {
+
+        public final boolean miss;
+        public final Object value;
+        public final String error;
+
+        Result(boolean miss, Object value, String error) {
+            this.miss = miss;
+            this.value = value;
+            this.error = error;
+        }
+    }
+
+    private final Map<String, String> scripts = new HashMap<>();
+
+    /**
+     * Register a script and return its handle.
+     */
+    public String register(String code) {
+        String handle = "s" + nextHandle.getAndIncrement();
+        scripts.put(handle, code);
+        return handle;
+    }
+
+    public boolean unregister(String handle) {
+        return scripts.remove(handle) != null;
+    }
+
+    public boolean contains(String handle) {
+        return scripts.containsKey(handle);
+    }
+
+    /**
+     * Script that defines the registered script in the page.
+     */
+    public String buildDefineScript(String handle) {
+        return "(function() {(" + GLOBAL + " = " + GLOBAL + " || {})['" + handle + "'] = (" + scripts.get(handle) + ");})();";
+    }
+
+    /**
+     * Script that removes the definition from the page.
+     */
+    public static String buildUndefineScript(String handle) {
+        return "(function() {if (" + GLOBAL + ") {delete " + GLOBAL + "['" + handle + "'];}})();";
+    }
+
+    /**
+     * Script that calls the registered script with the arguments and evaluates to an object with
+     * either its return value, an error, or a miss marker if the page does not know the handle.
+     *
+     * @param define whether to define the script first
+     */
+    public String buildInvokeScript(String handle, Object args, boolean define) {
+        // Wrapping in an array serializes any JSON value, including primitives and null
+        String serializedArgs = new JSONArray().put(args != null ? args : JSONObject.NULL).toString();
+
+        StringBuilder script = new StringBuilder(128 + serializedArgs.length());
+        script.append("(function() {");
+        if (define) {
+            script.append(buildDefineScript(handle));
+        }
+        script.append("var f = ").append(GLOBAL).append(" && ").append(GLOBAL).append("['").append(handle).append("'];");
+        script.append("if (typeof f !== 'function') {return {miss: true};}");
+        script.append("try {var v = f(").append(serializedArgs).append("[0]);");
+        script.append("return {value: v === undefined ? null : v};");
+        script.append("} catch (e) {return {error: String(e && e.message || e)};}");
+        script.append("})();");
+        return script.toString();
+    }
+
+    /**
+     * Parse the JSON evaluation result of an invoke script.
+     */
+    public static Result parseResult(String json) {
+        try {
+            Object parsed = new JSONTokener(json).nextValue();
+            if (!(parsed instanceof JSONObject)) {
+                return new Result(false, null, "Unexpected script result");
+            }
+            JSONObject result = (JSONObject) parsed;
+            if (result.optBoolean("miss")) {
+                return new Result(true, null, null);
+            }
+            if (result.has("error")) {
+                return new Result(false, null, result.optString("error"));
+            }
+            return new Result(false, result.opt("value"), null);
+        } catch (JSONException e) {
+            return new Result(false, null, "Unparseable script result: " + e.getMessage());
+        }
+    }
+}
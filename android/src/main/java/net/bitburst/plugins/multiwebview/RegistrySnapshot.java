@@ -0,0 +1,123 @@
+package net.bitburst.plugins.multiwebview;
+
+import com.getcapacitor.JSObject;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import org.json.JSONObject;
+
+/**
+ * Immutable view of the webview registry.
+ *
+ * The manager mutates its containers on the UI thread and publishes a new snapshot after every
+ * change. Query methods read the latest snapshot from any thread without locking; the version
+ * increases with every publication so callers can cheaply detect changes.
+ */
+public class RegistrySnapshot {
+
+    /**
+     * State of a single webview at the time the snapshot was taken. Filled in by the manager
+     * before publication and never modified afterwards.
+     */
+    public static class WebviewState {
+
+        String id;
+        String url;
+        boolean hidden;
+        boolean hibernated;
+        boolean occluded;
+        boolean channelOpen;
+        long lastActiveAt;
+        String lifecycleState;
+        boolean loading;
+        Integer loadQueuePosition;
+        String prerenderState;
+        String rendererPriority;
+        InboundMessageQueue inbound;
+        AtomicLong blockedRequests;
+
+        public String getId() {
+            return id;
+        }
+
+        public String getUrl() {
+            return url;
+        }
+
+        public boolean isHidden() {
+            return hidden;
+        }
+
+        public long getLastActiveAt() {
+            return lastActiveAt;
+        }
+    }
+
+    public static final RegistrySnapshot EMPTY = new RegistrySnapshot(
+        0,
+        null,
+        Collections.<String, WebviewState>emptyMap(),
+        new UrlIndex()
+    );
+
+    private final long version;
+    private final String focusedId;
+    private final Map<String, WebviewState> webviews;
+    private final UrlIndex urlIndex;
+
+    RegistrySnapshot(long version, String focusedId, Map<String, WebviewState> webviews, UrlIndex urlIndex) {
+        this.version = version;
+        this.focusedId = focusedId;
+        this.webviews = Collections.unmodifiableMap(webviews);
+        this.urlIndex = urlIndex;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public String getFocusedId() {
+        return focusedId;
+    }
+
+    public WebviewState get(String id) {
+        return webviews.get(id);
+    }
+
+    public List<String> getIds() {
+        return new ArrayList<>(webviews.keySet());
+    }
+
+    public Iterable<WebviewState> getWebviews() {
+        return webviews.values();
+    }
+
+    /**
+     * URL index as of this snapshot; must only be read.
+     */
+    public UrlIndex getUrlIndex() {
+        return urlIndex;
+    }
+
+    public JSObject toInfo(WebviewState state) {
+        JSObject info = new JSObject();
+        info.put("id", state.id);
+        info.put("url", state.url);
+        info.put("isHidden", state.hidden);
+        info.put("isFocused", state.id.equals(focusedId));
+        info.put("isHibernated", state.hibernated);
+        info.put("isOccluded", state.occluded);
+        info.put("isChannelOpen", state.channelOpen);
+        info.put("lifecycleState", state.lifecycleState);
+        info.put("isLoading", state.loading);
+        info.put("loadQueuePosition", state.loadQueuePosition != null ? state.loadQueuePosition : JSONObject.NULL);
+        info.put("prerenderState", state.prerenderState != null ? state.prerenderState : JSONObject.NULL);
+        info.put("rendererPriority", state.rendererPriority != null ? state.rendererPriority : JSONObject.NULL);
+        info.put("droppedMessages", state.inbound.getDroppedCount());
+        info.put("blockedRequests", state.blockedRequests.get());
+        info.put("version", version);
+        return info;
+    }
+}
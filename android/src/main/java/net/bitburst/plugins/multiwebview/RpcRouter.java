@@ -0,0 +1,275 @@
+package net.bitburst.plugins.multiwebview;
+
+import android.util.Log;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.json.JSONTokener;
+
+/**
+ * Request/response calls from pages to the host.
+ *
+ * A page calls a method with its own call id, so any number of calls can be in flight and replies
+ * may arrive in any order. A call is answered by the native handler registered for its method,
+ * which runs on a handler thread, or else by the host app through a request event. Every call is
+ * completed exactly once: with a result, an error, on timeout or on cancellation. Replies are
+ * passed to a sink as serialized JSON, which the manager delivers to the page in per-frame batches.
+ * Calls made after {@link #shutdown} are rejected right away.
+ *
+ * All methods are thread-safe.
+ */
+public class RpcRouter {
+
+    private static final String TAG = "RpcRouter";
+
+    public static final long DEFAULT_TIMEOUT_MS = 30000;
+
+    /**
+     * Answers calls of a method. Runs on a handler thread and must complete the call eventually,
+     * possibly asynchronously.
+     */
+    public interface Handler {
+        void handle(Call call) throws Exception;
+    }
+
+    public interface Host {
+        /**
+         * Deliver a serialized reply to the page of a webview.
+         */
+        void reply(String webviewId, String payload);
+
+        /**
+         * Hand a call without native handler to the host app. Returns false if nobody would
+         * answer it.
+         */
+        boolean request(Call call);
+    }
+
+    /**
+     * A call in flight.
+     */
+    public class Call {
+
+        private final String webviewId;
+        private final String callId;
+        private final String method;
+        private final Object params;
+        private final long startedAt = System.nanoTime();
+        private final AtomicBoolean completed = new AtomicBoolean(false);
+        private ScheduledFuture<?> timeout;
+
+        Call(String webviewId, String callId, String method, Object params) {
+            this.webviewId = webviewId;
+            this.callId = callId;
+            this.method = method;
+            this.params = params;
+        }
+
+        public String getWebviewId() {
+            return webviewId;
+        }
+
+        public String getCallId() {
+            return callId;
+        }
+
+        public String getMethod() {
+            return method;
+        }
+
+        /**
+         * The parsed JSON parameters, or null.
+         */
+        public Object getParams() {
+            return params;
+        }
+
+        /**
+         * Whether the call already completed, e.g. because it was cancelled or timed out; a
+         * handler can stop working on it.
+         */
+        public boolean isCompleted() {
+            return completed.get();
+        }
+
+        public void resolve(Object result) {
+            complete(result, null);
+        }
+
+        public void reject(String error) {
+            complete(null, error != null ? error : "Error");
+        }
+
+        private boolean complete(Object result, String error) {
+            if (!completed.compareAndSet(false, true)) {
+                return false;
+            }
+            pending.remove(key(webviewId, callId), this);
+            if (timeout != null) {
+                timeout.cancel(false);
+            }
+            metrics.recordRpc(method, System.nanoTime() - startedAt, error != null);
+
+            try {
+                JSONObject reply = new JSONObject();
+                reply.put("id", callId);
+                if (error != null) {
+                    reply.put("error", error);
+                } else {
+                    reply.put("result", result != null ? result : JSONObject.NULL);
+                }
+                host.reply(webviewId, reply.toString());
+            } catch (JSONException e) {
+                Log.e(TAG, "Failed to serialize reply to '" + method + "'", e);
+            }
+            return true;
+        }
+
+        /**
+         * Complete the call without a reply, because its page is gone.
+         */
+        private void abandon() {
+            if (completed.compareAndSet(false, true)) {
+                pending.remove(key(webviewId, callId), this);
+                if (timeout != null) {
+                    timeout.cancel(false);
+                }
+            }
+        }
+    }
+
+    private final Host host;
+    private final Metrics metrics;
+    private final ExecutorService handlerExecutor;
+    private final ScheduledExecutorService timeoutExecutor;
+    private final Map<String, Handler> handlers = new ConcurrentHashMap<>();
+    private final Map<String, Call> pending = new ConcurrentHashMap<>();
+
+    public RpcRouter(Host host, Metrics metrics, ExecutorService handlerExecutor, ScheduledExecutorService timeoutExecutor) {
+        this.host = host;
+        this.metrics = metrics;
+        this.handlerExecutor = handlerExecutor;
+        this.timeoutExecutor = timeoutExecutor;
+    }
+
+    public void registerHandler(String method, Handler handler) {
+        handlers.put(method, handler);
+    }
+
+    public void unregisterHandler(String method) {
+        handlers.remove(method);
+    }
+
+    /**
+     * Start a call made by a page. Called on a bridge thread.
+     *
+     * @param params JSON text of the parameters, or null
+     * @param timeoutMs time after which the call fails, or 0 for the default
+     */
+    public void call(String webviewId, String callId, String method, String params, long timeoutMs) {
+        Object parsedParams = null;
+        String parseError = null;
+        if (params != null) {
+            try {
+                parsedParams = new JSONTokener(params).nextValue();
+            } catch (JSONException e) {
+                parseError = "Invalid params: " + e.getMessage();
+            }
+        }
+
+        Call call = new Call(webviewId, callId, method, parsedParams);
+        Call previous = pending.put(key(webviewId, callId), call);
+        if (previous != null) {
+            // Call ids must be unique among pending calls; the older call can no longer be answered
+            previous.abandon();
+        }
+        if (parseError != null) {
+            call.reject(parseError);
+            return;
+        }
+
+        long timeout = timeoutMs > 0 ? timeoutMs : DEFAULT_TIMEOUT_MS;
+        try {
+            call.timeout = timeoutExecutor.schedule(() -> call.reject("Timeout after " + timeout + "ms"), timeout, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            call.reject("Calls are shut down");
+            return;
+        }
+
+        Handler handler = handlers.get(method);
+        if (handler != null) {
+            try {
+                handlerExecutor.execute(() -> {
+                    if (call.isCompleted()) {
+                        return;
+                    }
+                    try {
+                        handler.handle(call);
+                    } catch (Exception e) {
+                        call.reject(e.getMessage());
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                call.reject("Calls are shut down");
+            }
+        } else if (!host.request(call)) {
+            call.reject("No handler for method '" + method + "'");
+        }
+    }
+
+    /**
+     * Cancel a pending call on behalf of the page; it is rejected so the page can settle it.
+     */
+    public void cancel(String webviewId, String callId) {
+        Call call = pending.get(key(webviewId, callId));
+        if (call != null) {
+            call.reject("Cancelled");
+        }
+    }
+
+    /**
+     * Complete a call answered by the host app.
+     *
+     * @return false if the call is not pending anymore
+     */
+    public boolean respond(String webviewId, String callId, Object result, String error) {
+        Call call = pending.get(key(webviewId, callId));
+        if (call == null) {
+            return false;
+        }
+        return error != null ? call.complete(null, error) : call.complete(result, null);
+    }
+
+    /**
+     * Drop the pending calls of a webview whose page navigated away or was destroyed.
+     */
+    public void abandonWebview(String webviewId) {
+        String prefix = webviewId + "\n";
+        for (Iterator<Map.Entry<String, Call>> iterator = pending.entrySet().iterator(); iterator.hasNext();) {
+            Map.Entry<String, Call> entry = iterator.next();
+            if (entry.getKey().startsWith(prefix)) {
+                entry.getValue().abandon();
+            }
+        }
+    }
+
+    public int getPendingCount() {
+        return pending.size();
+    }
+
+    public void shutdown() {
+        handlerExecutor.shutdown();
+    }
+
+    private static String key(String webviewId, String callId) {
+        return webviewId + "\n" + callId;
+    }
+}
@@ -0,0 +1,236 @@
+package net.bitburst.plugins.multiwebview;
+
+import android.os.Build;
+import android.os.Bundle;
+import android.os.Parcel;
+import android.util.Log;
+import android.webkit.WebView;
+import com.getcapacitor.JSObject;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import org.json.JSONException;
+
+/**
+ * Persists the webviews of the manager so they can be restored after the app was killed.
+ *
+ * Each webview is stored in its own files: a small JSON record with its id, URL, frame,
+ * visibility and creation options, and the WebView history saved with WebView.saveState as a
+ * marshalled Parcel. Records and states are written separately and only when they changed, on a
+ * single background thread, through a temporary file that replaces the previous one.
+ *
+ * The Parcel format is not stable across releases, so each state is tagged with the OS build and
+ * WebView version that wrote it. A state written by another version is discarded on load and the
+ * webview loads its persisted URL instead, losing only its back/forward history.
+ *
+ * The save methods may be called from any thread; {@link #load} blocks and must not be called on
+ * the UI thread.
+ */
+public class SessionStore {
+
+    private static final String TAG = "SessionStore";
+
+    private static final String RECORD_SUFFIX = ".json";
+    private static final String STATE_SUFFIX = ".state";
+
+    /**
+     * A persisted webview.
+     */
+    public static class Entry {
+
+        public final JSObject record;
+        // Saved WebView state, or null if none was persisted
+        public final Bundle state;
+
+        Entry(JSObject record, Bundle state) {
+            this.record = record;
+            this.state = state;
+        }
+    }
+
+    private final File directory;
+    private final ExecutorService executor = Executors.newSingleThreadExecutor();
+    // Header of state files; states with another header were written by another version
+    private final byte[] stateHeader;
+
+    public SessionStore(File directory) {
+        this.directory = directory;
+        this.stateHeader = (getStateFormat() + "\n").getBytes(StandardCharsets.UTF_8);
+    }
+
+    public void saveRecord(String id, String record) {
+        byte[] bytes = record.getBytes(StandardCharsets.UTF_8);
+        executor.execute(() -> write(getFile(id, RECORD_SUFFIX), bytes));
+    }
+
+    /**
+     * Persist a saved WebView state, or delete it if state is null. The bundle is marshalled on the
+     * calling thread, so it may be modified afterwards.
+     */
+    public void saveState(String id, Bundle state) {
+        if (state == null) {
+            executor.execute(() -> getFile(id, STATE_SUFFIX).delete());
+            return;
+        }
+
+        Parcel parcel = Parcel.obtain();
+        byte[] bytes;
+        try {
+            parcel.writeBundle(state);
+            byte[] marshalled = parcel.marshall();
+            bytes = new byte[stateHeader.length + marshalled.length];
+            System.arraycopy(stateHeader, 0, bytes, 0, stateHeader.length);
+            System.arraycopy(marshalled, 0, bytes, stateHeader.length, marshalled.length);
+        } finally {
+            parcel.recycle();
+        }
+        executor.execute(() -> write(getFile(id, STATE_SUFFIX), bytes));
+    }
+
+    public void remove(String id) {
+        executor.execute(() -> {
+            getFile(id, RECORD_SUFFIX).delete();
+            getFile(id, STATE_SUFFIX).delete();
+        });
+    }
+
+    public void clear() {
+        executor.execute(() -> {
+            File[] files = directory.listFiles();
+            if (files != null) {
+                for (File file : files) {
+                    file.delete();
+                }
+            }
+        });
+    }
+
+    /**
+     * Read every persisted webview, ordered by the "order" field of the records. Waits for
+     * pending writes first. Unreadable records are skipped; an unreadable state is ignored.
+     */
+    public List<Entry> load() throws Exception {
+        // Pending writes run before the load on the same thread
+        return executor
+            .submit(() -> {
+                List<Entry> entries = new ArrayList<>();
+                File[] files = directory.listFiles();
+                if (files == null) {
+                    return entries;
+                }
+
+                for (File file : files) {
+                    String name = file.getName();
+                    if (!name.endsWith(RECORD_SUFFIX)) {
+                        continue;
+                    }
+                    try {
+                        JSObject record = new JSObject(new String(read(file), StandardCharsets.UTF_8));
+                        File stateFile = new File(directory, name.substring(0, name.length() - RECORD_SUFFIX.length()) + STATE_SUFFIX);
+                        entries.add(new Entry(record, stateFile.exists() ? readState(stateFile) : null));
+                    } catch (IOException | JSONException e) {
+                        Log.w(TAG, "Skipping unreadable session record " + name, e);
+                    }
+                }
+
+                Collections.sort(entries, (a, b) -> Long.compare(a.record.optLong("order"), b.record.optLong("order")));
+                return entries;
+            })
+            .get();
+    }
+
+    public void shutdown() {
+        executor.shutdown();
+    }
+
+    private File getFile(String id, String suffix) {
+        // Ids are arbitrary strings; hex keeps them valid and unique as file names
+        byte[] bytes = id.getBytes(StandardCharsets.UTF_8);
+        StringBuilder name = new StringBuilder(bytes.length * 2 + suffix.length());
+        for (byte b : bytes) {
+            name.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+        }
+        return new File(directory, name.append(suffix).toString());
+    }
+
+    private Bundle readState(File file) {
+        Parcel parcel = Parcel.obtain();
+        try {
+            byte[] bytes = read(file);
+            if (!hasStateHeader(bytes)) {
+                Log.i(TAG, "Discarding saved state " + file.getName() + " written by another OS or WebView version");
+                return null;
+            }
+            parcel.unmarshall(bytes, stateHeader.length, bytes.length - stateHeader.length);
+            parcel.setDataPosition(0);
+            return parcel.readBundle(SessionStore.class.getClassLoader());
+        } catch (Exception e) {
+            Log.w(TAG, "Ignoring unreadable saved state " + file.getName(), e);
+            return null;
+        } finally {
+            parcel.recycle();
+        }
+    }
+
+    private boolean hasStateHeader(byte[] bytes) {
+        if (bytes.length < stateHeader.length) {
+            return false;
+        }
+        for (int i = 0; i < stateHeader.length; i++) {
+            if (bytes[i] != stateHeader[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static String getStateFormat() {
+        String webViewVersion = "";
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O && WebView.getCurrentWebViewPackage() != null) {
+            webViewVersion = WebView.getCurrentWebViewPackage().versionName;
+        }
+        return "parcel/" + Build.VERSION.SDK_INT + "/" + Build.FINGERPRINT + "/" + webViewVersion;
+    }
+
+    private void write(File file, byte[] bytes) {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            Log.w(TAG, "Failed to create session directory");
+            return;
+        }
+
+        File temp = new File(directory, file.getName() + ".tmp");
+        try (FileOutputStream output = new FileOutputStream(temp)) {
+            output.write(bytes);
+            output.getFD().sync();
+        } catch (IOException e) {
+            Log.w(TAG, "Failed to write " + file.getName(), e);
+            temp.delete();
+            return;
+        }
+        if (!temp.renameTo(file)) {
+            Log.w(TAG, "Failed to replace " + file.getName());
+            temp.delete();
+        }
+    }
+
+    private static byte[] read(File file) throws IOException {
+        try (InputStream input = new FileInputStream(file)) {
+            ByteArrayOutputStream output = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = input.read(buffer)) != -1) {
+                output.write(buffer, 0, read);
+            }
+            return output.toByteArray();
+        }
+    }
+}
@@ -0,0 +1,195 @@
+package net.bitburst.plugins.multiwebview;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.util.Base64;
+import android.view.View;
+import com.getcapacitor.JSObject;
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Downscaled thumbnails of webviews, e.g. for a tab switcher.
+ *
+ * A webview is drawn into a small bitmap when it is hidden or loses focus, so its last content
+ * can be shown without waking its renderer. Thumbnails are kept in LRU order within a byte budget.
+ * Bitmaps of evicted or replaced thumbnails go to a small pool and are reconfigured for the next
+ * capture instead of allocating new ones. Thumbnails are compressed on the calling thread of
+ * {@link #encode}, never on the UI thread.
+ *
+ * {@link #capture} must be called on the UI thread; all other methods are thread-safe.
+ */
+public class SnapshotCache {
+
+    public static final long DEFAULT_MAX_BYTES = 16 * 1024 * 1024;
+    public static final int DEFAULT_MAX_WIDTH = 360;
+
+    private static final int MAX_POOLED_BITMAPS = 4;
+
+    private static class Snapshot {
+
+        final Bitmap bitmap;
+        final long capturedAt;
+        // Number of encodes in progress; a bitmap that is being read is not reused
+        int readers = 0;
+
+        Snapshot(Bitmap bitmap, long capturedAt) {
+            this.bitmap = bitmap;
+            this.capturedAt = capturedAt;
+        }
+    }
+
+    private final long maxBytes;
+    private final int maxWidth;
+
+    // Guarded by this; in access order for LRU eviction
+    private final LinkedHashMap<String, Snapshot> snapshots = new LinkedHashMap<>(16, 0.75f, true);
+    private final List<Bitmap> pool = new ArrayList<>();
+    private long bytes = 0;
+
+    public SnapshotCache(long maxBytes, int maxWidth) {
+        this.maxBytes = Math.max(0, maxBytes);
+        this.maxWidth = maxWidth > 0 ? maxWidth : DEFAULT_MAX_WIDTH;
+    }
+
+    public boolean isEnabled() {
+        return maxBytes > 0;
+    }
+
+    /**
+     * Draw the current content of a laid out view into the thumbnail of the webview.
+     */
+    public void capture(String id, View view) {
+        int width = view.getWidth();
+        int height = view.getHeight();
+        if (!isEnabled() || width <= 0 || height <= 0) {
+            return;
+        }
+
+        float scale = Math.min(1f, (float) maxWidth / width);
+        int targetWidth = Math.max(1, Math.round(width * scale));
+        int targetHeight = Math.max(1, Math.round(height * scale));
+
+        Bitmap bitmap = obtainBitmap(targetWidth, targetHeight);
+        Canvas canvas = new Canvas(bitmap);
+        canvas.scale(scale, scale);
+        // WebView draws its scrolled content at document coordinates
+        canvas.translate(-view.getScrollX(), -view.getScrollY());
+        view.draw(canvas);
+
+        synchronized (this) {
+            Snapshot previous = snapshots.put(id, new Snapshot(bitmap, System.currentTimeMillis()));
+            bytes += bitmap.getAllocationByteCount();
+            if (previous != null) {
+                release(previous);
+            }
+            trimToBudget();
+        }
+    }
+
+    public synchronized void remove(String id) {
+        Snapshot snapshot = snapshots.remove(id);
+        if (snapshot != null) {
+            release(snapshot);
+        }
+    }
+
+    /**
+     * Compress the thumbnail of a webview and return it as a data URL with its size and capture
+     * time, or null if there is none.
+     *
+     * @param format "jpeg", "png" or "webp"
+     * @param quality compression quality from 0 to 100, ignored for png
+     */
+    public JSObject encode(String id, String format, int quality) {
+        Snapshot snapshot;
+        synchronized (this) {
+            snapshot = snapshots.get(id);
+            if (snapshot == null) {
+                return null;
+            }
+            snapshot.readers++;
+        }
+
+        try {
+            Bitmap.CompressFormat compressFormat = Bitmap.CompressFormat.JPEG;
+            String mimeType = "image/jpeg";
+            if ("png".equals(format)) {
+                compressFormat = Bitmap.CompressFormat.PNG;
+                mimeType = "image/png";
+            } else if ("webp".equals(format)) {
+                compressFormat = Bitmap.CompressFormat.WEBP;
+                mimeType = "image/webp";
+            }
+
+            ByteArrayOutputStream output = new ByteArrayOutputStream();
+            snapshot.bitmap.compress(compressFormat, Math.max(0, Math.min(100, quality)), output);
+
+            JSObject result = new JSObject();
+            result.put("data", "data:" + mimeType + ";base64," + Base64.encodeToString(output.toByteArray(), Base64.NO_WRAP));
+            result.put("width", snapshot.bitmap.getWidth());
+            result.put("height", snapshot.bitmap.getHeight());
+            result.put("capturedAt", snapshot.capturedAt);
+            return result;
+        } finally {
+            synchronized (this) {
+                snapshot.readers--;
+            }
+        }
+    }
+
+    public synchronized JSObject getStats() {
+        JSObject stats = new JSObject();
+        stats.put("snapshots", snapshots.size());
+        stats.put("bytes", bytes);
+        stats.put("maxBytes", maxBytes);
+        stats.put("pooledBitmaps", pool.size());
+        return stats;
+    }
+
+    public synchronized void clear() {
+        for (Snapshot snapshot : snapshots.values()) {
+            release(snapshot);
+        }
+        snapshots.clear();
+        pool.clear();
+    }
+
+    private synchronized Bitmap obtainBitmap(int width, int height) {
+        long needed = (long) width * height * 2;
+        for (Iterator<Bitmap> iterator = pool.iterator(); iterator.hasNext();) {
+            Bitmap candidate = iterator.next();
+            if (candidate.getAllocationByteCount() >= needed) {
+                iterator.remove();
+                candidate.reconfigure(width, height, Bitmap.Config.RGB_565);
+                return candidate;
+            }
+        }
+        // Web content is opaque, so 16 bits per pixel are enough for a thumbnail
+        return Bitmap.createBitmap(width, height, Bitmap.Config.RGB_565);
+    }
+
+    /**
+     * Account for a snapshot that left the cache and pool its bitmap unless it is being encoded.
+     * Must be called while holding the lock.
+     */
+    private void release(Snapshot snapshot) {
+        bytes -= snapshot.bitmap.getAllocationByteCount();
+        if (snapshot.readers == 0 && pool.size() < MAX_POOLED_BITMAPS) {
+            pool.add(snapshot.bitmap);
+        }
+    }
+
+    private void trimToBudget() {
+        Iterator<Map.Entry<String, Snapshot>> iterator = snapshots.entrySet().iterator();
+        while (bytes > maxBytes && iterator.hasNext()) {
+            Snapshot eldest = iterator.next().getValue();
+            iterator.remove();
+            release(eldest);
+        }
+    }
+}
@@ -0,0 +1,510 @@
+package net.bitburst.plugins.multiwebview;
+
+import android.util.Base64;
+import android.util.Log;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+import org.json.JSONObject;
+
+/**
+ * Chunked transfers of large or binary payloads between native files and pages.
+ *
+ * Outgoing transfers read a file one chunk at a time and dispatch each chunk to the page as a
+ * 'multiwebview-transfer' event with a Uint8Array; the next chunk is only read once the page ran
+ * the previous one, so at most one chunk is held in memory. Incoming transfers are written to a
+ * temporary file as the page posts chunks. Pages post chunks as binary strings (one char per
+ * byte), which cross the bridge without JSON or base64 encoding; the bridge call returns once the
+ * chunk is on disk, which paces the page. A page must announce the size of its payload up front;
+ * payloads, chunks and the total size of transfers in progress are bounded, and nothing is
+ * received unless the host takes the files.
+ *
+ * Outgoing chunks are read and encoded on a background thread, incoming chunks are written on the
+ * posting bridge thread. All methods are thread-safe.
+ */
+public class TransferManager {
+
+    private static final String TAG = "TransferManager";
+
+    public static final int DEFAULT_CHUNK_SIZE = 256 * 1024;
+    public static final int MAX_CHUNK_SIZE = 4 * 1024 * 1024;
+    public static final long MAX_TRANSFER_SIZE = 256L * 1024 * 1024;
+    public static final long MAX_INCOMING_SIZE = 512L * 1024 * 1024;
+
+    public static final String DIRECTION_IN = "in";
+    public static final String DIRECTION_OUT = "out";
+
+    public interface Host {
+        /**
+         * Evaluate a script in the page of a webview and report whether it ran. Called on the
+         * transfer thread.
+         */
+        void evaluate(String webviewId, String script, EvaluationCallback callback);
+
+        void onProgress(String webviewId, String transferId, String direction, long bytes, long total);
+
+        /**
+         * Whether anybody would take incoming transfers of the webview.
+         */
+        boolean acceptsTransfers(String webviewId);
+
+        /**
+         * An incoming transfer completed. Returns whether the host took the file; otherwise it is
+         * deleted.
+         */
+        boolean onReceived(String webviewId, String transferId, File file, long size, JSONObject metadata);
+
+        void onCancelled(String webviewId, String transferId, String direction);
+    }
+
+    public interface EvaluationCallback {
+        void onEvaluated(boolean ran);
+    }
+
+    public interface Callback {
+        void onComplete(long bytes);
+
+        void onError(String error);
+    }
+
+    private static class Outgoing {
+
+        final String webviewId;
+        final String transferId;
+        final InputStream input;
+        final long total;
+        final byte[] buffer;
+        final Callback callback;
+        long offset = 0;
+        int index = 0;
+        volatile boolean cancelled = false;
+
+        Outgoing(String webviewId, String transferId, InputStream input, long total, int chunkSize, Callback callback) {
+            this.webviewId = webviewId;
+            this.transferId = transferId;
+            this.input = input;
+            this.total = total;
+            this.buffer = new byte[chunkSize];
+            this.callback = callback;
+        }
+    }
+
+    private static class Incoming {
+
+        final File file;
+        final OutputStream output;
+        final JSONObject metadata;
+        final long total;
+        byte[] buffer = new byte[0];
+        long bytes = 0;
+        boolean closed = false;
+
+        Incoming(File file, OutputStream output, JSONObject metadata) {
+            this.file = file;
+            this.output = output;
+            this.metadata = metadata;
+            this.total = metadata.optLong("size", 0);
+        }
+    }
+
+    private final Host host;
+    private final File directory;
+    private final ExecutorService executor = Executors.newSingleThreadExecutor();
+    private final Map<String, Outgoing> outgoing = new ConcurrentHashMap<>();
+    private final Map<String, Incoming> incoming = new ConcurrentHashMap<>();
+    // Announced sizes of the incoming transfers in progress
+    private final AtomicLong incomingReserved = new AtomicLong();
+
+    public TransferManager(Host host, File directory) {
+        this.host = host;
+        this.directory = directory;
+
+        // Files of a previous run that were never picked up
+        executor.execute(() -> {
+            File[] files = directory.listFiles();
+            if (files != null) {
+                for (File file : files) {
+                    file.delete();
+                }
+            }
+        });
+    }
+
+    /**
+     * Send a file to the page of a webview in chunks.
+     *
+     * @param chunkSize bytes per chunk, or 0 for the default
+     */
+    public void send(String webviewId, String transferId, File file, int chunkSize, String mimeType, Callback callback) {
+        int size = chunkSize > 0 ? Math.min(chunkSize, MAX_CHUNK_SIZE) : DEFAULT_CHUNK_SIZE;
+        boolean scheduled = execute(() -> {
+            String key = key(webviewId, transferId);
+            if (outgoing.containsKey(key) || incoming.containsKey(key)) {
+                callback.onError("Transfer '" + transferId + "' already exists");
+                return;
+            }
+
+            Outgoing transfer;
+            try {
+                transfer = new Outgoing(webviewId, transferId, new FileInputStream(file), file.length(), size, callback);
+            } catch (IOException e) {
+                callback.onError(e.getMessage());
+                return;
+            }
+            outgoing.put(key, transfer);
+
+            StringBuilder script = new StringBuilder(256);
+            script.append("(function() {");
+            appendDispatch(script, transferId, "'start'", "size: " + transfer.total + ", mimeType: " + JSONObject.quote(mimeType));
+            script.append("})();");
+            host.evaluate(webviewId, script.toString(), ran -> continueSending(transfer, ran));
+        });
+        if (!scheduled) {
+            callback.onError("Transfers are shut down");
+        }
+    }
+
+    /**
+     * Cancel a transfer in either direction. Returns false if it does not exist anymore.
+     */
+    public boolean cancel(String webviewId, String transferId) {
+        String key = key(webviewId, transferId);
+        Outgoing out = outgoing.get(key);
+        if (out != null) {
+            // The transfer thread notices it before reading the next chunk
+            out.cancelled = true;
+            return true;
+        }
+
+        Incoming in = incoming.remove(key);
+        if (in != null) {
+            incomingReserved.addAndGet(-in.total);
+            discard(in);
+            host.onCancelled(webviewId, transferId, DIRECTION_IN);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Start receiving a transfer from a page. Called on a bridge thread.
+     *
+     * @param metadata JSON object with the size and the optional mimeType and name of the payload
+     * @return null on success, otherwise an error message
+     */
+    public String begin(String webviewId, String transferId, String metadata) {
+        String key = key(webviewId, transferId);
+        if (outgoing.containsKey(key) || incoming.containsKey(key)) {
+            return "Transfer '" + transferId + "' already exists";
+        }
+        if (!host.acceptsTransfers(webviewId)) {
+            return "Transfers are not accepted";
+        }
+
+        JSONObject parsed;
+        try {
+            parsed = new JSONObject(metadata != null ? metadata : "");
+        } catch (Exception e) {
+            return "Invalid metadata: " + e.getMessage();
+        }
+        long size = parsed.optLong("size", -1);
+        if (size < 0) {
+            return "Must provide size";
+        }
+        if (size > MAX_TRANSFER_SIZE) {
+            return "Transfer exceeds " + MAX_TRANSFER_SIZE + " bytes";
+        }
+        if (incomingReserved.addAndGet(size) > MAX_INCOMING_SIZE) {
+            incomingReserved.addAndGet(-size);
+            return "Too many transfers in progress";
+        }
+
+        try {
+            if (!directory.isDirectory() && !directory.mkdirs()) {
+                throw new IOException("Failed to create transfer directory");
+            }
+            File file = File.createTempFile("transfer", ".bin", directory);
+            incoming.put(key, new Incoming(file, new FileOutputStream(file), parsed));
+            return null;
+        } catch (Exception e) {
+            incomingReserved.addAndGet(-size);
+            return e.getMessage();
+        }
+    }
+
+    /**
+     * Append a chunk posted by a page as a binary string. Called on a bridge thread. A chunk that
+     * is too large, exceeds the announced size or is not a binary string cancels the transfer.
+     *
+     * @return false if the transfer does not exist anymore, e.g. because it was cancelled
+     */
+    public boolean write(String webviewId, String transferId, String chunk) {
+        Incoming transfer = incoming.get(key(webviewId, transferId));
+        if (transfer == null) {
+            return false;
+        }
+
+        long bytes;
+        synchronized (transfer) {
+            if (transfer.closed) {
+                return false;
+            }
+            int length = chunk.length();
+            String error = null;
+            if (length > MAX_CHUNK_SIZE) {
+                error = "chunk exceeds " + MAX_CHUNK_SIZE + " chars";
+            } else if (transfer.bytes + length > transfer.total) {
+                error = "payload exceeds its announced size";
+            } else {
+                if (transfer.buffer.length < length) {
+                    transfer.buffer = new byte[length];
+                }
+                for (int i = 0; i < length && error == null; i++) {
+                    char c = chunk.charAt(i);
+                    if (c > 0xff) {
+                        error = "chunk is not a binary string";
+                    }
+                    transfer.buffer[i] = (byte) c;
+                }
+            }
+            if (error == null) {
+                try {
+                    transfer.output.write(transfer.buffer, 0, length);
+                } catch (IOException e) {
+                    error = e.getMessage();
+                }
+            }
+            if (error != null) {
+                Log.e(TAG, "Cancelling transfer '" + transferId + "': " + error);
+                if (incoming.remove(key(webviewId, transferId), transfer)) {
+                    incomingReserved.addAndGet(-transfer.total);
+                }
+                discardLocked(transfer);
+                host.onCancelled(webviewId, transferId, DIRECTION_IN);
+                return false;
+            }
+            transfer.bytes += length;
+            bytes = transfer.bytes;
+        }
+        host.onProgress(webviewId, transferId, DIRECTION_IN, bytes, transfer.total);
+        return true;
+    }
+
+    /**
+     * Complete a transfer from a page. Called on a bridge thread.
+     */
+    public boolean end(String webviewId, String transferId) {
+        Incoming transfer = incoming.remove(key(webviewId, transferId));
+        if (transfer == null) {
+            return false;
+        }
+        incomingReserved.addAndGet(-transfer.total);
+
+        synchronized (transfer) {
+            transfer.closed = true;
+            boolean complete = transfer.bytes == transfer.total;
+            try {
+                transfer.output.close();
+            } catch (IOException e) {
+                complete = false;
+            }
+            if (!complete) {
+                transfer.file.delete();
+                host.onCancelled(webviewId, transferId, DIRECTION_IN);
+                return false;
+            }
+        }
+        if (!host.onReceived(webviewId, transferId, transfer.file, transfer.bytes, transfer.metadata)) {
+            // Nobody took the file; it would stay in the cache until the next launch otherwise
+            transfer.file.delete();
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Cancel every transfer of a webview whose page went away.
+     */
+    public void abandonWebview(String webviewId) {
+        String prefix = webviewId + "\n";
+        for (Map.Entry<String, Outgoing> entry : outgoing.entrySet()) {
+            if (entry.getKey().startsWith(prefix)) {
+                entry.getValue().cancelled = true;
+            }
+        }
+        for (Iterator<Map.Entry<String, Incoming>> iterator = incoming.entrySet().iterator(); iterator.hasNext();) {
+            Map.Entry<String, Incoming> entry = iterator.next();
+            if (entry.getKey().startsWith(prefix)) {
+                iterator.remove();
+                incomingReserved.addAndGet(-entry.getValue().total);
+                discard(entry.getValue());
+            }
+        }
+    }
+
+    /**
+     * Delete a received file. Only files in the transfer directory are deleted.
+     */
+    public boolean release(File file) {
+        File parent = file.getAbsoluteFile().getParentFile();
+        return parent != null && parent.equals(directory.getAbsoluteFile()) && file.delete();
+    }
+
+    public void shutdown() {
+        for (Outgoing transfer : outgoing.values()) {
+            transfer.cancelled = true;
+        }
+        executor.shutdown();
+    }
+
+    /**
+     * Read and dispatch the next chunk once the page ran the previous script. Called on the UI
+     * thread; the work happens on the transfer thread.
+     */
+    private void continueSending(Outgoing transfer, boolean ran) {
+        boolean scheduled = execute(() -> {
+            if (!ran) {
+                finishSending(transfer, "Webview is not available");
+                return;
+            }
+            if (transfer.cancelled) {
+                evaluateQuietly(transfer, "'cancel'", null);
+                finishSending(transfer, "Cancelled");
+                host.onCancelled(transfer.webviewId, transfer.transferId, DIRECTION_OUT);
+                return;
+            }
+
+            int read;
+            try {
+                read = readChunk(transfer);
+            } catch (IOException e) {
+                evaluateQuietly(transfer, "'cancel'", null);
+                finishSending(transfer, e.getMessage());
+                return;
+            }
+
+            StringBuilder script;
+            if (read <= 0) {
+                script = new StringBuilder(128);
+                script.append("(function() {");
+                appendDispatch(script, transfer.transferId, "'end'", "size: " + transfer.offset);
+                script.append("})();");
+                host.evaluate(
+                    transfer.webviewId,
+                    script.toString(),
+                    done -> {
+                        if (!execute(() -> finishSending(transfer, done ? null : "Webview is not available"))) {
+                            finishSending(transfer, "Transfers are shut down");
+                        }
+                    }
+                );
+                return;
+            }
+
+            String encoded = Base64.encodeToString(transfer.buffer, 0, read, Base64.NO_WRAP);
+            script = new StringBuilder(encoded.length() + 384);
+            script.append("(function() {var s = atob('").append(encoded).append("');");
+            script.append("var d = new Uint8Array(s.length);");
+            script.append("for (var i = 0; i < s.length; i++) {d[i] = s.charCodeAt(i);}");
+            appendDispatch(script, transfer.transferId, "'chunk'", "index: " + transfer.index + ", offset: " + transfer.offset + ", data: d");
+            script.append("})();");
+
+            transfer.offset += read;
+            transfer.index++;
+            host.onProgress(transfer.webviewId, transfer.transferId, DIRECTION_OUT, transfer.offset, transfer.total);
+            host.evaluate(transfer.webviewId, script.toString(), next -> continueSending(transfer, next));
+        });
+        if (!scheduled) {
+            finishSending(transfer, "Transfers are shut down");
+        }
+    }
+
+    /**
+     * Run a task on the transfer thread. Returns false once the manager was shut down, e.g. when
+     * a script evaluated during destruction of the plugin completes.
+     */
+    private boolean execute(Runnable task) {
+        try {
+            executor.execute(task);
+            return true;
+        } catch (RejectedExecutionException e) {
+            return false;
+        }
+    }
+
+    private int readChunk(Outgoing transfer) throws IOException {
+        int filled = 0;
+        while (filled < transfer.buffer.length) {
+            int read = transfer.input.read(transfer.buffer, filled, transfer.buffer.length - filled);
+            if (read < 0) {
+                break;
+            }
+            filled += read;
+        }
+        return filled;
+    }
+
+    private void finishSending(Outgoing transfer, String error) {
+        outgoing.remove(key(transfer.webviewId, transfer.transferId), transfer);
+        try {
+            transfer.input.close();
+        } catch (IOException e) {
+            // Nothing was written
+        }
+        if (error != null) {
+            transfer.callback.onError(error);
+        } else {
+            transfer.callback.onComplete(transfer.offset);
+        }
+    }
+
+    private void evaluateQuietly(Outgoing transfer, String type, String fields) {
+        StringBuilder script = new StringBuilder(128);
+        script.append("(function() {");
+        appendDispatch(script, transfer.transferId, type, fields);
+        script.append("})();");
+        host.evaluate(transfer.webviewId, script.toString(), ran -> {});
+    }
+
+    private static void appendDispatch(StringBuilder script, String transferId, String type, String fields) {
+        script.append("window.dispatchEvent(new CustomEvent('multiwebview-transfer', {detail: {transferId: ");
+        script.append(JSONObject.quote(transferId)).append(", type: ").append(type);
+        if (fields != null) {
+            script.append(", ").append(fields);
+        }
+        script.append("}}));");
+    }
+
+    private static void discard(Incoming transfer) {
+        synchronized (transfer) {
+            discardLocked(transfer);
+        }
+    }
+
+    private static void discardLocked(Incoming transfer) {
+        if (transfer.closed) {
+            return;
+        }
+        transfer.closed = true;
+        try {
+            transfer.output.close();
+        } catch (IOException e) {
+            // Deleted below
+        }
+        transfer.file.delete();
+    }
+
+    private static String key(String webviewId, String transferId) {
+        return webviewId + "\n" + transferId;
+    }
+}
@@ -0,0 +1,299 @@
+package net.bitburst.plugins.multiwebview;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * Index of the URL each webview currently shows (or is navigating to).
+ *
+ * Besides the exact URL, every webview is indexed by host and by its path segments in a per-host
+ * trie, so exact, host and path-prefix lookups do not need to scan all webviews. Path prefixes
+ * match on segment boundaries: "/shop" matches "/shop/cart" but not "/shopping".
+ *
+ * Not thread-safe; callers must synchronize or confine it to one thread.
+ */
+public class UrlIndex {
+
+    private static class PathNode {
+
+        final Map<String, PathNode> children = new HashMap<>();
+        final Set<String> ids = new LinkedHashSet<>();
+    }
+
+    private static class ParsedUrl {
+
+        final String host;
+        final List<String> segments;
+
+        ParsedUrl(String host, List<String> segments) {
+            this.host = host;
+            this.segments = segments;
+        }
+    }
+
+    private final Map<String, String> urlById = new HashMap<>();
+    private final Map<String, Set<String>> idsByUrl = new HashMap<>();
+    private final Map<String, Set<String>> idsByHost = new HashMap<>();
+    private final Map<String, PathNode> pathsByHost = new HashMap<>();
+
+    public UrlIndex() {}
+
+    public UrlIndex(UrlIndex other) {
+        for (Map.Entry<String, String> entry : other.urlById.entrySet()) {
+            update(entry.getKey(), entry.getValue());
+        }
+    }
+
+    public void update(String id, String url) {
+        String previous = urlById.get(id);
+        if (previous != null && previous.equals(url)) {
+            return;
+        }
+
+        remove(id);
+        if (url == null || url.isEmpty()) {
+            return;
+        }
+
+        urlById.put(id, url);
+        addTo(idsByUrl, url, id);
+
+        ParsedUrl parsed = parse(url, false);
+        if (parsed != null) {
+            addTo(idsByHost, parsed.host, id);
+            PathNode node = pathsByHost.get(parsed.host);
+            if (node == null) {
+                node = new PathNode();
+                pathsByHost.put(parsed.host, node);
+            }
+            for (String segment : parsed.segments) {
+                PathNode child = node.children.get(segment);
+                if (child == null) {
+                    child = new PathNode();
+                    node.children.put(segment, child);
+                }
+                node = child;
+            }
+            node.ids.add(id);
+        }
+    }
+
+    public void remove(String id) {
+        String url = urlById.remove(id);
+        if (url == null) {
+            return;
+        }
+
+        removeFrom(idsByUrl, url, id);
+        ParsedUrl parsed = parse(url, false);
+        if (parsed != null) {
+            removeFrom(idsByHost, parsed.host, id);
+            PathNode root = pathsByHost.get(parsed.host);
+            if (root != null && removePath(root, parsed.segments, 0, id)) {
+                pathsByHost.remove(parsed.host);
+            }
+        }
+    }
+
+    /**
+     * Remove an id from the node at the given path below a node and prune nodes left empty, so
+     * the trie does not grow with every URL a webview navigated to.
+     *
+     * @return whether the node itself is empty now
+     */
+    private static boolean removePath(PathNode node, List<String> segments, int index, String id) {
+        if (index == segments.size()) {
+            node.ids.remove(id);
+        } else {
+            PathNode child = node.children.get(segments.get(index));
+            if (child != null && removePath(child, segments, index + 1, id)) {
+                node.children.remove(segments.get(index));
+            }
+        }
+        return node.ids.isEmpty() && node.children.isEmpty();
+    }
+
+    public List<String> findExact(String url) {
+        return toList(idsByUrl.get(url));
+    }
+
+    public List<String> findByHost(String host) {
+        return toList(idsByHost.get(host.toLowerCase(Locale.ROOT)));
+    }
+
+    /**
+     * Find webviews on the same host whose path starts with the path of the given URL.
+     */
+    public List<String> findByPathPrefix(String urlPrefix) {
+        ParsedUrl parsed = parse(urlPrefix, false);
+        if (parsed == null) {
+            return Collections.emptyList();
+        }
+
+        PathNode node = pathsByHost.get(parsed.host);
+        for (int i = 0; node != null && i < parsed.segments.size(); i++) {
+            node = node.children.get(parsed.segments.get(i));
+        }
+
+        List<String> result = new ArrayList<>();
+        if (node != null) {
+            collect(node, result);
+        }
+        return result;
+    }
+
+    /**
+     * Find webviews whose URL matches a glob pattern ('*' matches any run of characters, '?' one
+     * character). Patterns with a literal host are only matched against webviews on that host.
+     */
+    public List<String> findByGlob(String glob) {
+        Pattern pattern = compileGlob(glob);
+
+        Collection<String> candidates = urlById.keySet();
+        ParsedUrl parsed = parse(glob, true);
+        if (parsed != null && parsed.host.indexOf('*') < 0 && parsed.host.indexOf('?') < 0) {
+            Set<String> hostIds = idsByHost.get(parsed.host);
+            candidates = hostIds != null ? hostIds : Collections.emptySet();
+        }
+
+        List<String> result = new ArrayList<>();
+        for (String id : candidates) {
+            if (pattern.matcher(urlById.get(id)).matches()) {
+                result.add(id);
+            }
+        }
+        return result;
+    }
+
+    public List<String> findContaining(String fragment) {
+        List<String> result = new ArrayList<>();
+        for (Map.Entry<String, String> entry : urlById.entrySet()) {
+            if (entry.getValue().contains(fragment)) {
+                result.add(entry.getKey());
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Find the webviews that most specifically own a URL: those showing exactly that URL, else
+     * those whose path is the longest prefix of it on the same host, else any on the same host.
+     */
+    public List<String> findOwners(String url) {
+        Set<String> exact = idsByUrl.get(url);
+        if (exact != null && !exact.isEmpty()) {
+            return new ArrayList<>(exact);
+        }
+
+        ParsedUrl parsed = parse(url, false);
+        if (parsed == null) {
+            return Collections.emptyList();
+        }
+
+        PathNode node = pathsByHost.get(parsed.host);
+        Set<String> best = null;
+        for (int i = 0; node != null; i++) {
+            if (!node.ids.isEmpty()) {
+                best = node.ids;
+            }
+            node = i < parsed.segments.size() ? node.children.get(parsed.segments.get(i)) : null;
+        }
+        if (best != null) {
+            return new ArrayList<>(best);
+        }
+        return toList(idsByHost.get(parsed.host));
+    }
+
+    private static void collect(PathNode node, List<String> result) {
+        result.addAll(node.ids);
+        for (PathNode child : node.children.values()) {
+            collect(child, result);
+        }
+    }
+
+    /**
+     * Split a URL into its host and path segments; query and fragment are not indexed.
+     *
+     * @param glob whether the URL is a glob pattern, whose '*' and '?' are wildcards rather than
+     * the start of a query
+     */
+    private static ParsedUrl parse(String url, boolean glob) {
+        try {
+            URI uri = new URI(glob ? url.replace("*", "%2A").replace("?", "%3F") : url);
+            String host = uri.getHost();
+            if (host == null) {
+                return null;
+            }
+            if (glob) {
+                host = host.replace("%2A", "*").replace("%3F", "?");
+            }
+            host = host.toLowerCase(Locale.ROOT);
+
+            List<String> segments = new ArrayList<>();
+            String path = uri.getRawPath();
+            if (path != null) {
+                for (String segment : path.split("/")) {
+                    if (!segment.isEmpty()) {
+                        segments.add(segment);
+                    }
+                }
+            }
+            return new ParsedUrl(host, segments);
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    private static Pattern compileGlob(String glob) {
+        StringBuilder regex = new StringBuilder();
+        StringBuilder literal = new StringBuilder();
+        for (int i = 0; i < glob.length(); i++) {
+            char c = glob.charAt(i);
+            if (c == '*' || c == '?') {
+                if (literal.length() > 0) {
+                    regex.append(Pattern.quote(literal.toString()));
+                    literal.setLength(0);
+                }
+                regex.append(c == '*' ? ".*" : ".");
+            } else {
+                literal.append(c);
+            }
+        }
+        if (literal.length() > 0) {
+            regex.append(Pattern.quote(literal.toString()));
+        }
+        return Pattern.compile(regex.toString());
+    }
+
+    private static void addTo(Map<String, Set<String>> map, String key, String id) {
+        Set<String> ids = map.get(key);
+        if (ids == null) {
+            ids = new LinkedHashSet<>();
+            map.put(key, ids);
+        }
+        ids.add(id);
+    }
+
+    private static void removeFrom(Map<String, Set<String>> map, String key, String id) {
+        Set<String> ids = map.get(key);
+        if (ids != null) {
+            ids.remove(id);
+            if (ids.isEmpty()) {
+                map.remove(key);
+            }
+        }
+    }
+
+    private static List<String> toList(Set<String> ids) {
+        return ids != null ? new ArrayList<>(ids) : new ArrayList<>();
+    }
+}
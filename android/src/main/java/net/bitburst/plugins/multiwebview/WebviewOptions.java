@@ -0,0 +1,89 @@
+package net.bitburst.plugins.multiwebview;
+
+import com.getcapacitor.JSArray;
+import com.getcapacitor.JSObject;
+import java.util.List;
+
+public class WebviewOptions {
+
+    /**
+     * What happens to a webview while it is hidden.
+     */
+    public enum BackgroundPolicy {
+        // Keep running at full speed
+        RUN,
+        // WebView.onPause: throttles timers, animations and media of this webview
+        PAUSE,
+        // Like PAUSE, and additionally pause all WebView timers while the activity is paused
+        PAUSE_TIMERS;
+
+        public static BackgroundPolicy fromString(String value) {
+            if ("pause".equals(value)) {
+                return PAUSE;
+            } else if ("pauseTimers".equals(value)) {
+                return PAUSE_TIMERS;
+            }
+            return RUN;
+        }
+    }
+
+    public boolean enableJavaScript = true;
+    public boolean allowFileAccess = false;
+    public String userAgent = null;
+    public BackgroundPolicy backgroundPolicy = BackgroundPolicy.RUN;
+    public boolean messageChannel = false;
+    public int maxMessageQueueDepth = OutboundMessageQueue.DEFAULT_MAX_DEPTH;
+    public boolean inboundBatching = false;
+    public long inboundBatchWindowMs = InboundMessageQueue.DEFAULT_WINDOW_MS;
+    public int inboundQueueDepth = InboundMessageQueue.DEFAULT_MAX_DEPTH;
+    public InboundMessageQueue.OverflowPolicy inboundOverflow = InboundMessageQueue.OverflowPolicy.DROP_NEWEST;
+    // Whether the page may exchange messages with other webviews through topics and postTo
+    public boolean routing = false;
+    // Webviews the page may exchange messages with, or null for every webview with routing
+    public List<String> routingPeers = null;
+
+    /**
+     * Whether pages of the two webviews may exchange messages; both must have routing enabled and
+     * allow each other.
+     */
+    public static boolean canRoute(String fromId, WebviewOptions from, String toId, WebviewOptions to) {
+        return (
+            from.routing &&
+            to.routing &&
+            (from.routingPeers == null || from.routingPeers.contains(toId)) &&
+            (to.routingPeers == null || to.routingPeers.contains(fromId))
+        );
+    }
+
+    /**
+     * Options in the format of the createWebview call, e.g. to persist them.
+     */
+    public JSObject toJSObject() {
+        JSObject obj = new JSObject();
+        obj.put("enableJavaScript", enableJavaScript);
+        obj.put("allowFileAccess", allowFileAccess);
+        if (userAgent != null) {
+            obj.put("userAgent", userAgent);
+        }
+        obj.put(
+            "backgroundPolicy",
+            backgroundPolicy == BackgroundPolicy.PAUSE ? "pause" : backgroundPolicy == BackgroundPolicy.PAUSE_TIMERS ? "pauseTimers" : "run"
+        );
+        obj.put("messageChannel", messageChannel);
+        obj.put("maxMessageQueueDepth", maxMessageQueueDepth);
+        obj.put("inboundBatching", inboundBatching);
+        obj.put("inboundBatchWindowMs", inboundBatchWindowMs);
+        obj.put("inboundQueueDepth", inboundQueueDepth);
+        obj.put(
+            "inboundOverflow",
+            inboundOverflow == InboundMessageQueue.OverflowPolicy.DROP_OLDEST
+                ? "dropOldest"
+                : inboundOverflow == InboundMessageQueue.OverflowPolicy.BLOCK ? "block" : "dropNewest"
+        );
+        obj.put("routing", routing);
+        if (routingPeers != null) {
+            obj.put("routingPeers", new JSArray(routingPeers));
+        }
+        return obj;
+    }
+}
@@ -0,0 +1,221 @@
+package net.bitburst.plugins.multiwebview;
+
+import android.content.Context;
+import android.graphics.Color;
+import android.os.Looper;
+import android.os.MessageQueue;
+import android.util.Log;
+import android.view.View;
+import android.view.ViewGroup;
+import android.webkit.RenderProcessGoneDetail;
+import android.webkit.WebSettings;
+import android.webkit.WebView;
+import android.webkit.WebViewClient;
+import com.getcapacitor.JSObject;
+import java.util.ArrayDeque;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Pool of pre-initialized WebViews.
+ *
+ * Constructing a WebView is the most expensive part of creating a webview, so the pool
+ * builds instances ahead of time while the main looper is idle (one per idle pass, to
+ * avoid long frames) and hands them out from createWebview. Destroyed webviews can be
+ * reset and returned to the pool instead of being thrown away; they are handed out again only
+ * once about:blank finished loading and their history was cleared. Cookies, localStorage,
+ * IndexedDB and the HTTP cache are shared by all WebViews of the app anyway, so a recycled
+ * webview shares them with every other webview; its sessionStorage is cleared.
+ *
+ * All methods must be called on the UI thread.
+ */
+public class WebviewPool {
+
+    private static final String TAG = "WebviewPool";
+
+    private final Context context;
+    private final ArrayDeque<WebView> idle = new ArrayDeque<>();
+    // Released WebViews that are still loading about:blank
+    private final Set<WebView> resetting = new HashSet<>();
+    private int capacity;
+    private boolean recycleOnDestroy;
+    private boolean warmUpScheduled = false;
+
+    private int hits = 0;
+    private int misses = 0;
+    private int recycled = 0;
+
+    // Client of WebViews while they are in the pool
+    private final WebViewClient poolClient = new WebViewClient() {
+        @Override
+        public void onPageFinished(WebView view, String url) {
+            if (!"about:blank".equals(url) || !resetting.remove(view)) {
+                return;
+            }
+            // The previous page is only in the back stack once the blank page committed
+            view.clearHistory();
+            if (idle.size() < capacity) {
+                idle.addLast(view);
+            } else {
+                view.destroy();
+            }
+        }
+
+        @Override
+        public boolean onRenderProcessGone(WebView view, RenderProcessGoneDetail detail) {
+            // Unhandled, the crash of a shared renderer would kill the app through an idle WebView
+            idle.remove(view);
+            resetting.remove(view);
+            view.destroy();
+            scheduleWarmUp();
+            return true;
+        }
+    };
+
+    private final MessageQueue.IdleHandler warmUpHandler = new MessageQueue.IdleHandler() {
+        @Override
+        public boolean queueIdle() {
+            if (idle.size() >= capacity) {
+                warmUpScheduled = false;
+                return false;
+            }
+            try {
+                idle.addLast(createWebView());
+            } catch (Exception e) {
+                Log.e(TAG, "Error pre-warming webview", e);
+                warmUpScheduled = false;
+                return false;
+            }
+            boolean more = idle.size() < capacity;
+            warmUpScheduled = more;
+            return more;
+        }
+    };
+
+    public WebviewPool(Context context, int capacity, boolean recycleOnDestroy) {
+        this.context = context;
+        this.capacity = Math.max(0, capacity);
+        this.recycleOnDestroy = recycleOnDestroy;
+    }
+
+    /**
+     * Take a WebView from the pool, or create one if the pool is empty.
+     */
+    public WebView acquire() {
+        WebView webView = idle.pollFirst();
+        if (webView != null) {
+            hits++;
+        } else {
+            misses++;
+            webView = createWebView();
+        }
+        scheduleWarmUp();
+        return webView;
+    }
+
+    /**
+     * Return a WebView that is no longer used. It is reset and kept for reuse if recycling
+     * is enabled and the pool has room, otherwise it is destroyed.
+     */
+    public void release(WebView webView) {
+        if (!recycleOnDestroy || idle.size() + resetting.size() >= capacity) {
+            webView.destroy();
+            return;
+        }
+
+        try {
+            reset(webView);
+            resetting.add(webView);
+            recycled++;
+        } catch (Exception e) {
+            Log.e(TAG, "Error recycling webview", e);
+            webView.destroy();
+        }
+    }
+
+    public void configure(int capacity, boolean recycleOnDestroy) {
+        this.capacity = Math.max(0, capacity);
+        this.recycleOnDestroy = recycleOnDestroy;
+
+        while (idle.size() > this.capacity) {
+            idle.pollLast().destroy();
+        }
+        scheduleWarmUp();
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public boolean isRecycleOnDestroy() {
+        return recycleOnDestroy;
+    }
+
+    /**
+     * Fill the pool up to its capacity during upcoming idle passes of the main looper.
+     */
+    public void scheduleWarmUp() {
+        if (warmUpScheduled || idle.size() >= capacity) {
+            return;
+        }
+        warmUpScheduled = true;
+        Looper.myQueue().addIdleHandler(warmUpHandler);
+    }
+
+    public void clear() {
+        if (warmUpScheduled) {
+            Looper.myQueue().removeIdleHandler(warmUpHandler);
+            warmUpScheduled = false;
+        }
+        while (!idle.isEmpty()) {
+            idle.pollFirst().destroy();
+        }
+        for (WebView webView : resetting) {
+            webView.destroy();
+        }
+        resetting.clear();
+    }
+
+    public JSObject getStats() {
+        JSObject stats = new JSObject();
+        stats.put("size", idle.size());
+        stats.put("capacity", capacity);
+        stats.put("recycleOnDestroy", recycleOnDestroy);
+        stats.put("hits", hits);
+        stats.put("misses", misses);
+        stats.put("recycled", recycled);
+        return stats;
+    }
+
+    private WebView createWebView() {
+        WebView webView = new WebView(context);
+
+        // Settings shared by every managed webview; per-webview settings are applied on acquire
+        WebSettings settings = webView.getSettings();
+        settings.setDomStorageEnabled(true);
+        settings.setMixedContentMode(WebSettings.MIXED_CONTENT_ALWAYS_ALLOW);
+
+        webView.setBackgroundColor(Color.WHITE);
+        webView.setWebViewClient(poolClient);
+        return webView;
+    }
+
+    private void reset(WebView webView) {
+        if (webView.getParent() instanceof ViewGroup) {
+            ((ViewGroup) webView.getParent()).removeView(webView);
+        }
+
+        webView.stopLoading();
+        // Runs on the previous page before the navigation below
+        webView.evaluateJavascript("try { sessionStorage.clear(); } catch (e) {}", null);
+        webView.onResume();
+        webView.removeJavascriptInterface(MultiWebviewManager.BRIDGE_NAME);
+        webView.setWebViewClient(poolClient);
+        webView.setWebChromeClient(null);
+        webView.getSettings().setUserAgentString(null);
+        webView.setVisibility(View.VISIBLE);
+        webView.setTranslationX(0);
+        webView.setTranslationY(0);
+        webView.loadUrl("about:blank");
+    }
+}
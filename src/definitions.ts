@@ -56,7 +56,9 @@ export interface MsAppMultiWebviewPlugin {
      * Load a URL in the specified webview.
      *
      * @param options Options specifying the webview and URL to load
-     * @returns Promise that resolves when the URL starts loading
+     * @returns Promise that resolves when the URL starts loading. On Android, loads of webviews that
+     * are not focused may be queued behind other loads; the promise then resolves once the load is
+     * queued, and the 'loadStart' event tells when it starts.
      * @since 1.0.0
      */
     loadUrl(options: LoadUrlOptions): Promise<void>
@@ -86,6 +88,16 @@ export interface MsAppMultiWebviewPlugin {
      */
     getAllWebviews(): Promise<AllWebviewsResult>
 
+    /**
+     * Get the version of the webview registry. The version increases whenever a webview is created,
+     * destroyed, focused, shown, hidden or navigates, so it can be used to cheaply detect changes
+     * before calling getAllWebviews (Android only).
+     *
+     * @returns Promise that resolves with the registry version
+     * @since 1.2.0
+     */
+    getRegistryVersion(): Promise<RegistryVersionResult>
+
     /**
      * Get webviews that match a specific URL or URL pattern.
      *
@@ -95,6 +107,17 @@ export interface MsAppMultiWebviewPlugin {
      */
     getWebviewsByUrl(options: GetWebviewsByUrlOptions): Promise<WebviewsByUrlResult>
 
+    /**
+     * Resolve which webview owns each of the given URLs: a webview showing exactly that URL, else the
+     * one with the longest matching path on the same host, else any webview on the same host.
+     * Ties are resolved in favour of the focused webview, then visible ones (Android only).
+     *
+     * @param options URLs to resolve
+     * @returns Promise that resolves with the owning webview per URL
+     * @since 1.2.0
+     */
+    resolveUrlOwners(options: ResolveUrlOwnersOptions): Promise<UrlOwnersResult>
+
     /**
      * Set the frame/bounds of the specified webview.
      *
@@ -104,6 +127,16 @@ export interface MsAppMultiWebviewPlugin {
      */
     setWebviewFrame(options: SetWebviewFrameOptions): Promise<void>
 
+    /**
+     * Animate the frame of the specified webview natively, without a bridge call per animation frame.
+     * Position-only animations move the webview without relayout (Android only).
+     *
+     * @param options Options specifying the webview, target frame and timing
+     * @returns Promise that resolves when the animation ends or is interrupted
+     * @since 1.2.0
+     */
+    animateWebviewFrame(options: AnimateWebviewFrameOptions): Promise<AnimateWebviewFrameResult>
+
     /**
      * Execute JavaScript code in the specified webview.
      *
@@ -113,15 +146,338 @@ export interface MsAppMultiWebviewPlugin {
      */
     executeJavaScript(options: ExecuteJavaScriptOptions): Promise<ExecuteJavaScriptResult>
 
+    /**
+     * Register a script with the specified webview so it can be invoked repeatedly by handle without
+     * sending its code again. The script stays registered across navigations of the webview
+     * (Android only).
+     *
+     * @param options Options specifying the webview and the script
+     * @returns Promise with the handle of the script
+     * @since 1.2.0
+     */
+    registerScript(options: RegisterScriptOptions): Promise<RegisterScriptResult>
+
+    /**
+     * Invoke a registered script with JSON arguments (Android only).
+     *
+     * @param options Options specifying the webview, script handle and arguments
+     * @returns Promise with the value returned by the script
+     * @since 1.2.0
+     */
+    invokeScript(options: InvokeScriptOptions): Promise<InvokeScriptResult>
+
+    /**
+     * Remove a registered script (Android only).
+     *
+     * @param options Options specifying the webview and script handle
+     * @returns Promise that resolves when the script is removed
+     * @since 1.2.0
+     */
+    unregisterScript(options: ScriptHandleOptions): Promise<void>
+
     /**
      * Send a message to the specified webview.
      * The webview can listen for these messages using the MsAppMultiWebview.addListener('message', ...) method.
+     * On Android messages are queued and flushed to the page once per frame.
      *
      * @param options Options specifying the webview and message to send
-     * @returns Promise that resolves when the message is sent
+     * @returns Promise that resolves when the message is delivered to the page
      * @since 1.0.0
      */
-    sendMessage(options: SendMessageOptions): Promise<void>
+    sendMessage(options: SendMessageOptions): Promise<SendMessageResult>
+
+    /**
+     * Send a message to every webview matching the filters (Android only).
+     * The message is serialized once for all recipients. Recipients that are paused or hibernated
+     * receive it when they resume; queued messages with the same coalescing key replace each other.
+     *
+     * Pages can also exchange messages without a round trip through the host app by calling
+     * `window.MultiWebviewBridge.subscribe(topic)`, `unsubscribe(topic)`,
+     * `publish(topic, JSON.stringify(message))` and `postTo(id, JSON.stringify(message))`, if both
+     * webviews were created with `routing` and allow each other in `routingPeers`. A page can
+     * subscribe to at most 64 topics. Subscriptions end when the page navigates. Routed messages arrive as
+     * 'multiwebview-message' events whose detail has `data`, `topic` and the sender id in `from`.
+     *
+     * @param options Message and recipient filters
+     * @returns Promise with the ids of the recipients
+     * @since 1.2.0
+     */
+    broadcastMessage(options: BroadcastMessageOptions): Promise<BroadcastMessageResult>
+
+    /**
+     * Configure the pool of pre-initialized webviews used by createWebview.
+     * Pooled webviews are warmed up while the main thread is idle (Android only).
+     *
+     * @param options Pool size and recycling behaviour
+     * @returns Promise that resolves when the pool is reconfigured
+     * @since 1.2.0
+     */
+    configurePool(options: ConfigurePoolOptions): Promise<void>
+
+    /**
+     * Get usage statistics of the webview pool (Android only).
+     *
+     * @returns Promise that resolves with the pool statistics
+     * @since 1.2.0
+     */
+    getPoolStats(): Promise<PoolStats>
+
+    /**
+     * Configure the asset cache shared by all webviews. Cacheable GET subresource requests are stored
+     * on disk and served to every webview while fresh, revalidated with ETag/Last-Modified when stale,
+     * and concurrent requests for the same URL are fetched once. Defaults come from the `assetCache`
+     * (default: false) and `assetCacheMaxSize` plugin config (Android only).
+     *
+     * @param options Cache settings
+     * @returns Promise that resolves when the settings are applied
+     * @since 1.2.0
+     */
+    configureAssetCache(options: ConfigureAssetCacheOptions): Promise<void>
+
+    /**
+     * Get statistics of the asset cache (Android only).
+     *
+     * @returns Promise with the asset cache statistics
+     * @since 1.2.0
+     */
+    getAssetCacheStats(): Promise<AssetCacheStats>
+
+    /**
+     * Get the thumbnail of a webview captured when it was last hidden or lost focus, without waking
+     * its renderer, e.g. for a tab switcher. Thumbnails are at most `snapshotMaxWidth` pixels wide
+     * (plugin config, default: 360) and kept within `snapshotCacheSize` bytes (plugin config, default:
+     * 16 MB, 0 disables capturing), least recently used first (Android only).
+     *
+     * @param options Options specifying the webview and image format
+     * @returns Promise with the thumbnail, or without data if none was captured
+     * @since 1.2.0
+     */
+    getWebviewSnapshot(options: WebviewSnapshotOptions): Promise<WebviewSnapshotResult>
+
+    /**
+     * Get usage statistics of the thumbnail cache (Android only).
+     *
+     * @returns Promise that resolves with the cache statistics
+     * @since 1.2.0
+     */
+    getSnapshotCacheStats(): Promise<SnapshotCacheStats>
+
+    /**
+     * Serve a ZIP archive to the webviews under the virtual origin `https://{name}.bundle.localhost`.
+     * The archive is memory-mapped and indexed once; uncompressed (stored) entries are served without
+     * copying. Registering a bundle under an existing name atomically replaces it for new requests
+     * while webviews keep running (Android only).
+     *
+     * @param options Name, archive path and version of the bundle
+     * @returns Promise with the origin the bundle is served under
+     * @since 1.2.0
+     */
+    registerAssetBundle(options: RegisterAssetBundleOptions): Promise<RegisterAssetBundleResult>
+
+    /**
+     * Stop serving an asset bundle (Android only).
+     *
+     * @param options Name of the bundle
+     * @returns Promise that resolves when the bundle is removed
+     * @since 1.2.0
+     */
+    unregisterAssetBundle(options: UnregisterAssetBundleOptions): Promise<void>
+
+    /**
+     * List the registered asset bundles (Android only).
+     *
+     * @returns Promise with the registered bundles
+     * @since 1.2.0
+     */
+    listAssetBundles(): Promise<ListAssetBundlesResult>
+
+    /**
+     * Load the filter list used to block subresource requests of all webviews, e.g. to trackers and
+     * ads. Supported rules are `||domain^`, exceptions `@@||domain^`, plain domains and hosts-file
+     * lines; other rules are ignored. Loading a new list replaces the previous one without interrupting
+     * running webviews; call without rules or path to disable blocking. Main frame navigations are
+     * never blocked (Android only).
+     *
+     * @param options Filter list text or file path
+     * @returns Promise with the number of compiled rules
+     * @since 1.2.0
+     */
+    setContentBlockerRules(options: SetContentBlockerRulesOptions): Promise<ContentBlockerRulesResult>
+
+    /**
+     * Allow or block additional domains (and their subdomains) in the specified webview. Overrides take
+     * precedence over the filter list, allowed domains over blocked ones (Android only).
+     *
+     * @param options Webview and domains to allow or block
+     * @returns Promise that resolves when the overrides are applied
+     * @since 1.2.0
+     */
+    setContentBlockerOverrides(options: ContentBlockerOverridesOptions): Promise<void>
+
+    /**
+     * Get statistics of the content blocker (Android only).
+     *
+     * @returns Promise with the content blocker statistics
+     * @since 1.2.0
+     */
+    getContentBlockerStats(): Promise<ContentBlockerStats>
+
+    /**
+     * Get performance metrics of the plugin, in total and per webview: page load times and errors,
+     * messages and bytes in each direction, evaluateJavascript round trips and how long native calls
+     * wait for the UI thread (Android only).
+     *
+     * @param options Whether to reset the metrics after reading them
+     * @returns Promise with the metrics
+     * @since 1.2.0
+     */
+    getMetrics(options?: GetMetricsOptions): Promise<MetricsResult>
+
+    /**
+     * Emit the metrics periodically as a 'metrics' event (Android only).
+     *
+     * @param options Interval of the event
+     * @returns Promise that resolves when the interval is applied
+     * @since 1.2.0
+     */
+    setMetricsInterval(options: MetricsIntervalOptions): Promise<void>
+
+    /**
+     * Limit an event, or every event without its own filter, to some webviews, and optionally
+     * coalesce it so that only the latest event per webview is emitted once per frame. Only
+     * 'loadStart', 'transferProgress' and 'metrics' can be coalesced. Events without listeners, or
+     * filtered out, are never built natively (Android only).
+     *
+     * @param options Event and filter
+     * @returns Promise that resolves when the filter is applied
+     * @since 1.2.0
+     */
+    setEventFilter(options: EventFilterOptions): Promise<void>
+
+    /**
+     * Remove the filter of an event, or every filter if no event is given (Android only).
+     *
+     * @param options The event whose filter to remove
+     * @returns Promise that resolves when the filter is removed
+     * @since 1.2.0
+     */
+    clearEventFilter(options?: ClearEventFilterOptions): Promise<void>
+
+    /**
+     * Get the number of emitted, skipped and coalesced events (Android only).
+     *
+     * @returns Promise with the event statistics
+     * @since 1.2.0
+     */
+    getEventStats(): Promise<EventStats>
+
+    /**
+     * Configure hibernation of hidden webviews. A hibernated webview keeps its id, URL, frame and
+     * navigation history but releases its renderer; it is restored transparently when it is shown
+     * or focused again (Android only).
+     *
+     * @param options Live webview budget and memory pressure behaviour
+     * @returns Promise that resolves when the policy is applied
+     * @since 1.2.0
+     */
+    setHibernationPolicy(options: HibernationPolicyOptions): Promise<void>
+
+    /**
+     * Change what happens to the specified webview while it is hidden (Android only).
+     *
+     * @param options Options specifying the webview and its background policy
+     * @returns Promise that resolves when the policy is applied
+     * @since 1.2.0
+     */
+    setBackgroundPolicy(options: SetBackgroundPolicyOptions): Promise<void>
+
+    /**
+     * Override the renderer process priority of the specified webview. By default the focused webview
+     * is 'important', visible webviews are 'bound' and hidden webviews are 'waived'. Pass no priority
+     * to return to the default (Android 8.0+ only).
+     *
+     * @param options Options specifying the webview and its renderer priority
+     * @returns Promise that resolves when the priority is applied
+     * @since 1.2.0
+     */
+    setRendererPriority(options: SetRendererPriorityOptions): Promise<void>
+
+    /**
+     * Run several operations in one native call and one UI thread task. Layout and registry updates
+     * are applied once at the end. With `atomic`, execution stops at the first failing operation,
+     * every webview created by the batch is destroyed again and the focus, visibility, frames and
+     * stacking order of the other webviews are restored. Destroyed webviews, loaded URLs and sent
+     * messages are not undone (Android only).
+     *
+     * @param options Operations to run, in order
+     * @returns Promise that resolves with the result of each executed operation
+     * @since 1.2.0
+     */
+    batch(options: BatchOptions): Promise<BatchResult>
+
+    /**
+     * Recreate the webviews persisted in the previous run of the app that do not exist yet. Requires
+     * the `persistSession` plugin config (default: false), which persists the id, URL, frame,
+     * creation options and navigation history of every webview until it is destroyed. Only the
+     * previously focused webview is loaded right away; the others are restored hidden and hibernated,
+     * and load their history when they are shown or focused (Android only).
+     *
+     * @returns Promise with the ids of the restored webviews
+     * @since 1.2.0
+     */
+    restoreSession(): Promise<RestoreSessionResult>
+
+    /**
+     * Delete the persisted session. Webviews that still exist are persisted again once they change
+     * (Android only).
+     *
+     * @returns Promise that resolves when the session is deleted
+     * @since 1.2.0
+     */
+    clearSession(): Promise<void>
+
+    /**
+     * Answer a call received with the 'rpcRequest' event (Android only).
+     *
+     * @param options The call and its result or error
+     * @returns Promise that resolves when the reply is queued, or rejects if the call already
+     * completed, e.g. because it timed out or was cancelled
+     * @since 1.2.0
+     */
+    respondRpc(options: RespondRpcOptions): Promise<void>
+
+    /**
+     * Send a file to the page of a webview in chunks, so large or binary payloads never have to be
+     * held in memory as a whole. The page receives 'multiwebview-transfer' events whose detail has
+     * the `transferId` and a `type`: 'start' with `size` and `mimeType`, 'chunk' with `index`,
+     * `offset` and the bytes as a Uint8Array in `data`, then 'end' with `size`, or 'cancel'. The next
+     * chunk is only read once the page ran the previous one (Android only).
+     *
+     * @param options The webview, transfer id and file
+     * @returns Promise that resolves with the number of bytes sent once the page received the last
+     * chunk, or rejects if the transfer was cancelled or the page went away
+     * @since 1.2.0
+     */
+    sendTransfer(options: SendTransferOptions): Promise<SendTransferResult>
+
+    /**
+     * Cancel a transfer to or from a page (Android only).
+     *
+     * @param options The webview and transfer id
+     * @returns Promise that resolves when the transfer is cancelled, or rejects if it is not in
+     * progress
+     * @since 1.2.0
+     */
+    cancelTransfer(options: TransferOptions): Promise<void>
+
+    /**
+     * Delete the file of a transfer received with the 'transferReceived' event (Android only).
+     *
+     * @param options The path of the file
+     * @returns Promise that resolves when the file is deleted
+     * @since 1.2.0
+     */
+    releaseTransfer(options: ReleaseTransferOptions): Promise<void>
 
     /**
      * Add a listener for messages from webviews.
@@ -133,6 +489,16 @@ export interface MsAppMultiWebviewPlugin {
      */
     addListener(eventName: 'message', listenerFunc: (event: MessageEvent) => void): Promise<PluginListenerHandle>
 
+    /**
+     * Add a listener for batches of messages from webviews created with inboundBatching.
+     *
+     * @param eventName The event name ('messages')
+     * @param listenerFunc The function to call when a batch of messages is received
+     * @returns A promise with a remove function
+     * @since 1.2.0
+     */
+    addListener(eventName: 'messages', listenerFunc: (event: MessagesEvent) => void): Promise<PluginListenerHandle>
+
     /**
      * Add a listener for webview lifecycle events.
      *
@@ -146,6 +512,110 @@ export interface MsAppMultiWebviewPlugin {
         listenerFunc: (event: WebviewLifecycleEvent) => void,
     ): Promise<PluginListenerHandle>
 
+    /**
+     * Add a listener for renderer process terminations. The affected webview is recreated right away if
+     * it is visible, otherwise when it is next shown or focused (Android only).
+     *
+     * @param eventName The event name ('renderProcessGone')
+     * @param listenerFunc The function to call when the event occurs
+     * @returns A promise with a remove function
+     * @since 1.2.0
+     */
+    addListener(
+        eventName: 'renderProcessGone',
+        listenerFunc: (event: RenderProcessGoneEvent) => void,
+    ): Promise<PluginListenerHandle>
+
+    /**
+     * Add a listener for prerendered pages that finished loading (Android only).
+     *
+     * @param eventName The event name ('prerendered')
+     * @param listenerFunc The function to call when the event occurs
+     * @returns A promise with a remove function
+     * @since 1.2.0
+     */
+    addListener(eventName: 'prerendered', listenerFunc: (event: WebviewLoadEvent) => void): Promise<PluginListenerHandle>
+
+    /**
+     * Add a listener for periodic metrics, enabled with setMetricsInterval (Android only).
+     *
+     * @param eventName The event name ('metrics')
+     * @param listenerFunc The function to call with the metrics
+     * @returns A promise with a remove function
+     * @since 1.2.0
+     */
+    addListener(eventName: 'metrics', listenerFunc: (event: MetricsResult) => void): Promise<PluginListenerHandle>
+
+    /**
+     * Add a listener for calls from pages that have no native handler; answer each with respondRpc.
+     * Pages call `window.MultiWebviewBridge.call(callId, method, JSON.stringify(params), timeoutMs)`
+     * with a call id that is unique among their pending calls, and receive the reply as a
+     * 'multiwebview-rpc' event whose detail has the call id in `id` and either `result` or `error`.
+     * Calls can be in flight concurrently and are answered in any order. A call fails after
+     * `timeoutMs` (0 = 30 seconds), when the page cancels it with
+     * `window.MultiWebviewBridge.cancelCall(callId)`, or immediately if nobody listens for this event.
+     * Pending calls are dropped when the page navigates (Android only).
+     *
+     * @param eventName The event name ('rpcRequest')
+     * @param listenerFunc The function to call with the request
+     * @returns A promise with a remove function
+     * @since 1.2.0
+     */
+    addListener(eventName: 'rpcRequest', listenerFunc: (event: RpcRequestEvent) => void): Promise<PluginListenerHandle>
+
+    /**
+     * Add a listener for transfers from pages. A page sends a large or binary payload with
+     * `window.MultiWebviewBridge.beginTransfer(transferId, JSON.stringify({size, mimeType, name}))`,
+     * which returns an error message or null, then `writeTransfer(transferId, chunk)` for each chunk
+     * and finally `endTransfer(transferId)`. The size in bytes is required and at most 256 MB; a
+     * transfer is also refused while other transfers in progress would exceed 512 MB in total, or if
+     * nobody listens for this event. Chunks are binary strings with one char per byte, e.g.
+     * `String.fromCharCode.apply(null, bytes)` for a Uint8Array, of at most 4 MB. They are not JSON
+     * or base64 encoded. Each write returns once the chunk is on disk. It returns false if the
+     * transfer was cancelled, which also happens when a chunk is too large, exceeds the announced
+     * size or contains chars above 0xFF. `endTransfer` returns false unless exactly the announced
+     * size was received and a listener took the file. The payload is stored in a file of the app
+     * cache directory that belongs to the listener; delete it with releaseTransfer. Transfers in
+     * progress are cancelled when the page navigates (Android only).
+     *
+     * @param eventName The event name ('transferReceived')
+     * @param listenerFunc The function to call with the received file
+     * @returns A promise with a remove function
+     * @since 1.2.0
+     */
+    addListener(
+        eventName: 'transferReceived',
+        listenerFunc: (event: TransferReceivedEvent) => void,
+    ): Promise<PluginListenerHandle>
+
+    /**
+     * Add a listener for the progress of transfers in both directions, sent once per chunk. Use
+     * setEventFilter with `coalesce` to receive at most one per frame (Android only).
+     *
+     * @param eventName The event name ('transferProgress')
+     * @param listenerFunc The function to call with the progress
+     * @returns A promise with a remove function
+     * @since 1.2.0
+     */
+    addListener(
+        eventName: 'transferProgress',
+        listenerFunc: (event: TransferProgressEvent) => void,
+    ): Promise<PluginListenerHandle>
+
+    /**
+     * Add a listener for transfers that were cancelled by the page, the host or because the page
+     * went away (Android only).
+     *
+     * @param eventName The event name ('transferCancelled')
+     * @param listenerFunc The function to call when a transfer is cancelled
+     * @returns A promise with a remove function
+     * @since 1.2.0
+     */
+    addListener(
+        eventName: 'transferCancelled',
+        listenerFunc: (event: TransferCancelledEvent) => void,
+    ): Promise<PluginListenerHandle>
+
     /**
      * Add a listener for webview load events.
      *
@@ -187,10 +657,18 @@ export interface CreateWebviewOptions {
     frame?: WebviewFrame
 
     /**
-     * Whether to automatically focus this webview after creation (default: true)
+     * Whether to automatically focus this webview after creation (default: true, or false with `prerender`)
      */
     autoFocus?: boolean
 
+    /**
+     * Prerender the page off-screen if the webview is created hidden: it loads after all other webviews,
+     * is paused once loaded and becomes a regular webview when it is shown or focused. At most
+     * `maxPrerenders` (plugin config, default: 2, 0 = no limit) prerenders are kept live; older ones are
+     * hibernated. Prerenders do not count towards `maxLiveWebviews` (Android only, default: false)
+     */
+    prerender?: boolean
+
     /**
      * Whether to enable JavaScript in the webview (default: true)
      */
@@ -205,7 +683,62 @@ export interface CreateWebviewOptions {
      * User agent string (optional)
      */
     userAgent?: string
-}
+
+    /**
+     * Maximum number of undelivered messages queued for this webview; the oldest message is
+     * dropped when the queue is full (default: 1000, Android only)
+     */
+    maxMessageQueueDepth?: number
+
+    /**
+     * What happens to the webview while it is hidden (default: 'run', or the `backgroundPolicy` plugin config).
+     * See {@link BackgroundPolicy}.
+     */
+    backgroundPolicy?: BackgroundPolicy
+
+    /**
+     * Whether messages are exchanged over a WebMessagePort channel instead of script evaluation.
+     * The page keeps using window.MultiWebviewBridge.postMessage and the 'multiwebview-message'
+     * event (default: false, Android 6+ only)
+     */
+    messageChannel?: boolean
+
+    /**
+     * Whether messages posted by the page are delivered in batches as a single 'messages' event per
+     * batch window instead of one 'message' event each (default: false, Android only)
+     */
+    inboundBatching?: boolean
+
+    /**
+     * Time window in milliseconds in which posted messages are collected into one batch (default: 16)
+     */
+    inboundBatchWindowMs?: number
+
+    /**
+     * Maximum number of posted messages waiting to be delivered, counting each message of a
+     * postMessages batch (default: 500)
+     */
+    inboundQueueDepth?: number
+
+    /**
+     * What happens when the inbound queue is full: drop the new message, drop the oldest queued
+     * messages, or block the posting page briefly until there is room (default: 'dropNewest').
+     * A batch is kept or dropped as a whole; a batch larger than the queue is always dropped.
+     */
+    inboundOverflow?: 'dropNewest' | 'dropOldest' | 'block'
+
+    /**
+     * Whether the page may exchange messages with pages of other webviews through
+     * window.MultiWebviewBridge.subscribe, publish and postTo. Only enable this for trusted pages
+     * (default: false, Android only)
+     */
+    routing?: boolean
+
+    /**
+     * Ids of the webviews the page may exchange messages with; both sides must allow each other.
+     * Omit to allow every webview created with `routing` (Android only)
+     */
+    routingPeers?: string[]
 
 /**
  * Options for setting the focused webview
@@ -225,6 +758,11 @@ export interface FocusedWebviewResult {
      * Identifier of the currently focused webview, or null if none
      */
     id: string | null
+
+    /**
+     * Registry version the result was read from (Android only)
+     */
+    version?: number
 }
 
 /**
@@ -250,6 +788,12 @@ export interface LoadUrlOptions {
      * URL to load
      */
     url: string
+
+    /**
+     * Prerender the page if the webview is hidden, like the `prerender` option of `createWebview`
+     * (Android only, default: false)
+     */
+    prerender?: boolean
 }
 
 /**
@@ -260,6 +804,11 @@ export interface ListWebviewsResult {
      * Array of webview identifiers
      */
     webviews: string[]
+
+    /**
+     * Registry version the result was read from (Android only)
+     */
+    version?: number
 }
 
 /**
@@ -285,49 +834,162 @@ export interface WebviewInfo {
      * Whether this webview is currently focused
      */
     isFocused: boolean
-}
 
-/**
- * Result of getting all webviews with details
- */
-export interface AllWebviewsResult {
     /**
-     * Array of webview information objects
+     * Whether this webview is hibernated (its renderer was released and it is restored on show/focus)
      */
-    webviews: WebviewInfo[]
-}
+    isHibernated?: boolean
 
-/**
- * Options for getting webviews by URL
- */
-export interface GetWebviewsByUrlOptions {
     /**
-     * URL to search for (exact match or contains, depending on exactMatch parameter)
+     * Whether this webview is not hidden but fully covered by webviews above it or off-screen. Occluded
+     * webviews are not drawn and are throttled like hidden ones; the focused webview is never paused
+     * (Android only)
      */
-    url: string
+    isOccluded?: boolean
 
     /**
-     * Whether to use exact match (true) or contains match (false, default)
+     * Whether the message port channel to the current page is open (only for webviews created with messageChannel)
      */
-    exactMatch?: boolean
-}
+    isChannelOpen?: boolean
 
-/**
- * Result of getting webviews by URL
- */
-export interface WebviewsByUrlResult {
     /**
-     * Array of webview identifiers that match the URL criteria
+     * Number of messages posted by the page that were dropped because the inbound queue was full
      */
-    webviews: string[]
-}
+    droppedMessages?: number
 
-/**
- * Frame/bounds for a webview
- */
-export interface WebviewFrame {
     /**
-     * X coordinate (in points/pixels)
+     * Number of requests of the webview blocked by the content blocker (Android only)
+     */
+    blockedRequests?: number
+
+    /**
+     * Lifecycle state of the webview's page (Android only):
+     * - 'active': running normally
+     * - 'paused': paused by its background policy
+     * - 'timersPaused': paused, and JavaScript timers of all webviews are paused because the app is in
+     *   the background
+     * - 'hibernated': the page was released and is restored on show/focus
+     */
+    lifecycleState?: 'active' | 'paused' | 'timersPaused' | 'hibernated'
+
+    /**
+     * Whether a page load started by the plugin is in flight (Android only)
+     */
+    isLoading?: boolean
+
+    /**
+     * Zero-based position of the webview's pending load in the load queue, or null if no load is
+     * queued. Loads of the focused webview start first, then those of visible and hidden webviews, with
+     * at most `maxBackgroundLoads` (plugin config, default: 2, 0 = no limit) background loads in flight
+     * (Android only)
+     */
+    loadQueuePosition?: number | null
+
+    /**
+     * Prerender state of the webview, or null if it is not a prerender (Android only):
+     * - 'loading': the page is loading in the background
+     * - 'ready': the page finished loading and is paused until it is shown or focused
+     */
+    prerenderState?: 'loading' | 'ready' | null
+
+    /**
+     * Renderer priority currently applied to the webview, or null if it has no live renderer
+     * (Android 8.0+ only)
+     */
+    rendererPriority?: RendererPriority | null
+
+    /**
+     * Registry version the information was read from (Android only)
+     */
+    version?: number
+}
+
+/**
+ * Result of getting all webviews with details
+ */
+export interface AllWebviewsResult {
+    /**
+     * Array of webview information objects
+     */
+    webviews: WebviewInfo[]
+
+    /**
+     * Registry version the result was read from (Android only)
+     */
+    version?: number
+}
+
+/**
+ * Result of getting the registry version
+ */
+export interface RegistryVersionResult {
+    /**
+     * Current registry version
+     */
+    version: number
+}
+
+/**
+ * Options for getting webviews by URL
+ */
+export interface GetWebviewsByUrlOptions {
+    /**
+     * URL to search for (exact match or contains, depending on exactMatch parameter)
+     */
+    url: string
+
+    /**
+     * Whether to use exact match (true) or contains match (false, default)
+     */
+    exactMatch?: boolean
+
+    /**
+     * How to match the URL, takes precedence over exactMatch (Android only):
+     * - 'contains': the webview URL contains the given string
+     * - 'exact': the webview URL equals the given URL
+     * - 'host': the webview URL is on the given host (pass just the host name)
+     * - 'prefix': same host and the webview path starts with the given path, on segment boundaries
+     * - 'glob': the webview URL matches the pattern, where '*' matches any characters and '?' one character
+     */
+    match?: 'contains' | 'exact' | 'host' | 'prefix' | 'glob'
+}
+
+/**
+ * Result of getting webviews by URL
+ */
+export interface WebviewsByUrlResult {
+    /**
+     * Array of webview identifiers that match the URL criteria
+     */
+    webviews: string[]
+}
+
+/**
+ * Options for resolving URL owners
+ */
+export interface ResolveUrlOwnersOptions {
+    /**
+     * URLs to resolve
+     */
+    urls: string[]
+}
+
+/**
+ * Result of resolving URL owners
+ */
+export interface UrlOwnersResult {
+    /**
+     * Identifier of the owning webview per URL, or null if no webview owns it
+     */
+    owners: { [url: string]: string | null }
+}
+
+/**
+ * Frame/bounds for a webview
+ */
+export interface WebviewFrame {
+    /**
+     * X coordinate (in points/pixels)
      */
     x: number
 
@@ -360,6 +1022,53 @@ export interface SetWebviewFrameOptions {
      * New frame for the webview
      */
     frame: WebviewFrame
+
+    /**
+     * Whether to coalesce high-frequency updates: only the latest frame set before the next display
+     * frame is applied, and the promise resolves once the frame is queued for it (default: false,
+     * Android only)
+     */
+    coalesce?: boolean
+}
+
+/**
+ * Options for animating a webview's frame
+ */
+export interface AnimateWebviewFrameOptions {
+    /**
+     * Identifier of the webview
+     */
+    id: string
+
+    /**
+     * Start frame (defaults to the current frame)
+     */
+    from?: WebviewFrame
+
+    /**
+     * Target frame
+     */
+    to: WebviewFrame
+
+    /**
+     * Duration in milliseconds (default: 300)
+     */
+    duration?: number
+
+    /**
+     * Timing curve (default: 'easeInOut')
+     */
+    interpolator?: 'linear' | 'easeIn' | 'easeOut' | 'easeInOut'
+}
+
+/**
+ * Result of animating a webview's frame
+ */
+export interface AnimateWebviewFrameResult {
+    /**
+     * Whether the animation ran to the end (false if it was interrupted by another frame change)
+     */
+    completed: boolean
 }
 
 /**
@@ -387,6 +1096,68 @@ export interface ExecuteJavaScriptResult {
     result?: string
 }
 
+/**
+ * Options for registering a script
+ */
+export interface RegisterScriptOptions {
+    /**
+     * Identifier of the webview
+     */
+    id: string
+
+    /**
+     * Expression evaluating to a function, e.g. `(args) => document.querySelectorAll(args.selector).length`.
+     * The function is called with the invocation arguments and must return a JSON-serializable value
+     * synchronously.
+     */
+    code: string
+}
+
+/**
+ * Result of registering a script
+ */
+export interface RegisterScriptResult {
+    /**
+     * Handle to invoke the script with
+     */
+    handle: string
+}
+
+/**
+ * Options identifying a registered script
+ */
+export interface ScriptHandleOptions {
+    /**
+     * Identifier of the webview
+     */
+    id: string
+
+    /**
+     * Handle returned by registerScript
+     */
+    handle: string
+}
+
+/**
+ * Options for invoking a registered script
+ */
+export interface InvokeScriptOptions extends ScriptHandleOptions {
+    /**
+     * Arguments passed to the script function
+     */
+    args?: unknown
+}
+
+/**
+ * Result of invoking a registered script
+ */
+export interface InvokeScriptResult {
+    /**
+     * Value returned by the script, or null if it returned undefined
+     */
+    result: unknown
+}
+
 /**
  * Options for sending a message to a webview
  */
@@ -400,21 +1171,1005 @@ export interface SendMessageOptions {
      * Message data to send (will be JSON serialized)
      */
     data: unknown
+
+    /**
+     * Coalescing key; a queued message with the same key that was not yet delivered is replaced
+     * by this one (Android only)
+     */
+    coalesceKey?: string
 }
 
 /**
- * Event received when a webview sends a message
+ * Result of sending a message to a webview
  */
-export interface MessageEvent {
+export interface SendMessageResult {
     /**
-     * Identifier of the webview that sent the message
+     * Whether the message was replaced by a newer message with the same coalescing key
+     * before it could be delivered
      */
-    id: string
+    coalesced?: boolean
+}
 
+/**
+ * Options for broadcasting a message to several webviews. Filters are combined; omitted filters
+ * match every webview.
+ */
+export interface BroadcastMessageOptions {
     /**
-     * Message data
+     * Message data to send (will be JSON serialized)
      */
     data: unknown
+
+    /**
+     * Only send to these webviews
+     */
+    ids?: string[]
+
+    /**
+     * Only send to webviews whose current URL matches this glob pattern (see getWebviewsByUrl)
+     */
+    urlPattern?: string
+
+    /**
+     * Only send to visible or hidden webviews; the focused webview counts as visible (default: 'all')
+     */
+    visibility?: 'all' | 'visible' | 'hidden'
+
+    /**
+     * Only send to webviews whose page subscribed to this topic; also passed as `topic` in the
+     * event detail
+     */
+    topic?: string
+
+    /**
+     * Coalescing key; a queued message with the same key that was not yet delivered is replaced
+     * by this one
+     */
+    coalesceKey?: string
+}
+
+/**
+ * Result of broadcasting a message
+ */
+export interface BroadcastMessageResult {
+    /**
+     * Identifiers of the webviews the message was queued for
+     */
+    recipients: string[]
+}
+
+/**
+ * Options for configuring the webview pool
+ */
+export interface ConfigurePoolOptions {
+    /**
+     * Number of pre-initialized webviews to keep ready (default: 1, or the `poolSize` plugin config)
+     */
+    size?: number
+
+    /**
+     * Whether destroyed webviews are reset and returned to the pool instead of being freed
+     * (default: false, or the `recycleOnDestroy` plugin config). A recycled webview starts with an
+     * empty history and cleared sessionStorage. Cookies, localStorage, IndexedDB and the HTTP cache
+     * are shared by all webviews of the app, recycled or not.
+     */
+    recycleOnDestroy?: boolean
+}
+
+/**
+ * Statistics of the webview pool
+ */
+export interface PoolStats {
+    /**
+     * Number of webviews currently waiting in the pool
+     */
+    size: number
+
+    /**
+     * Maximum number of webviews kept in the pool
+     */
+    capacity: number
+
+    /**
+     * Whether destroyed webviews are returned to the pool
+     */
+    recycleOnDestroy: boolean
+
+    /**
+     * Number of createWebview calls served from the pool
+     */
+    hits: number
+
+    /**
+     * Number of createWebview calls that had to create a new webview
+     */
+    misses: number
+
+    /**
+     * Number of destroyed webviews returned to the pool
+     */
+    recycled: number
+}
+
+/**
+ * Options for registering an asset bundle
+ */
+export interface RegisterAssetBundleOptions {
+    /**
+     * Name of the bundle, used as the subdomain of its origin (lowercase letters, digits and dashes)
+     */
+    name: string
+
+    /**
+     * Path of the ZIP archive; relative paths are resolved against the app's files directory. Store
+     * entries uncompressed to serve them without decompression.
+     */
+    path: string
+
+    /**
+     * Version of the bundle, reported by listAssetBundles and used as ETag of its responses
+     */
+    version?: string
+}
+
+/**
+ * Result of registering an asset bundle
+ */
+export interface RegisterAssetBundleResult {
+    /**
+     * Origin the bundle is served under, e.g. 'https://app.bundle.localhost'
+     */
+    origin: string
+}
+
+/**
+ * Options for unregistering an asset bundle
+ */
+export interface UnregisterAssetBundleOptions {
+    /**
+     * Name of the bundle
+     */
+    name: string
+}
+
+/**
+ * Information about a registered asset bundle
+ */
+export interface AssetBundleInfo {
+    /**
+     * Name of the bundle
+     */
+    name: string
+
+    /**
+     * Version of the bundle, if provided on registration
+     */
+    version?: string
+
+    /**
+     * Origin the bundle is served under
+     */
+    origin: string
+
+    /**
+     * Absolute path of the archive
+     */
+    path: string
+
+    /**
+     * Number of files in the bundle
+     */
+    entries: number
+
+    /**
+     * Size of the archive in bytes
+     */
+    size: number
+}
+
+/**
+ * Result of listing asset bundles
+ */
+export interface ListAssetBundlesResult {
+    /**
+     * Registered bundles
+     */
+    bundles: AssetBundleInfo[]
+}
+
+/**
+ * Options for loading content blocker rules
+ */
+export interface SetContentBlockerRulesOptions {
+    /**
+     * Filter list text, one rule per line
+     */
+    rules?: string
+
+    /**
+     * Path of a filter list file, used if `rules` is not provided; relative paths are resolved against
+     * the app's files directory
+     */
+    path?: string
+}
+
+/**
+ * Result of loading content blocker rules
+ */
+export interface ContentBlockerRulesResult {
+    /**
+     * Number of compiled rules
+     */
+    rules: number
+}
+
+/**
+ * Options for overriding the content blocker for a webview
+ */
+export interface ContentBlockerOverridesOptions {
+    /**
+     * Identifier of the webview
+     */
+    id: string
+
+    /**
+     * Domains that are never blocked in this webview
+     */
+    allow?: string[]
+
+    /**
+     * Domains that are always blocked in this webview
+     */
+    block?: string[]
+}
+
+/**
+ * Statistics of the content blocker
+ */
+export interface ContentBlockerStats {
+    /**
+     * Number of rules in the current filter list
+     */
+    rules: number
+
+    /**
+     * Number of times a filter list was loaded or cleared
+     */
+    reloads: number
+
+    /**
+     * Number of subresource requests checked
+     */
+    checked: number
+
+    /**
+     * Number of requests blocked across all webviews
+     */
+    blocked: number
+}
+
+/**
+ * Options for getting metrics
+ */
+export interface GetMetricsOptions {
+    /**
+     * Whether to reset all metrics after reading them (default: false)
+     */
+    reset?: boolean
+}
+
+/**
+ * Options for the periodic metrics event
+ */
+export interface MetricsIntervalOptions {
+    /**
+     * Interval in milliseconds, or 0 to stop the event
+     */
+    interval: number
+}
+
+/**
+ * Result of restoring the persisted session
+ */
+export interface RestoreSessionResult {
+    /**
+     * Identifiers of the restored webviews, in their previous order
+     */
+    ids: string[]
+}
+
+/**
+ * Options for filtering an event
+ */
+export interface EventFilterOptions {
+    /**
+     * Name of the event, e.g. 'loadStart', or '*' for every event without its own filter
+     * (default: '*')
+     */
+    event?: string
+
+    /**
+     * Only emit the event for these webviews; events not about a webview are not filtered.
+     * Omit to emit it for every webview.
+     */
+    ids?: string[]
+
+    /**
+     * Emit only the latest event per webview once per frame (default: false). Only applies to
+     * 'loadStart', 'transferProgress' and 'metrics'; other events are never dropped, even with the
+     * '*' filter. A pending coalesced event is emitted before any later event about the same webview.
+     */
+    coalesce?: boolean
+}
+
+/**
+ * Options for removing an event filter
+ */
+export interface ClearEventFilterOptions {
+    /**
+     * Name of the event, or '*'; omit to remove every filter
+     */
+    event?: string
+}
+
+/**
+ * Event emission statistics
+ */
+export interface EventStats {
+    /**
+     * Number of events emitted to listeners
+     */
+    emitted: number
+
+    /**
+     * Number of events that were not built because they had no listeners or were filtered out
+     */
+    skipped: number
+
+    /**
+     * Number of coalesced events that were replaced by a newer one before they were emitted
+     */
+    coalesced: number
+}
+
+/**
+ * Summary of a latency histogram. Values are in milliseconds; percentiles are upper bounds of
+ * power-of-two buckets.
+ */
+export interface LatencyHistogram {
+    /**
+     * Number of recorded values
+     */
+    count: number
+
+    /**
+     * Mean value
+     */
+    mean: number
+
+    /**
+     * Largest value
+     */
+    max: number
+
+    /**
+     * Median
+     */
+    p50: number
+
+    /**
+     * 90th percentile
+     */
+    p90: number
+
+    /**
+     * 99th percentile
+     */
+    p99: number
+
+    /**
+     * Counts per bucket: bucket 0 holds values below 1 microsecond, bucket i values from 2^(i-1) up to
+     * 2^i microseconds
+     */
+    buckets: number[]
+}
+
+/**
+ * Metrics of a webview, or the totals over all webviews
+ */
+export interface WebviewMetrics {
+    /**
+     * Time from the start to the end of page loads
+     */
+    pageLoad: LatencyHistogram
+
+    /**
+     * Round trip time of executeJavaScript calls
+     */
+    evaluateJavascript: LatencyHistogram
+
+    /**
+     * Number of finished page loads
+     */
+    pageLoads: number
+
+    /**
+     * Number of failed main frame loads
+     */
+    loadErrors: number
+
+    /**
+     * Number of messages received from pages
+     */
+    messagesIn: number
+
+    /**
+     * Number of messages sent to pages
+     */
+    messagesOut: number
+
+    /**
+     * UTF-16 characters received from pages
+     */
+    charsIn: number
+
+    /**
+     * UTF-16 characters sent to pages
+     */
+    charsOut: number
+}
+
+/**
+ * Performance metrics of the plugin
+ */
+export interface MetricsResult {
+    /**
+     * Totals over all webviews, including destroyed ones
+     */
+    global: WebviewMetrics & {
+        /**
+         * Time native calls waited for the UI thread
+         */
+        uiQueueDelay: LatencyHistogram
+    }
+
+    /**
+     * Metrics of each existing webview by id
+     */
+    webviews: { [id: string]: WebviewMetrics }
+
+    /**
+     * Time from the start of page-to-host calls until they completed, and their number of errors,
+     * by method
+     */
+    rpc: { [method: string]: LatencyHistogram & { errors: number } }
+}
+
+/**
+ * Options for configuring the asset cache
+ */
+export interface ConfigureAssetCacheOptions {
+    /**
+     * Whether requests are served from the cache (unchanged if omitted)
+     */
+    enabled?: boolean
+
+    /**
+     * Maximum size of the cache on disk in bytes; least recently used entries are evicted beyond it
+     * (default: 52428800, unchanged if omitted)
+     */
+    maxSize?: number
+
+    /**
+     * Whether to remove all cached entries (default: false)
+     */
+    clear?: boolean
+}
+
+/**
+ * Options for getting a webview thumbnail
+ */
+export interface WebviewSnapshotOptions {
+    /**
+     * Identifier of the webview
+     */
+    id: string
+
+    /**
+     * Image format (default: 'jpeg')
+     */
+    format?: 'jpeg' | 'png' | 'webp'
+
+    /**
+     * Compression quality from 0 to 100, ignored for png (default: 80)
+     */
+    quality?: number
+}
+
+/**
+ * Thumbnail of a webview
+ */
+export interface WebviewSnapshotResult {
+    /**
+     * Image as a data URL; omitted if no thumbnail was captured
+     */
+    data?: string
+
+    /**
+     * Width of the image in pixels
+     */
+    width?: number
+
+    /**
+     * Height of the image in pixels
+     */
+    height?: number
+
+    /**
+     * Time the thumbnail was captured, in milliseconds since the epoch
+     */
+    capturedAt?: number
+}
+
+/**
+ * Statistics of the thumbnail cache
+ */
+export interface SnapshotCacheStats {
+    /**
+     * Number of cached thumbnails
+     */
+    snapshots: number
+
+    /**
+     * Memory used by the cached thumbnails in bytes
+     */
+    bytes: number
+
+    /**
+     * Memory budget in bytes
+     */
+    maxBytes: number
+
+    /**
+     * Number of bitmaps kept for reuse
+     */
+    pooledBitmaps: number
+}
+
+/**
+ * Statistics of the asset cache
+ */
+export interface AssetCacheStats {
+    /**
+     * Whether requests are served from the cache
+     */
+    enabled: boolean
+
+    /**
+     * Current size of the cache on disk in bytes
+     */
+    size: number
+
+    /**
+     * Maximum size of the cache on disk in bytes
+     */
+    maxSize: number
+
+    /**
+     * Number of cached entries
+     */
+    entries: number
+
+    /**
+     * Number of requests handled by the cache
+     */
+    requests: number
+
+    /**
+     * Number of requests served from a fresh entry
+     */
+    hits: number
+
+    /**
+     * Number of requests served from a stale entry after the server confirmed it is unchanged
+     */
+    revalidated: number
+
+    /**
+     * Number of requests that were fetched from the network
+     */
+    misses: number
+
+    /**
+     * Number of requests that shared a fetch already in progress for another request
+     */
+    collapsed: number
+
+    /**
+     * Share of requests that did not need a full download (hits, revalidations and shared fetches)
+     */
+    hitRatio: number
+
+    /**
+     * Number of response bytes served without downloading them
+     */
+    bytesSaved: number
+
+    /**
+     * Number of entries evicted to stay within the maximum size
+     */
+    evictions: number
+}
+
+/**
+ * Options for the hibernation of hidden webviews
+ */
+export interface HibernationPolicyOptions {
+    /**
+     * Maximum number of webviews kept live; least recently used hidden webviews beyond this budget
+     * are hibernated; 0 means no limit (default: the current value, initially the `maxLiveWebviews`
+     * plugin config or 0)
+     */
+    maxLiveWebviews?: number
+
+    /**
+     * Whether hidden webviews are hibernated when the system reports memory pressure (default: the
+     * current value, initially the `hibernateOnMemoryPressure` plugin config or false)
+     */
+    hibernateOnMemoryPressure?: boolean
+}
+
+/**
+ * Background policy of a hidden webview:
+ * - 'run': keep running at full speed
+ * - 'pause': pause the page (throttles JavaScript timers, animations and media) while hidden
+ * - 'pauseTimers': like 'pause', and additionally pause JavaScript timers of all webviews while the
+ *   app is in the background. Timers keep running while the app is in the foreground, because
+ *   pausing them would also stop the app's own webview.
+ *
+ * The focused webview is never paused.
+ */
+export type BackgroundPolicy = 'run' | 'pause' | 'pauseTimers'
+
+/**
+ * Options for setting the background policy of a webview
+ */
+export interface SetBackgroundPolicyOptions {
+    /**
+     * Identifier of the webview
+     */
+    id: string
+
+    /**
+     * New background policy
+     */
+    policy: BackgroundPolicy
+}
+
+/**
+ * Renderer process priority of a webview (Android 8.0+ only). Under memory pressure the system
+ * kills 'waived' renderers first and 'important' renderers last.
+ */
+export type RendererPriority = 'important' | 'bound' | 'waived'
+
+/**
+ * Options for setting the renderer priority of a webview
+ */
+export interface SetRendererPriorityOptions {
+    /**
+     * Identifier of the webview
+     */
+    id: string
+
+    /**
+     * Priority to apply, or omit to derive it from the focus and visibility of the webview again
+     */
+    priority?: RendererPriority
+}
+
+/**
+ * Event emitted when the renderer process of a webview terminated
+ */
+export interface RenderProcessGoneEvent {
+    /**
+     * Identifier of the webview
+     */
+    id: string
+
+    /**
+     * Whether the renderer crashed, as opposed to being killed by the system to reclaim memory
+     */
+    didCrash: boolean
+}
+
+/**
+ * A single operation of a batch
+ */
+export type BatchOperation =
+    | ({ method: 'createWebview' } & CreateWebviewOptions)
+    | ({ method: 'setFocusedWebview' } & SetFocusedWebviewOptions)
+    | ({ method: 'hideWebview' | 'showWebview' | 'destroyWebview' } & WebviewIdentifier)
+    | ({ method: 'loadUrl' } & LoadUrlOptions)
+    | ({ method: 'setWebviewFrame' } & SetWebviewFrameOptions)
+    | ({ method: 'sendMessage' } & SendMessageOptions)
+
+/**
+ * Options for running a batch of operations
+ */
+export interface BatchOptions {
+    /**
+     * Operations to run, in order
+     */
+    operations: BatchOperation[]
+
+    /**
+     * Whether to stop at the first failure, destroy the webviews created by the batch and restore the
+     * layout of the others (default: false)
+     */
+    atomic?: boolean
+}
+
+/**
+ * Result of a single batch operation
+ */
+export interface BatchOperationResult {
+    /**
+     * Method of the operation
+     */
+    method: string
+
+    /**
+     * Whether the operation succeeded
+     */
+    success: boolean
+
+    /**
+     * Error message if the operation failed
+     */
+    error?: string
+}
+
+/**
+ * Result of running a batch of operations
+ */
+export interface BatchResult {
+    /**
+     * Results of the executed operations, in order
+     */
+    results: BatchOperationResult[]
+
+    /**
+     * Whether all executed operations succeeded
+     */
+    success: boolean
+
+    /**
+     * Whether an atomic batch was rolled back after a failure
+     */
+    rolledBack: boolean
+}
+
+/**
+ * Event received when a webview sends a message
+ */
+export interface MessageEvent {
+    /**
+     * Identifier of the webview that sent the message
+     */
+    id: string
+
+    /**
+     * Message data
+     */
+    data: unknown
+}
+
+/**
+ * Call from a page to the host app
+ */
+export interface RpcRequestEvent {
+    /**
+     * Identifier of the calling webview
+     */
+    id: string
+
+    /**
+     * Identifier of the call, chosen by the page
+     */
+    callId: string
+
+    /**
+     * Called method
+     */
+    method: string
+
+    /**
+     * Parameters of the call
+     */
+    params: unknown
+}
+
+/**
+ * Options for answering a call from a page
+ */
+export interface RespondRpcOptions {
+    /**
+     * Identifier of the calling webview
+     */
+    id: string
+
+    /**
+     * Identifier of the call
+     */
+    callId: string
+
+    /**
+     * Result of the call (will be JSON serialized)
+     */
+    result?: unknown
+
+    /**
+     * Error message; if set, the call fails instead
+     */
+    error?: string
+}
+
+/**
+ * Identifies a transfer to or from a page
+ */
+export interface TransferOptions {
+    /**
+     * Identifier of the webview
+     */
+    id: string
+
+    /**
+     * Identifier of the transfer, unique among the transfers of the webview in progress
+     */
+    transferId: string
+}
+
+/**
+ * Options for sending a file to a page
+ */
+export interface SendTransferOptions extends TransferOptions {
+    /**
+     * Path or file:// URL of the file to send
+     */
+    path: string
+
+    /**
+     * MIME type passed to the page with the 'start' event
+     * @default 'application/octet-stream'
+     */
+    mimeType?: string
+
+    /**
+     * Bytes per chunk, at most 4 MB
+     * @default 262144
+     */
+    chunkSize?: number
+}
+
+/**
+ * Result of sending a file to a page
+ */
+export interface SendTransferResult {
+    /**
+     * Number of bytes sent
+     */
+    bytes: number
+}
+
+/**
+ * Options for deleting a received transfer
+ */
+export interface ReleaseTransferOptions {
+    /**
+     * Path of the file from the 'transferReceived' event
+     */
+    path: string
+}
+
+/**
+ * Payload received from a page
+ */
+export interface TransferReceivedEvent {
+    /**
+     * Identifier of the sending webview
+     */
+    id: string
+
+    /**
+     * Identifier of the transfer, chosen by the page
+     */
+    transferId: string
+
+    /**
+     * Path of the file holding the payload
+     */
+    path: string
+
+    /**
+     * Size of the payload in bytes
+     */
+    size: number
+
+    /**
+     * MIME type announced by the page, if any
+     */
+    mimeType?: string
+
+    /**
+     * Name announced by the page, if any
+     */
+    name?: string
+}
+
+/**
+ * Progress of a transfer
+ */
+export interface TransferProgressEvent {
+    /**
+     * Identifier of the webview
+     */
+    id: string
+
+    /**
+     * Identifier of the transfer
+     */
+    transferId: string
+
+    /**
+     * 'in' for transfers from the page, 'out' for transfers to the page
+     */
+    direction: 'in' | 'out'
+
+    /**
+     * Bytes transferred so far
+     */
+    bytes: number
+
+    /**
+     * Total size in bytes, or -1 if a page did not announce it
+     */
+    total: number
+}
+
+/**
+ * A cancelled transfer
+ */
+export interface TransferCancelledEvent {
+    /**
+     * Identifier of the webview
+     */
+    id: string
+
+    /**
+     * Identifier of the transfer
+     */
+    transferId: string
+
+    /**
+     * 'in' for transfers from the page, 'out' for transfers to the page
+     */
+    direction: 'in' | 'out'
+}
+
+/**
+ * Event received with a batch of messages sent by a webview.
+ * Pages can post several messages at once with window.MultiWebviewBridge.postMessages(JSON.stringify([...])).
+ */
+export interface MessagesEvent {
+    /**
+     * Identifier of the webview that sent the messages
+     */
+    id: string
+
+    /**
+     * Message data, in the order the messages were posted
+     */
+    messages: unknown[]
 }
 
 /**
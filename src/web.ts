@@ -1,19 +1,64 @@
 /* eslint-disable @typescript-eslint/no-unused-vars */
 import type {
     AllWebviewsResult,
+    AnimateWebviewFrameOptions,
+    AnimateWebviewFrameResult,
+    AssetCacheStats,
+    BatchOptions,
+    BatchResult,
+    BroadcastMessageOptions,
+    BroadcastMessageResult,
+    ClearEventFilterOptions,
+    ConfigureAssetCacheOptions,
+    ConfigurePoolOptions,
+    ContentBlockerOverridesOptions,
+    ContentBlockerRulesResult,
+    ContentBlockerStats,
     CreateWebviewOptions,
+    EventFilterOptions,
+    EventStats,
     ExecuteJavaScriptOptions,
     ExecuteJavaScriptResult,
     FocusedWebviewResult,
+    GetMetricsOptions,
     GetWebviewsByUrlOptions,
+    HibernationPolicyOptions,
+    InvokeScriptOptions,
+    InvokeScriptResult,
+    ListAssetBundlesResult,
     ListWebviewsResult,
     LoadUrlOptions,
+    MetricsIntervalOptions,
+    MetricsResult,
     MsAppMultiWebviewPlugin,
+    PoolStats,
+    RegisterAssetBundleOptions,
+    RegisterAssetBundleResult,
+    RegisterScriptOptions,
+    RegisterScriptResult,
+    RegistryVersionResult,
+    ReleaseTransferOptions,
+    ResolveUrlOwnersOptions,
+    RespondRpcOptions,
+    RestoreSessionResult,
+    ScriptHandleOptions,
     SendMessageOptions,
+    SendMessageResult,
+    SendTransferOptions,
+    SendTransferResult,
+    SetBackgroundPolicyOptions,
+    SetContentBlockerRulesOptions,
     SetFocusedWebviewOptions,
+    SetRendererPriorityOptions,
     SetWebviewFrameOptions,
+    SnapshotCacheStats,
+    TransferOptions,
+    UnregisterAssetBundleOptions,
+    UrlOwnersResult,
     WebviewIdentifier,
     WebviewInfo,
+    WebviewSnapshotOptions,
+    WebviewSnapshotResult,
     WebviewsByUrlResult,
 } from './definitions'
 import { WebPlugin } from '@capacitor/core'
@@ -59,19 +104,155 @@ export class MsAppMultiWebviewWeb extends WebPlugin implements MsAppMultiWebview
         throw this.unimplemented('Not implemented on web.')
     }
 
+    async getRegistryVersion(): Promise<RegistryVersionResult> {
+        throw this.unimplemented('Not implemented on web.')
+    }
+
     async getWebviewsByUrl(_options: GetWebviewsByUrlOptions): Promise<WebviewsByUrlResult> {
         throw this.unimplemented('Not implemented on web.')
     }
 
+    async resolveUrlOwners(_options: ResolveUrlOwnersOptions): Promise<UrlOwnersResult> {
+        throw this.unimplemented('Not implemented on web.')
+    }
+
     async setWebviewFrame(_options: SetWebviewFrameOptions): Promise<void> {
         throw this.unimplemented('Not implemented on web.')
     }
 
+    async animateWebviewFrame(_options: AnimateWebviewFrameOptions): Promise<AnimateWebviewFrameResult> {
+        throw this.unimplemented('Not implemented on web.')
+    }
+
     async executeJavaScript(_options: ExecuteJavaScriptOptions): Promise<ExecuteJavaScriptResult> {
         throw this.unimplemented('Not implemented on web.')
     }
 
-    async sendMessage(_options: SendMessageOptions): Promise<void> {
+    async sendMessage(_options: SendMessageOptions): Promise<SendMessageResult> {
+        throw this.unimplemented('Not implemented on web.')
+    }
+
+    async broadcastMessage(_options: BroadcastMessageOptions): Promise<BroadcastMessageResult> {
+        throw this.unimplemented('Not implemented on web.')
+    }
+
+    async configurePool(_options: ConfigurePoolOptions): Promise<void> {
+        throw this.unimplemented('Not implemented on web.')
+    }
+
+    async getPoolStats(): Promise<PoolStats> {
+        throw this.unimplemented('Not implemented on web.')
+    }
+
+    async configureAssetCache(_options: ConfigureAssetCacheOptions): Promise<void> {
+        throw this.unimplemented('Not implemented on web.')
+    }
+
+    async getAssetCacheStats(): Promise<AssetCacheStats> {
+        throw this.unimplemented('Not implemented on web.')
+    }
+
+    async getWebviewSnapshot(_options: WebviewSnapshotOptions): Promise<WebviewSnapshotResult> {
+        throw this.unimplemented('Not implemented on web.')
+    }
+
+    async getSnapshotCacheStats(): Promise<SnapshotCacheStats> {
+        throw this.unimplemented('Not implemented on web.')
+    }
+
+    async registerAssetBundle(_options: RegisterAssetBundleOptions): Promise<RegisterAssetBundleResult> {
+        throw this.unimplemented('Not implemented on web.')
+    }
+
+    async unregisterAssetBundle(_options: UnregisterAssetBundleOptions): Promise<void> {
+        throw this.unimplemented('Not implemented on web.')
+    }
+
+    async listAssetBundles(): Promise<ListAssetBundlesResult> {
+        throw this.unimplemented('Not implemented on web.')
+    }
+
+    async setContentBlockerRules(_options: SetContentBlockerRulesOptions): Promise<ContentBlockerRulesResult> {
+        throw this.unimplemented('Not implemented on web.')
+    }
+
+    async setContentBlockerOverrides(_options: ContentBlockerOverridesOptions): Promise<void> {
+        throw this.unimplemented('Not implemented on web.')
+    }
+
+    async getContentBlockerStats(): Promise<ContentBlockerStats> {
+        throw this.unimplemented('Not implemented on web.')
+    }
+
+    async getMetrics(_options?: GetMetricsOptions): Promise<MetricsResult> {
+        throw this.unimplemented('Not implemented on web.')
+    }
+
+    async setMetricsInterval(_options: MetricsIntervalOptions): Promise<void> {
+        throw this.unimplemented('Not implemented on web.')
+    }
+
+    async restoreSession(): Promise<RestoreSessionResult> {
+        throw this.unimplemented('Not implemented on web.')
+    }
+
+    async clearSession(): Promise<void> {
+        throw this.unimplemented('Not implemented on web.')
+    }
+
+    async respondRpc(_options: RespondRpcOptions): Promise<void> {
+        throw this.unimplemented('Not implemented on web.')
+    }
+
+    async sendTransfer(_options: SendTransferOptions): Promise<SendTransferResult> {
+        throw this.unimplemented('Not implemented on web.')
+    }
+
+    async cancelTransfer(_options: TransferOptions): Promise<void> {
+        throw this.unimplemented('Not implemented on web.')
+    }
+
+    async releaseTransfer(_options: ReleaseTransferOptions): Promise<void> {
+        throw this.unimplemented('Not implemented on web.')
+    }
+
+    async setEventFilter(_options: EventFilterOptions): Promise<void> {
+        throw this.unimplemented('Not implemented on web.')
+    }
+
+    async clearEventFilter(_options?: ClearEventFilterOptions): Promise<void> {
+        throw this.unimplemented('Not implemented on web.')
+    }
+
+    async getEventStats(): Promise<EventStats> {
+        throw this.unimplemented('Not implemented on web.')
+    }
+
+    async registerScript(_options: RegisterScriptOptions): Promise<RegisterScriptResult> {
+        throw this.unimplemented('Not implemented on web.')
+    }
+
+    async invokeScript(_options: InvokeScriptOptions): Promise<InvokeScriptResult> {
+        throw this.unimplemented('Not implemented on web.')
+    }
+
+    async unregisterScript(_options: ScriptHandleOptions): Promise<void> {
+        throw this.unimplemented('Not implemented on web.')
+    }
+
+    async setHibernationPolicy(_options: HibernationPolicyOptions): Promise<void> {
+        throw this.unimplemented('Not implemented on web.')
+    }
+
+    async setBackgroundPolicy(_options: SetBackgroundPolicyOptions): Promise<void> {
+        throw this.unimplemented('Not implemented on web.')
+    }
+
+    async setRendererPriority(_options: SetRendererPriorityOptions): Promise<void> {
+        throw this.unimplemented('Not implemented on web.')
+    }
+
+    async batch(_options: BatchOptions): Promise<BatchResult> {
         throw this.unimplemented('Not implemented on web.')
     }
 }